@@ -0,0 +1,45 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.common.thread;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Holds one piece of per-execution state (the current {@link ThreadContext}, the active spans, etc.). The per-request
+ * context and trace state is kept in carriers obtained from {@link ContextCarriers} rather than in private
+ * {@link ThreadLocal}s, so the storage strategy can be swapped without touching the code using it.
+ *
+ * State whose lifetime follows a single call, such as the context reinstated for a task handed to another thread, is
+ * bound with {@link #callWith(Object, Callable)}; state set and removed at arbitrary points uses {@link #set(Object)}
+ * and {@link #remove()}. Keeping the two apart lets a carrier serve the scoped case from a scoped binding (e.g. JDK
+ * 21's ScopedValue) while keeping a thread-local for the rest.
+ */
+public interface ContextCarrier<T>
+{
+    T get();
+
+    void set( T value );
+
+    void remove();
+
+    /**
+     * Bind the value (null meaning unset) while the action runs and reinstate the previous binding afterwards, whether
+     * the action returns or throws. Changes the action makes with {@link #set(Object)} or {@link #remove()} do not
+     * outlive the call.
+     */
+    <R> R callWith( T value, Callable<R> action )
+            throws Exception;
+}
@@ -0,0 +1,29 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.common.thread;
+
+/**
+ * SPI for creating {@link ContextCarrier} instances. Implementations are discovered with {@link java.util.ServiceLoader}
+ * (META-INF/services/org.commonjava.o11yphant.common.thread.ContextCarrierFactory); the first one found wins. When none
+ * is present, {@link ThreadLocalContextCarrierFactory} is used.
+ */
+public interface ContextCarrierFactory
+{
+    /**
+     * @param name descriptive name of the state being carried, for diagnostics.
+     */
+    <T> ContextCarrier<T> create( String name );
+}
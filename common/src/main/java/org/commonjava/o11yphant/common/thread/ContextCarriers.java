@@ -0,0 +1,61 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.common.thread;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.ServiceLoader;
+
+/**
+ * Entry point for obtaining {@link ContextCarrier} instances, backed by the {@link ContextCarrierFactory} discovered
+ * on the classpath.
+ */
+public final class ContextCarriers
+{
+    private static final ContextCarrierFactory FACTORY = loadFactory( ContextCarriers.class.getClassLoader() );
+
+    private ContextCarriers()
+    {
+    }
+
+    public static <T> ContextCarrier<T> create( String name )
+    {
+        return FACTORY.create( name );
+    }
+
+    public static ContextCarrierFactory getFactory()
+    {
+        return FACTORY;
+    }
+
+    static ContextCarrierFactory loadFactory( ClassLoader classLoader )
+    {
+        Logger logger = LoggerFactory.getLogger( ContextCarriers.class );
+        Iterator<ContextCarrierFactory> factories =
+                ServiceLoader.load( ContextCarrierFactory.class, classLoader ).iterator();
+        if ( factories.hasNext() )
+        {
+            ContextCarrierFactory factory = factories.next();
+            logger.info( "Using context carrier factory: {}", factory.getClass().getName() );
+            return factory;
+        }
+
+        logger.debug( "No context carrier factory found, using ThreadLocal carriers" );
+        return new ThreadLocalContextCarrierFactory();
+    }
+}
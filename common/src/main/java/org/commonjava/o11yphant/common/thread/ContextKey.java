@@ -0,0 +1,192 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.common.thread;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+
+/**
+ * Typed key for a well-known {@link ThreadContext} entry. Each key gets a fixed slot index when it is registered, so
+ * {@link ThreadContext} can store its value in an array instead of hashing the name on every access. Keys created with
+ * {@link #longKey(String)} or {@link #doubleKey(String)} are stored unboxed.
+ *
+ * Keys should be registered from static initializers. Once registered, the {@link Map} view of every
+ * {@link ThreadContext} routes that name to the slot; a value put under the name before its key was registered is
+ * moved into the slot the first time the key is used on that context.
+ *
+ * A key with a joiner holds a per-child accumulation: a context created with {@link ThreadContext#fork()} does not see
+ * the parent's value for it, and folds its own value into the parent's when it is joined. Other keys are read through
+ * to the parent.
+ */
+public final class ContextKey<T>
+{
+    /**
+     * Maximum number of typed keys; each {@link ThreadContext} allocates this many slots.
+     */
+    public static final int MAX_SLOTS = 32;
+
+    private static final Map<String, ContextKey<?>> REGISTRY = new ConcurrentHashMap<>();
+
+    private static volatile int nextIndex = 0;
+
+    enum Kind
+    {
+        OBJECT, LONG, DOUBLE
+    }
+
+    private final String name;
+
+    private final Class<T> type;
+
+    private final Kind kind;
+
+    private final int index;
+
+    private final BinaryOperator<T> joiner;
+
+    private ContextKey( String name, Class<T> type, Kind kind, int index, BinaryOperator<T> joiner )
+    {
+        this.name = name;
+        this.type = type;
+        this.kind = kind;
+        this.index = index;
+        this.joiner = joiner;
+    }
+
+    public static <T> ContextKey<T> of( String name, Class<T> type )
+    {
+        return register( name, type, Kind.OBJECT, null );
+    }
+
+    /**
+     * @param joiner combines the parent's value (first argument) with a joined child's value (second argument); the
+     * result replaces the parent's value. Only called when both are set.
+     */
+    public static <T> ContextKey<T> of( String name, Class<T> type, BinaryOperator<T> joiner )
+    {
+        return register( name, type, Kind.OBJECT, joiner );
+    }
+
+    public static ContextKey<Long> longKey( String name )
+    {
+        return register( name, Long.class, Kind.LONG, null );
+    }
+
+    /**
+     * A long key whose value in a forked child is added to the parent's when the child is joined.
+     */
+    public static ContextKey<Long> summingLongKey( String name )
+    {
+        return register( name, Long.class, Kind.LONG, Long::sum );
+    }
+
+    public static ContextKey<Double> doubleKey( String name )
+    {
+        return register( name, Double.class, Kind.DOUBLE, null );
+    }
+
+    /**
+     * @return the registered key for this name, or null if the name is a plain (untyped) entry.
+     */
+    public static ContextKey<?> forName( Object name )
+    {
+        return name instanceof String ? REGISTRY.get( name ) : null;
+    }
+
+    /**
+     * Keys are indexed in registration order, so a key whose index is at least this count was registered afterwards.
+     */
+    static int registeredCount()
+    {
+        return nextIndex;
+    }
+
+    static void forEachRegistered( Consumer<ContextKey<?>> action )
+    {
+        REGISTRY.values().forEach( action );
+    }
+
+    @SuppressWarnings( "unchecked" )
+    private static synchronized <T> ContextKey<T> register( String name, Class<T> type, Kind kind,
+                                                            BinaryOperator<T> joiner )
+    {
+        ContextKey<?> existing = REGISTRY.get( name );
+        if ( existing != null )
+        {
+            if ( existing.type != type || existing.kind != kind || ( existing.joiner == null ) != ( joiner == null ) )
+            {
+                throw new IllegalArgumentException(
+                        "Context key: " + name + " is already registered as " + existing );
+            }
+
+            return (ContextKey<T>) existing;
+        }
+
+        if ( nextIndex >= MAX_SLOTS )
+        {
+            throw new IllegalStateException(
+                    "Cannot register context key: " + name + ". All " + MAX_SLOTS + " slots are in use." );
+        }
+
+        ContextKey<T> key = new ContextKey<>( name, type, kind, nextIndex++, joiner );
+        REGISTRY.put( name, key );
+        return key;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public Class<T> getType()
+    {
+        return type;
+    }
+
+    int getIndex()
+    {
+        return index;
+    }
+
+    boolean isPrimitive()
+    {
+        return kind != Kind.OBJECT;
+    }
+
+    boolean isDouble()
+    {
+        return kind == Kind.DOUBLE;
+    }
+
+    boolean isJoinable()
+    {
+        return joiner != null;
+    }
+
+    BinaryOperator<T> getJoiner()
+    {
+        return joiner;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ContextKey{" + name + ", " + kind + "<" + type.getSimpleName() + ">, slot=" + index
+                + ( joiner == null ? "" : ", joinable" ) + "}";
+    }
+}
@@ -15,18 +15,30 @@
  */
 package org.commonjava.o11yphant.common.thread;
 
+import ch.qos.logback.classic.util.LogbackMDCAdapter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
@@ -36,38 +48,125 @@ import java.util.function.Function;
  * This {@link ThreadContext} keeps a count of the number of threads referencing it, and can run finalization logic
  * when that number hits 0.
  *
+ * Entries registered as a {@link ContextKey} are stored in fixed array slots (unboxed for long / double keys) instead
+ * of the backing map. The {@link Map} view routes their names to those slots, so both access styles see the same value.
+ * {@link #keySet()}, {@link #values()} and {@link #entrySet()} are views over both; their iterators walk a snapshot
+ * taken when iteration starts, and removing through them removes from the context.
+ *
+ * Derived entries (see {@link #registerDerivedEntry(String, Function)}) are read-only names computed from the context
+ * when they are looked up through {@link #get(Object)} or {@link #containsKey(Object)}; they are not stored, so they
+ * do not show up in {@link #keySet()}, {@link #size()} or the other views.
+ *
+ * A context can be forked for work fanned out to other threads: the child reads through to its parent, keeps its own
+ * writes in an overlay, and accumulates joinable keys (see {@link ContextKey}) privately until it is joined back.
+ *
+ * With recycling switched on (see {@link #setRecycling(boolean)}), a context whose reference count drops to zero is
+ * cleared after its finalizers have run and kept as a spare on the current thread; the next
+ * {@link #getContext(boolean)} on that thread reuses it instead of allocating a new one. Every holder of a context
+ * other than the threads it is set on must therefore take its own reference with {@link #retain()} and give it back
+ * with {@link #release()} (as the context-propagating executors in trace-api and forked children do); anything that
+ * keeps a bare reference past {@link #clearContext()} may see the context wiped and reused, so it is off by default.
+ *
  * Created by jdcasey on 1/3/17.
  */
 public class ThreadContext
         implements Map<String, Object>
 {
-    private static ThreadLocal<ThreadContext> THREAD_LOCAL = new ThreadLocal<>();
+    private static final Logger logger = LoggerFactory.getLogger( ThreadContext.class );
+
+    public static final String RECYCLE_PROPERTY = "o11yphant.context.recycle";
+
+    private static final ContextCarrier<ThreadContext> CURRENT = ContextCarriers.create( "thread-context" );
+
+    private static final ContextCarrier<ThreadContext> SPARE = ContextCarriers.create( "thread-context-spare" );
+
+    private static volatile boolean recycling = Boolean.getBoolean( RECYCLE_PROPERTY );
+
+    private static final AtomicIntegerFieldUpdater<ThreadContext> REFS =
+            AtomicIntegerFieldUpdater.newUpdater( ThreadContext.class, "refs" );
+
+    private static final AtomicIntegerFieldUpdater<ThreadContext> FINALIZED =
+            AtomicIntegerFieldUpdater.newUpdater( ThreadContext.class, "finalized" );
+
+    private static final AtomicIntegerFieldUpdater<ThreadContext> JOINED =
+            AtomicIntegerFieldUpdater.newUpdater( ThreadContext.class, "joined" );
+
+    private static final Consumer<ThreadContext> JOIN = ThreadContext::joinAndReleaseParent;
+
+    private static final Map<String, Function<ThreadContext, ?>> DERIVED = new ConcurrentHashMap<>();
+
+    /**
+     * Marks a slot whose value lives in {@link #primitiveSlots}.
+     */
+    private static final Object PRIMITIVE = new Object();
 
     private final Map<String, Object> contextMap = new ConcurrentHashMap<>();
 
+    private final AtomicReferenceArray<Object> slots = new AtomicReferenceArray<>( ContextKey.MAX_SLOTS );
+
+    private final AtomicLongArray primitiveSlots = new AtomicLongArray( ContextKey.MAX_SLOTS );
+
     private Map<String, String> mdcMap; // mapped diagnostic context
 
-    private int refs = 1;
+    /**
+     * Number of {@link ContextKey}s registered when this context was (re)initialized; later keys may still have values
+     * in {@link #contextMap}, put there before the key existed.
+     */
+    private volatile int knownKeys = ContextKey.registeredCount();
+
+    private final Map<String, Object> view = new View();
+
+    private volatile int refs = 1;
+
+    private volatile int finalized = 0;
+
+    private volatile ThreadContext parent;
+
+    private volatile int joined = 0;
 
-    private List<Consumer<ThreadContext>> finalizers = new ArrayList<>();
+    private final CopyOnWriteArrayList<Consumer<ThreadContext>> finalizers = new CopyOnWriteArrayList<>();
+
+    private ThreadContextTracker.Tracked tracked = ThreadContextTracker.track( this );
 
     public static ThreadContext getContext( boolean create )
     {
-        ThreadContext threadContext = THREAD_LOCAL.get();
+        ThreadContext threadContext = CURRENT.get();
         if ( threadContext == null && create )
         {
-            threadContext = new ThreadContext();
-            THREAD_LOCAL.set( threadContext );
+            threadContext = recycling ? takeSpare() : null;
+            if ( threadContext == null )
+            {
+                threadContext = new ThreadContext();
+            }
+            CURRENT.set( threadContext );
         }
 
         if ( threadContext != null )
         {
-            threadContext.mdcMap = MDC.getCopyOfContextMap();
+            threadContext.mdcMap = captureMdc();
         }
 
         return threadContext;
     }
 
+    /**
+     * Capture the current MDC so it can be restored via {@link #setContext(ThreadContext)} in another thread. Logback's
+     * MDC adapter is copy-on-write: the map it hands out is never modified again (the next MDC write duplicates it
+     * first), so we can keep a reference to it instead of copying it on every lookup. The actual copy happens only
+     * when the context is handed to another thread, inside {@link MDC#setContextMap(Map)}. For any other MDC binding
+     * we fall back to copying. That includes the logback 1.2 this project builds against: it is not an SLF4J 2
+     * provider, so the zero-copy path needs a logback that is (1.3 or later) on the application's classpath.
+     */
+    private static Map<String, String> captureMdc()
+    {
+        if ( LogbackMdc.AVAILABLE )
+        {
+            return LogbackMdc.getPropertyMap();
+        }
+
+        return MDC.getCopyOfContextMap();
+    }
+
     public static ThreadContext setContext( ThreadContext ctx )
     {
         ThreadContext oldCtx = swapContext( ctx );
@@ -80,73 +179,191 @@ public class ThreadContext
 
     private static ThreadContext swapContext( final ThreadContext ctx )
     {
-        ThreadContext oldCtx = THREAD_LOCAL.get();
+        ThreadContext oldCtx = CURRENT.get();
         if ( oldCtx != null )
         {
-            Logger logger = LoggerFactory.getLogger( ThreadContext.class );
-            oldCtx.refs--;
-            logger.trace( "context refs: {}", oldCtx.refs );
-            oldCtx.runFinalizersIfDone();
+            oldCtx.release( oldCtx != ctx );
         }
 
         if ( ctx != null )
         {
-            THREAD_LOCAL.set( ctx );
-            ctx.refs++;
+            CURRENT.set( ctx );
+            REFS.incrementAndGet( ctx );
         }
         else
         {
-            THREAD_LOCAL.remove();
+            CURRENT.remove();
         }
 
         return oldCtx;
     }
 
+    /**
+     * Make the given context current without touching any reference count, and return the one it replaces, also
+     * untouched. For code that holds its own reference to the context (see {@link #retain()}) and binds it only for the
+     * extent of a call, restoring the previous one with another {@link #attach(ThreadContext)} afterwards. The MDC is
+     * left alone.
+     */
+    public static ThreadContext attach( ThreadContext ctx )
+    {
+        ThreadContext oldCtx = CURRENT.get();
+        if ( ctx != null )
+        {
+            CURRENT.set( ctx );
+        }
+        else
+        {
+            CURRENT.remove();
+        }
+        return oldCtx;
+    }
+
+    /**
+     * Make the given context current while the task runs and put the previous one back afterwards, touching no
+     * reference count, like a pair of {@link #attach(ThreadContext)} calls. The MDC is left alone.
+     */
+    public static <T> T callAttached( ThreadContext ctx, Callable<T> task )
+            throws Exception
+    {
+        return CURRENT.callWith( ctx, task );
+    }
+
+    /**
+     * Take a reference on this context for a holder other than the threads it is set on, e.g. a task queued for
+     * later. Finalizers (and recycling) wait until every reference is given back through {@link #release()}.
+     */
+    public ThreadContext retain()
+    {
+        REFS.incrementAndGet( this );
+        return this;
+    }
+
+    /**
+     * Give back a reference taken with {@link #retain()}.
+     */
+    public void release()
+    {
+        release( true );
+    }
+
+    private void release( boolean recyclable )
+    {
+        int remaining = REFS.decrementAndGet( this );
+        logger.trace( "context refs: {}", remaining );
+        if ( remaining < 1 )
+        {
+            runFinalizers();
+            if ( recycling && recyclable && remaining == 0 )
+            {
+                recycle();
+            }
+        }
+    }
+
     /**
      * Provide some finalizer logic to handle the scenario where the number of "live" threads referencing this context
      * drops to 0. Before this happens, any contextual information in this ThreadContext may be needed by running threads,
      * and it's not safe to clean up. However, since the context may contain {@link java.io.Closeable} instances and
      * the like, it's important to have some point where they will be cleaned up.
+     *
+     * Each finalizer runs exactly once. One registered after the context has already been finalized runs immediately.
      * @since 1.5
      * @param finalizer
      */
-    public synchronized void registerFinalizer( Consumer<ThreadContext> finalizer )
+    public void registerFinalizer( Consumer<ThreadContext> finalizer )
     {
-        if ( !this.finalizers.contains( finalizer ) )
+        if ( finalizer != null && finalizers.addIfAbsent( finalizer ) )
         {
-            Logger logger = LoggerFactory.getLogger( getClass() );
             logger.debug( "Registering finalizer: {} on ThreadContext: {}", finalizer, this );
-            this.finalizers.add( finalizer );
+            if ( finalized != 0 )
+            {
+                runFinalizer( finalizer );
+            }
         }
     }
 
     /**
-     * If the thread reference count on this context drops to zero, run any finalization logic that might be registered.
+     * Run the registered finalization logic, once the thread reference count on this context has dropped to zero. Only
+     * the first caller gets to run them; each finalizer is also claimed (removed) before it runs, so a finalizer racing
+     * in through {@link #registerFinalizer(Consumer)} is not run twice or missed.
      */
-    private synchronized void runFinalizersIfDone()
+    private void runFinalizers()
     {
-        Logger logger = LoggerFactory.getLogger( getClass() );
-        if ( refs < 1 && finalizers != null )
+        if ( !FINALIZED.compareAndSet( this, 0, 1 ) )
         {
-            logger.debug( "Running finalizers for ThreadContext: {}", this );
-            finalizers.forEach( c->{
-                if ( c != null )
-                {
-                    logger.debug( "Running finalizer: {} for ThreadContext: {}", c, this );
-
-                    try
-                    {
-                        c.accept( this );
-                    }
-                    catch ( Throwable t )
-                    {
-                        logger.error( "Caught error while running finalizer: " + c + " on ThreadContext: " + this, t );
-                    }
-
-                    logger.trace( "Finalizer: {} done for ThreadContext: {}", c, this );
-                }
-            } );
+            return;
+        }
+
+        ThreadContextTracker.untrack( tracked );
+
+        logger.debug( "Running finalizers for ThreadContext: {}", this );
+        finalizers.forEach( this::runFinalizer );
+    }
+
+    private void runFinalizer( Consumer<ThreadContext> c )
+    {
+        if ( !finalizers.remove( c ) )
+        {
+            return;
+        }
+
+        logger.debug( "Running finalizer: {} for ThreadContext: {}", c, this );
+        try
+        {
+            c.accept( this );
+        }
+        catch ( Throwable t )
+        {
+            logger.error( "Caught error while running finalizer: " + c + " on ThreadContext: " + this, t );
+        }
+
+        logger.trace( "Finalizer: {} done for ThreadContext: {}", c, this );
+    }
+
+    public static void setRecycling( boolean recycling )
+    {
+        ThreadContext.recycling = recycling;
+        if ( !recycling )
+        {
+            SPARE.remove();
+        }
+    }
+
+    public static boolean isRecycling()
+    {
+        return recycling;
+    }
+
+    private static ThreadContext takeSpare()
+    {
+        ThreadContext spare = SPARE.get();
+        if ( spare != null )
+        {
+            SPARE.remove();
+            spare.tracked = ThreadContextTracker.track( spare );
         }
+        return spare;
+    }
+
+    /**
+     * Reset this finalized context and park it as the current thread's spare. Claiming it back from zero references to
+     * 1 fails if another thread picked it up again in the meantime, in which case it is left alone.
+     */
+    private void recycle()
+    {
+        if ( finalized == 0 || !REFS.compareAndSet( this, 0, 1 ) )
+        {
+            return;
+        }
+
+        clear();
+        knownKeys = ContextKey.registeredCount();
+        finalizers.clear();
+        mdcMap = null;
+        parent = null;
+        JOINED.set( this, 0 );
+        FINALIZED.set( this, 0 );
+        SPARE.set( this );
     }
 
     public static void clearContext()
@@ -157,119 +374,807 @@ public class ThreadContext
 
     private ThreadContext(){}
 
+    /**
+     * Serve the given name from the {@link Map} view by computing it from the context on each lookup, for names whose
+     * data has moved somewhere else (e.g. into a typed slot) but that existing readers still look up. A stored entry
+     * under the same name takes precedence. The deriver returns null when there is nothing to derive.
+     */
+    public static void registerDerivedEntry( String name, Function<ThreadContext, ?> deriver )
+    {
+        DERIVED.put( name, deriver );
+    }
+
+    private Object derive( Object name )
+    {
+        Function<ThreadContext, ?> deriver = DERIVED.isEmpty() ? null : DERIVED.get( name );
+        return deriver == null ? null : deriver.apply( this );
+    }
+
+    /**
+     * Create a child of this context for a task running on another thread. The child sees this context's entries
+     * (except joinable keys), while anything written to it stays in the child, so parallel children neither contend on
+     * nor overwrite the parent's entries. Removing an entry from the child only removes the child's own value.
+     *
+     * The child is not attached to any thread: install it with {@link #setContext(ThreadContext)}, or take a reference
+     * with {@link #retain()}. When the last reference to it is given back, its joinable entries are merged into this
+     * context via {@link #join()}. The child holds a reference on this context until then, so this context is neither
+     * finalized nor recycled while the child can still read through to it. Use one child per task.
+     */
+    public ThreadContext fork()
+    {
+        ThreadContext child = new ThreadContext();
+        child.parent = retain();
+        child.mdcMap = mdcMap;
+        REFS.set( child, 0 );
+        child.finalizers.add( JOIN );
+        return child;
+    }
+
+    private void joinAndReleaseParent()
+    {
+        join();
+        parent.release();
+    }
+
+    /**
+     * Merge the joinable entries of this forked context into its parent, one key at a time under the parent's slot
+     * lock. Does nothing on a context that was not forked, or that has already been joined.
+     */
+    public void join()
+    {
+        ThreadContext p = parent;
+        if ( p == null || !JOINED.compareAndSet( this, 0, 1 ) )
+        {
+            return;
+        }
+
+        forEachSlot( ( key, value ) -> {
+            if ( key.isJoinable() )
+            {
+                p.joinSlot( key, value );
+            }
+        } );
+    }
+
+    public ThreadContext getParent()
+    {
+        return parent;
+    }
+
+    /**
+     * The MDC as captured by the last {@link #getContext(boolean)} on the owning thread. Read-only.
+     */
+    public Map<String, String> getMdcMap()
+    {
+        return mdcMap;
+    }
+
+    @SuppressWarnings( "unchecked" )
+    private void joinSlot( ContextKey<?> key, Object value )
+    {
+        BinaryOperator<Object> joiner = (BinaryOperator<Object>) key.getJoiner();
+        computeSlot( key, ( k, v ) -> v == null ? value : joiner.apply( v, value ) );
+    }
+
+    /**
+     * Get the value of a typed key. For primitive keys this boxes; prefer {@link #getLong(ContextKey, long)} or
+     * {@link #getDouble(ContextKey, double)} on hot paths.
+     */
+    public <T> T get( ContextKey<T> key )
+    {
+        return key.getType().cast( readSlot( key ) );
+    }
+
+    public <T> T getOrDefault( ContextKey<T> key, T defaultValue )
+    {
+        T value = get( key );
+        return value == null ? defaultValue : value;
+    }
+
+    public <T> T put( ContextKey<T> key, T value )
+    {
+        return key.getType().cast( setSlot( key, value ) );
+    }
+
+    public <T> T putIfAbsent( ContextKey<T> key, T value )
+    {
+        return key.getType().cast( putSlotIfAbsent( key, value ) );
+    }
+
+    public <T> T computeIfAbsent( ContextKey<T> key, Function<ContextKey<T>, ? extends T> mappingFunction )
+    {
+        adoptLateKey( key );
+        if ( !key.isPrimitive() )
+        {
+            Object value = slots.get( key.getIndex() );
+            if ( value != null )
+            {
+                return key.getType().cast( value );
+            }
+        }
+        if ( parent != null )
+        {
+            Object inherited = readSlot( key );
+            if ( inherited != null )
+            {
+                return key.getType().cast( inherited );
+            }
+        }
+        return key.getType().cast( computeSlot( key, ( k, v ) -> v == null ? mappingFunction.apply( key ) : v ) );
+    }
+
+    public <T> T remove( ContextKey<T> key )
+    {
+        return key.getType().cast( setSlot( key, null ) );
+    }
+
+    public boolean contains( ContextKey<?> key )
+    {
+        adoptLateKey( key );
+        return slots.get( key.getIndex() ) != null || ( inherits( key ) && parent.contains( key ) );
+    }
+
+    public long getLong( ContextKey<Long> key, long defaultValue )
+    {
+        adoptLateKey( key );
+        int idx = key.getIndex();
+        if ( slots.get( idx ) == PRIMITIVE )
+        {
+            return primitiveSlots.get( idx );
+        }
+        return inherits( key ) ? parent.getLong( key, defaultValue ) : defaultValue;
+    }
+
+    public void putLong( ContextKey<Long> key, long value )
+    {
+        adoptLateKey( key );
+        int idx = key.getIndex();
+        primitiveSlots.set( idx, value );
+        slots.set( idx, PRIMITIVE );
+    }
+
+    /**
+     * Atomically add to a long slot, treating an unset slot as zero.
+     * @return the updated value
+     */
+    public long addLong( ContextKey<Long> key, long delta )
+    {
+        adoptLateKey( key );
+        int idx = key.getIndex();
+        long result = primitiveSlots.addAndGet( idx, delta );
+        if ( slots.get( idx ) != PRIMITIVE )
+        {
+            slots.set( idx, PRIMITIVE );
+        }
+        return result;
+    }
+
+    public double getDouble( ContextKey<Double> key, double defaultValue )
+    {
+        adoptLateKey( key );
+        int idx = key.getIndex();
+        if ( slots.get( idx ) == PRIMITIVE )
+        {
+            return Double.longBitsToDouble( primitiveSlots.get( idx ) );
+        }
+        return inherits( key ) ? parent.getDouble( key, defaultValue ) : defaultValue;
+    }
+
+    private boolean inherits( ContextKey<?> key )
+    {
+        return parent != null && !key.isJoinable();
+    }
+
+    /**
+     * This context's own value for the key, falling through to the parent for non-joinable keys of a forked context.
+     */
+    private Object readSlot( ContextKey<?> key )
+    {
+        Object value = getSlot( key );
+        if ( value == null && inherits( key ) )
+        {
+            return parent.readSlot( key );
+        }
+        return value;
+    }
+
+    public void putDouble( ContextKey<Double> key, double value )
+    {
+        adoptLateKey( key );
+        int idx = key.getIndex();
+        primitiveSlots.set( idx, Double.doubleToRawLongBits( value ) );
+        slots.set( idx, PRIMITIVE );
+    }
+
+    /**
+     * Move a value put under the key's name before the key was registered from the map into the slot. Keys registered
+     * before this context was initialized are skipped with a single comparison.
+     */
+    private void adoptLateKey( ContextKey<?> key )
+    {
+        if ( key.getIndex() < knownKeys )
+        {
+            return;
+        }
+
+        Object legacy = contextMap.remove( key.getName() );
+        if ( legacy != null )
+        {
+            synchronized ( slots )
+            {
+                if ( slots.get( key.getIndex() ) == null )
+                {
+                    store( key, legacy );
+                }
+            }
+        }
+    }
+
+    private Object getSlot( ContextKey<?> key )
+    {
+        adoptLateKey( key );
+        int idx = key.getIndex();
+        Object value = slots.get( idx );
+        if ( value == PRIMITIVE )
+        {
+            long bits = primitiveSlots.get( idx );
+            if ( key.isDouble() )
+            {
+                return Double.longBitsToDouble( bits );
+            }
+            return bits;
+        }
+
+        return value;
+    }
+
+    private Object setSlot( ContextKey<?> key, Object value )
+    {
+        Object old = getSlot( key );
+        store( key, value );
+        return old;
+    }
+
+    private void store( ContextKey<?> key, Object value )
+    {
+        int idx = key.getIndex();
+        if ( value == null )
+        {
+            slots.set( idx, null );
+            primitiveSlots.set( idx, 0 );
+        }
+        else if ( key.isPrimitive() )
+        {
+            Number n = (Number) value;
+            primitiveSlots.set( idx, key.isDouble() ? Double.doubleToRawLongBits( n.doubleValue() ) : n.longValue() );
+            slots.set( idx, PRIMITIVE );
+        }
+        else
+        {
+            slots.set( idx, key.getType().cast( value ) );
+        }
+    }
+
+    private Object putSlotIfAbsent( ContextKey<?> key, Object value )
+    {
+        adoptLateKey( key );
+        if ( !key.isPrimitive() )
+        {
+            int idx = key.getIndex();
+            Object cast = key.getType().cast( value );
+            while ( true )
+            {
+                Object old = slots.get( idx );
+                if ( old != null || slots.compareAndSet( idx, null, cast ) )
+                {
+                    return old;
+                }
+            }
+        }
+
+        synchronized ( slots )
+        {
+            Object old = getSlot( key );
+            if ( old == null )
+            {
+                setSlot( key, value );
+            }
+            return old;
+        }
+    }
+
+    /**
+     * Read-modify-write operations on slots are rare (they only come through the {@link Map} view), so they are simply
+     * serialized rather than made lock-free.
+     */
+    private Object computeSlot( ContextKey<?> key, BiFunction<? super String, Object, ?> remappingFunction )
+    {
+        synchronized ( slots )
+        {
+            Object value = remappingFunction.apply( key.getName(), getSlot( key ) );
+            setSlot( key, value );
+            return value;
+        }
+    }
+
+    private boolean hasSlots()
+    {
+        for ( int i = 0; i < ContextKey.MAX_SLOTS; i++ )
+        {
+            if ( slots.get( i ) != null )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void forEachSlot( BiConsumer<ContextKey<?>, Object> action )
+    {
+        ContextKey.forEachRegistered( key -> {
+            Object value = getSlot( key );
+            if ( value != null )
+            {
+                action.accept( key, value );
+            }
+        } );
+    }
+
+    /**
+     * Copy of all entries visible through this context: untyped entries, typed slots and, for a forked context, the
+     * parent's non-joinable entries.
+     */
+    private Map<String, Object> snapshot()
+    {
+        ThreadContext p = parent;
+        Map<String, Object> merged;
+        if ( p == null )
+        {
+            merged = new HashMap<>( contextMap );
+        }
+        else
+        {
+            merged = new HashMap<>( p.snapshot() );
+            ContextKey.forEachRegistered( k -> {
+                if ( k.isJoinable() )
+                {
+                    merged.remove( k.getName() );
+                }
+            } );
+            merged.putAll( contextMap );
+        }
+
+        forEachSlot( ( k, v ) -> merged.put( k.getName(), v ) );
+        return merged;
+    }
+
     public int size()
     {
-        return contextMap.size();
+        if ( parent != null )
+        {
+            return snapshot().size();
+        }
+
+        int size = contextMap.size();
+        for ( int i = 0; i < ContextKey.MAX_SLOTS; i++ )
+        {
+            if ( slots.get( i ) != null )
+            {
+                size++;
+            }
+        }
+        return size;
     }
 
     public boolean isEmpty()
     {
-        return contextMap.isEmpty();
+        return contextMap.isEmpty() && !hasSlots() && ( parent == null || snapshot().isEmpty() );
     }
 
     public void putAll( Map<? extends String, ?> map )
     {
-        contextMap.putAll( map );
+        map.forEach( this::put );
     }
 
     public Collection<Object> values()
     {
-        return contextMap.values();
+        return view.values();
     }
 
     public Object merge( String key, Object value, BiFunction<? super Object, ? super Object, ?> remappingFunction )
     {
+        ContextKey<?> ck = ContextKey.forName( key );
+        if ( ck != null )
+        {
+            return computeSlot( ck, ( k, v ) -> v == null ? value : remappingFunction.apply( v, value ) );
+        }
         return contextMap.merge( key, value, remappingFunction );
     }
 
     public Set<String> keySet()
     {
-        return contextMap.keySet();
+        return view.keySet();
     }
 
     public void forEach( BiConsumer<? super String, ? super Object> action )
     {
+        if ( parent != null )
+        {
+            snapshot().forEach( action );
+            return;
+        }
+
         contextMap.forEach( action );
+        forEachSlot( ( k, v ) -> action.accept( k.getName(), v ) );
     }
 
     public Object computeIfPresent( String key, BiFunction<? super String, ? super Object, ?> remappingFunction )
     {
+        ContextKey<?> ck = ContextKey.forName( key );
+        if ( ck != null )
+        {
+            return computeSlot( ck, ( k, v ) -> v == null ? null : remappingFunction.apply( k, v ) );
+        }
         return contextMap.computeIfPresent( key, remappingFunction );
     }
 
     public void clear()
     {
         contextMap.clear();
+        for ( int i = 0; i < ContextKey.MAX_SLOTS; i++ )
+        {
+            slots.set( i, null );
+            primitiveSlots.set( i, 0 );
+        }
     }
 
     public boolean containsValue( Object o )
     {
-        return contextMap.containsValue( o );
+        return contextMap.containsValue( o ) || ( ( hasSlots() || parent != null ) && snapshot().containsValue( o ) );
     }
 
     public Object put( String s, Object o )
     {
+        ContextKey<?> ck = ContextKey.forName( s );
+        if ( ck != null )
+        {
+            return setSlot( ck, o );
+        }
         return contextMap.put( s, o );
     }
 
     public void replaceAll( BiFunction<? super String, ? super Object, ?> function )
     {
         contextMap.replaceAll( function );
+        forEachSlot( ( k, v ) -> computeSlot( k, function::apply ) );
     }
 
     public Object get( Object o )
     {
-        return contextMap.get( o );
+        ContextKey<?> ck = ContextKey.forName( o );
+        if ( ck != null )
+        {
+            return readSlot( ck );
+        }
+
+        Object value = contextMap.get( o );
+        if ( value == null )
+        {
+            value = derive( o );
+        }
+        if ( value == null && parent != null )
+        {
+            return parent.get( o );
+        }
+        return value;
     }
 
     public boolean containsKey( Object o )
     {
-        return contextMap.containsKey( o );
+        ContextKey<?> ck = ContextKey.forName( o );
+        if ( ck != null )
+        {
+            return contains( ck );
+        }
+        return contextMap.containsKey( o ) || derive( o ) != null || ( parent != null && parent.containsKey( o ) );
     }
 
     public Set<Entry<String, Object>> entrySet()
     {
-        return contextMap.entrySet();
+        return view.entrySet();
     }
 
     public boolean replace( String key, Object oldValue, Object newValue )
     {
+        ContextKey<?> ck = ContextKey.forName( key );
+        if ( ck != null )
+        {
+            synchronized ( slots )
+            {
+                if ( oldValue == null || !oldValue.equals( getSlot( ck ) ) )
+                {
+                    return false;
+                }
+                setSlot( ck, newValue );
+                return true;
+            }
+        }
         return contextMap.replace( key, oldValue, newValue );
     }
 
     public Object computeIfAbsent( String key, Function<? super String, ?> mappingFunction )
     {
+        ContextKey<?> ck = ContextKey.forName( key );
+        if ( ck != null )
+        {
+            if ( !ck.isPrimitive() )
+            {
+                Object value = slots.get( ck.getIndex() );
+                if ( value != null )
+                {
+                    return value;
+                }
+            }
+            if ( inherits( ck ) )
+            {
+                Object inherited = readSlot( ck );
+                if ( inherited != null )
+                {
+                    return inherited;
+                }
+            }
+            return computeSlot( ck, ( k, v ) -> v == null ? mappingFunction.apply( k ) : v );
+        }
+        if ( parent != null )
+        {
+            Object inherited = get( key );
+            if ( inherited != null )
+            {
+                return inherited;
+            }
+        }
         return contextMap.computeIfAbsent( key, mappingFunction );
     }
 
     public Object compute( String key, BiFunction<? super String, ? super Object, ?> remappingFunction )
     {
+        ContextKey<?> ck = ContextKey.forName( key );
+        if ( ck != null )
+        {
+            return computeSlot( ck, remappingFunction::apply );
+        }
         return contextMap.compute( key, remappingFunction );
     }
 
     public Object putIfAbsent( String key, Object value )
     {
+        ContextKey<?> ck = ContextKey.forName( key );
+        if ( ck != null )
+        {
+            return putSlotIfAbsent( ck, value );
+        }
         return contextMap.putIfAbsent( key, value );
     }
 
     public Object remove( Object o )
     {
+        ContextKey<?> ck = ContextKey.forName( o );
+        if ( ck != null )
+        {
+            return setSlot( ck, null );
+        }
         return contextMap.remove( o );
     }
 
     public Object getOrDefault( Object key, Object defaultValue )
     {
-        return contextMap.getOrDefault( key, defaultValue );
+        Object value = get( key );
+        return value == null ? defaultValue : value;
     }
 
     public boolean remove( Object key, Object value )
     {
+        ContextKey<?> ck = ContextKey.forName( key );
+        if ( ck != null )
+        {
+            return replace( (String) key, value, null );
+        }
         return contextMap.remove( key, value );
     }
 
     public Object replace( String key, Object value )
     {
+        ContextKey<?> ck = ContextKey.forName( key );
+        if ( ck != null )
+        {
+            synchronized ( slots )
+            {
+                Object old = getSlot( ck );
+                if ( old != null )
+                {
+                    setSlot( ck, value );
+                }
+                return old;
+            }
+        }
         return contextMap.replace( key, value );
     }
 
+    /**
+     * Map view backing {@link #keySet()}, {@link #values()} and {@link #entrySet()}. Lookups go to the context; removal
+     * and {@link Entry#setValue(Object)} write through to it.
+     */
+    private final class View
+            extends AbstractMap<String, Object>
+    {
+        private final Set<Entry<String, Object>> entries = new AbstractSet<Entry<String, Object>>()
+        {
+            @Override
+            public Iterator<Entry<String, Object>> iterator()
+            {
+                return new ViewIterator( new ArrayList<>( snapshot().keySet() ) );
+            }
+
+            @Override
+            public int size()
+            {
+                return ThreadContext.this.size();
+            }
+
+            @Override
+            public boolean contains( Object o )
+            {
+                if ( !( o instanceof Entry ) )
+                {
+                    return false;
+                }
+                Entry<?, ?> e = (Entry<?, ?>) o;
+                Object value = ThreadContext.this.get( e.getKey() );
+                return value != null && value.equals( e.getValue() );
+            }
+
+            @Override
+            public boolean remove( Object o )
+            {
+                return contains( o ) && ThreadContext.this.remove( ( (Entry<?, ?>) o ).getKey() ) != null;
+            }
+
+            @Override
+            public void clear()
+            {
+                ThreadContext.this.clear();
+            }
+        };
+
+        @Override
+        public Set<Entry<String, Object>> entrySet()
+        {
+            return entries;
+        }
+
+        @Override
+        public int size()
+        {
+            return ThreadContext.this.size();
+        }
+
+        @Override
+        public boolean containsKey( Object key )
+        {
+            return ThreadContext.this.containsKey( key );
+        }
+
+        @Override
+        public Object get( Object key )
+        {
+            return ThreadContext.this.get( key );
+        }
+
+        @Override
+        public Object remove( Object key )
+        {
+            return ThreadContext.this.remove( key );
+        }
+    }
+
+    /**
+     * Walks the keys present when iteration started, skipping any removed since, and reads each value when reached.
+     */
+    private final class ViewIterator
+            implements Iterator<Entry<String, Object>>
+    {
+        private final List<String> keys;
+
+        private int pos;
+
+        private Entry<String, Object> next;
+
+        private String last;
+
+        private ViewIterator( List<String> keys )
+        {
+            this.keys = keys;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            while ( next == null && pos < keys.size() )
+            {
+                String key = keys.get( pos++ );
+                Object value = ThreadContext.this.get( key );
+                if ( value != null )
+                {
+                    next = new ViewEntry( key, value );
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Entry<String, Object> next()
+        {
+            if ( !hasNext() )
+            {
+                throw new NoSuchElementException();
+            }
+            Entry<String, Object> entry = next;
+            next = null;
+            last = entry.getKey();
+            return entry;
+        }
+
+        @Override
+        public void remove()
+        {
+            if ( last == null )
+            {
+                throw new IllegalStateException();
+            }
+            ThreadContext.this.remove( last );
+            last = null;
+        }
+    }
+
+    private final class ViewEntry
+            extends AbstractMap.SimpleEntry<String, Object>
+    {
+        private ViewEntry( String key, Object value )
+        {
+            super( key, value );
+        }
+
+        @Override
+        public Object setValue( Object value )
+        {
+            ThreadContext.this.put( getKey(), value );
+            return super.setValue( value );
+        }
+    }
+
+    /**
+     * Isolates the logback dependency, so a deployment bound to another SLF4J backend never has to load it.
+     */
+    private static final class LogbackMdc
+    {
+        private static final boolean AVAILABLE = isLogbackAdapter();
+
+        private static boolean isLogbackAdapter()
+        {
+            try
+            {
+                return MDC.getMDCAdapter() instanceof LogbackMDCAdapter;
+            }
+            catch ( LinkageError e )
+            {
+                return false;
+            }
+        }
+
+        private static Map<String, String> getPropertyMap()
+        {
+            return ( (LogbackMDCAdapter) MDC.getMDCAdapter() ).getPropertyMap();
+        }
+    }
+
 }
@@ -0,0 +1,234 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.common.thread;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Optional bookkeeping of live {@link ThreadContext} instances, used to find contexts that are never cleared (and so
+ * keep everything stored in them reachable). A context is tracked from the moment it is created until its reference
+ * count drops to zero; it is only held weakly, so tracking never extends its lifetime.
+ *
+ * Tracking is off by default. When it is off the only cost is a volatile read per created context; when it is on, each
+ * context adds one set insert / remove, plus a {@link Throwable} if creation sites are captured.
+ *
+ * It can be switched on with {@link #enable(boolean)}, or from startup through the system property
+ * {@value #TRACKING_PROPERTY} (<code>true</code>, or <code>sites</code> to also capture creation sites).
+ */
+public final class ThreadContextTracker
+{
+    public static final String TRACKING_PROPERTY = "o11yphant.context.tracking";
+
+    private static final Logger logger = LoggerFactory.getLogger( ThreadContextTracker.class );
+
+    private static final Set<Tracked> LIVE = ConcurrentHashMap.newKeySet();
+
+    private static final ReferenceQueue<ThreadContext> COLLECTED = new ReferenceQueue<>();
+
+    private static final LongAdder collectedUncleared = new LongAdder();
+
+    private static volatile boolean enabled;
+
+    private static volatile boolean captureCreationSite;
+
+    static
+    {
+        String mode = System.getProperty( TRACKING_PROPERTY );
+        if ( "sites".equalsIgnoreCase( mode ) )
+        {
+            enable( true );
+        }
+        else if ( Boolean.parseBoolean( mode ) )
+        {
+            enable( false );
+        }
+    }
+
+    private ThreadContextTracker()
+    {
+    }
+
+    public static void enable( boolean captureCreationSite )
+    {
+        ThreadContextTracker.captureCreationSite = captureCreationSite;
+        enabled = true;
+    }
+
+    /**
+     * Stop tracking new contexts and forget the ones tracked so far.
+     */
+    public static void disable()
+    {
+        enabled = false;
+        LIVE.clear();
+        expunge();
+    }
+
+    public static boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    static Tracked track( ThreadContext ctx )
+    {
+        if ( !enabled )
+        {
+            return null;
+        }
+
+        expunge();
+
+        Thread thread = Thread.currentThread();
+        Throwable site = captureCreationSite ? new Throwable( "ThreadContext created on: " + thread.getName() ) : null;
+        Tracked tracked = new Tracked( ctx, thread.getName(), site );
+        LIVE.add( tracked );
+        return tracked;
+    }
+
+    static void untrack( Tracked tracked )
+    {
+        if ( tracked != null )
+        {
+            LIVE.remove( tracked );
+        }
+    }
+
+    /**
+     * @return number of contexts created while tracking was on that have not yet been cleared
+     */
+    public static int getLiveCount()
+    {
+        expunge();
+        return LIVE.size();
+    }
+
+    /**
+     * @return total number of entries held by the live contexts
+     */
+    public static long getLiveEntries()
+    {
+        long entries = 0;
+        for ( Tracked t : LIVE )
+        {
+            ThreadContext ctx = t.get();
+            if ( ctx != null )
+            {
+                entries += ctx.size();
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * @return age of the oldest live context in milliseconds, or 0 when there is none
+     */
+    public static long getOldestAgeMillis()
+    {
+        long now = System.nanoTime();
+        long oldest = 0;
+        for ( Tracked t : LIVE )
+        {
+            oldest = Math.max( oldest, now - t.createdNanos );
+        }
+        return TimeUnit.NANOSECONDS.toMillis( oldest );
+    }
+
+    /**
+     * @return number of tracked contexts that were garbage collected without ever being cleared
+     */
+    public static long getCollectedUnclearedCount()
+    {
+        expunge();
+        return collectedUncleared.sum();
+    }
+
+    /**
+     * Count the live contexts older than the given age. Each one is logged (with its creation site, if captured) the
+     * first time it is found here.
+     */
+    public static int checkForLeaks( long maxAge, TimeUnit unit )
+    {
+        expunge();
+
+        long now = System.nanoTime();
+        long maxNanos = unit.toNanos( maxAge );
+        int leaked = 0;
+        for ( Tracked t : LIVE )
+        {
+            long age = now - t.createdNanos;
+            if ( age <= maxNanos )
+            {
+                continue;
+            }
+
+            ThreadContext ctx = t.get();
+            if ( ctx == null )
+            {
+                continue;
+            }
+
+            leaked++;
+            if ( !t.reported )
+            {
+                t.reported = true;
+                logger.warn( "ThreadContext created on thread: {} has not been cleared after {}ms ({} entries)",
+                             t.threadName, TimeUnit.NANOSECONDS.toMillis( age ), ctx.size(), t.creationSite );
+            }
+        }
+
+        return leaked;
+    }
+
+    private static void expunge()
+    {
+        Reference<? extends ThreadContext> ref;
+        while ( ( ref = COLLECTED.poll() ) != null )
+        {
+            if ( LIVE.remove( ref ) )
+            {
+                collectedUncleared.increment();
+            }
+        }
+    }
+
+    static final class Tracked
+            extends WeakReference<ThreadContext>
+    {
+        private final long createdNanos = System.nanoTime();
+
+        private final String threadName;
+
+        private final Throwable creationSite;
+
+        private volatile boolean reported;
+
+        private Tracked( ThreadContext ctx, String threadName, Throwable creationSite )
+        {
+            super( ctx, COLLECTED );
+            this.threadName = threadName;
+            this.creationSite = creationSite;
+        }
+    }
+}
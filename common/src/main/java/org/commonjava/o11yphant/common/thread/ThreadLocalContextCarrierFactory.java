@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.common.thread;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Default {@link ContextCarrierFactory}, keeping the state in a plain {@link ThreadLocal} per carrier.
+ */
+public class ThreadLocalContextCarrierFactory
+        implements ContextCarrierFactory
+{
+    @Override
+    public <T> ContextCarrier<T> create( String name )
+    {
+        return new ThreadLocalContextCarrier<>( name );
+    }
+
+    private static final class ThreadLocalContextCarrier<T>
+            implements ContextCarrier<T>
+    {
+        private final ThreadLocal<T> threadLocal = new ThreadLocal<>();
+
+        private final String name;
+
+        private ThreadLocalContextCarrier( String name )
+        {
+            this.name = name;
+        }
+
+        @Override
+        public T get()
+        {
+            return threadLocal.get();
+        }
+
+        @Override
+        public void set( T value )
+        {
+            threadLocal.set( value );
+        }
+
+        @Override
+        public void remove()
+        {
+            threadLocal.remove();
+        }
+
+        @Override
+        public <R> R callWith( T value, Callable<R> action )
+                throws Exception
+        {
+            T previous = threadLocal.get();
+            bind( value );
+            try
+            {
+                return action.call();
+            }
+            finally
+            {
+                bind( previous );
+            }
+        }
+
+        private void bind( T value )
+        {
+            if ( value == null )
+            {
+                threadLocal.remove();
+            }
+            else
+            {
+                threadLocal.set( value );
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return "ThreadLocalContextCarrier{" + name + "}";
+        }
+    }
+}
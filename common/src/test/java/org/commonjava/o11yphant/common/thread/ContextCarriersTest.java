@@ -0,0 +1,124 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.common.thread;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ContextCarriersTest
+{
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void registeredFactoryIsSelected()
+            throws Exception
+    {
+        File services = new File( temp.getRoot(), "META-INF/services" );
+        assertTrue( services.mkdirs() );
+        Files.write( new File( services, ContextCarrierFactory.class.getName() ).toPath(),
+                     Collections.singletonList( RecordingFactory.class.getName() ), StandardCharsets.UTF_8 );
+
+        try (URLClassLoader loader = new URLClassLoader( new URL[] { temp.getRoot().toURI().toURL() },
+                                                         getClass().getClassLoader() ))
+        {
+            ContextCarrierFactory factory = ContextCarriers.loadFactory( loader );
+            assertTrue( factory instanceof RecordingFactory );
+        }
+    }
+
+    @Test
+    public void fallsBackToThreadLocalCarriers()
+            throws Exception
+    {
+        try (URLClassLoader loader = new URLClassLoader( new URL[0], null ))
+        {
+            ContextCarrierFactory factory = ContextCarriers.loadFactory( loader );
+            assertTrue( factory instanceof ThreadLocalContextCarrierFactory );
+
+            ContextCarrier<String> carrier = factory.create( "test" );
+            carrier.set( "mine" );
+
+            ExecutorService other = Executors.newSingleThreadExecutor();
+            try
+            {
+                assertNull( other.submit( carrier::get ).get( 5, TimeUnit.SECONDS ) );
+            }
+            finally
+            {
+                other.shutdown();
+            }
+
+            assertEquals( "mine", carrier.get() );
+            carrier.remove();
+            assertNull( carrier.get() );
+        }
+    }
+
+    @Test
+    public void callWithRestoresPreviousBinding()
+            throws Exception
+    {
+        ContextCarrier<String> carrier = new ThreadLocalContextCarrierFactory().create( "test" );
+        carrier.set( "outer" );
+
+        assertEquals( "inner|changed", carrier.callWith( "inner", () -> {
+            String seen = carrier.get();
+            carrier.set( "changed" );
+            return seen + "|" + carrier.get();
+        } ) );
+        assertEquals( "outer", carrier.get() );
+
+        try
+        {
+            carrier.callWith( null, () -> {
+                assertNull( carrier.get() );
+                throw new IllegalStateException( "boom" );
+            } );
+            fail( "exception expected" );
+        }
+        catch ( IllegalStateException e )
+        {
+            assertEquals( "boom", e.getMessage() );
+        }
+        assertEquals( "outer", carrier.get() );
+
+        carrier.remove();
+        carrier.callWith( "inner", () -> null );
+        assertNull( carrier.get() );
+    }
+
+    public static class RecordingFactory
+            extends ThreadLocalContextCarrierFactory
+    {
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.common.thread;
+
+import ch.qos.logback.classic.util.LogbackMDCAdapter;
+import org.slf4j.ILoggerFactory;
+import org.slf4j.IMarkerFactory;
+import org.slf4j.helpers.BasicMDCAdapter;
+import org.slf4j.helpers.BasicMarkerFactory;
+import org.slf4j.helpers.NOPLoggerFactory;
+import org.slf4j.spi.MDCAdapter;
+import org.slf4j.spi.SLF4JServiceProvider;
+
+import java.util.Deque;
+
+/**
+ * Test-only SLF4J binding whose MDC is logback's copy-on-write {@link LogbackMDCAdapter}, so the zero-copy MDC capture
+ * in {@link ThreadContext} is exercised. Logback 1.2 is not an SLF4J 2 provider and would never be bound otherwise.
+ */
+public class LogbackMdcTestServiceProvider
+        implements SLF4JServiceProvider
+{
+    private final ILoggerFactory loggerFactory = new NOPLoggerFactory();
+
+    private final IMarkerFactory markerFactory = new BasicMarkerFactory();
+
+    private final MDCAdapter mdcAdapter = new Slf4j2LogbackMDCAdapter();
+
+    @Override
+    public ILoggerFactory getLoggerFactory()
+    {
+        return loggerFactory;
+    }
+
+    @Override
+    public IMarkerFactory getMarkerFactory()
+    {
+        return markerFactory;
+    }
+
+    @Override
+    public MDCAdapter getMDCAdapter()
+    {
+        return mdcAdapter;
+    }
+
+    @Override
+    public String getRequestedApiVersion()
+    {
+        return "2.0.99";
+    }
+
+    @Override
+    public void initialize()
+    {
+    }
+
+    /**
+     * Logback 1.2's adapter predates the keyed deques added to the SLF4J 2 interface; those are kept separately.
+     */
+    private static final class Slf4j2LogbackMDCAdapter
+            extends LogbackMDCAdapter
+    {
+        private final BasicMDCAdapter deques = new BasicMDCAdapter();
+
+        @Override
+        public void pushByKey( String key, String value )
+        {
+            deques.pushByKey( key, value );
+        }
+
+        @Override
+        public String popByKey( String key )
+        {
+            return deques.popByKey( key );
+        }
+
+        @Override
+        public Deque<String> getCopyOfDequeByKey( String key )
+        {
+            return deques.getCopyOfDequeByKey( key );
+        }
+
+        @Override
+        public void clearDequeByKey( String key )
+        {
+            deques.clearDequeByKey( key );
+        }
+    }
+}
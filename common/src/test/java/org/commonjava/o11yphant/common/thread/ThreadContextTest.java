@@ -0,0 +1,340 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.common.thread;
+
+import ch.qos.logback.classic.util.LogbackMDCAdapter;
+import org.junit.After;
+import org.junit.Test;
+import org.slf4j.MDC;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ThreadContextTest
+{
+    private static final ContextKey<Long> NANOS = ContextKey.longKey( "test-nanos" );
+
+    private static final ContextKey<String> LABEL = ContextKey.of( "test-label", String.class );
+
+    private static final ContextKey<Long> IO_NANOS = ContextKey.summingLongKey( "test-io-nanos" );
+
+    @After
+    public void tearDown()
+    {
+        ThreadContext.clearContext();
+        MDC.clear();
+    }
+
+    @Test
+    public void capturedMdcIsNotCopiedAndDoesNotChangeAfterwards()
+    {
+        assertTrue( MDC.getMDCAdapter() instanceof LogbackMDCAdapter );
+        LogbackMDCAdapter adapter = (LogbackMDCAdapter) MDC.getMDCAdapter();
+
+        MDC.put( "request", "first" );
+        ThreadContext ctx = ThreadContext.getContext( true );
+        Map<String, String> captured = ctx.getMdcMap();
+
+        // zero-copy: the context holds logback's own map, not a copy of it
+        assertSame( adapter.getPropertyMap(), captured );
+        assertEquals( "first", captured.get( "request" ) );
+
+        MDC.put( "request", "second" );
+        MDC.put( "user", "bob" );
+        MDC.remove( "request" );
+
+        assertEquals( "first", captured.get( "request" ) );
+        assertFalse( captured.containsKey( "user" ) );
+        assertEquals( 1, captured.size() );
+        assertNotSame( captured, adapter.getPropertyMap() );
+    }
+
+    @Test
+    public void typedSlotsAreVisibleThroughMapView()
+    {
+        ThreadContext ctx = ThreadContext.getContext( true );
+        ctx.putLong( NANOS, 42L );
+        ctx.put( LABEL, "foo" );
+        ctx.put( "plain", "bar" );
+
+        assertEquals( 42L, ctx.get( "test-nanos" ) );
+        assertEquals( "foo", ctx.get( "test-label" ) );
+        assertEquals( 3, ctx.size() );
+        assertTrue( ctx.keySet().contains( "test-nanos" ) );
+
+        ctx.put( "test-nanos", 7 );
+        assertEquals( 7L, ctx.getLong( NANOS, 0L ) );
+        assertEquals( 10L, ctx.addLong( NANOS, 3L ) );
+
+        ctx.remove( "test-label" );
+        assertNull( ctx.get( LABEL ) );
+        assertFalse( ctx.containsKey( "test-label" ) );
+    }
+
+    @Test
+    public void mapViewsSupportRemovalWhetherOrNotSlotsAreSet()
+    {
+        ThreadContext ctx = ThreadContext.getContext( true );
+        ctx.put( "a", "1" );
+        ctx.put( "b", "2" );
+        assertTrue( ctx.keySet().remove( "a" ) );
+        assertFalse( ctx.containsKey( "a" ) );
+
+        ctx.put( LABEL, "foo" );
+        assertTrue( ctx.keySet().remove( "b" ) );
+        assertTrue( ctx.values().remove( "foo" ) );
+        assertTrue( ctx.isEmpty() );
+
+        ctx.putLong( NANOS, 3L );
+        ctx.put( "c", "3" );
+        ctx.entrySet().removeIf( e -> e.getKey().equals( "test-nanos" ) );
+        assertEquals( -1L, ctx.getLong( NANOS, -1L ) );
+        assertEquals( 1, ctx.keySet().size() );
+    }
+
+    @Test
+    public void valuePutBeforeKeyRegistrationMovesIntoSlot()
+    {
+        ThreadContext ctx = ThreadContext.getContext( true );
+        ctx.put( "test-late-key", 5L );
+
+        ContextKey<Long> late = ContextKey.longKey( "test-late-key" );
+        assertEquals( 5L, ctx.getLong( late, 0L ) );
+        assertEquals( 5L, ctx.get( "test-late-key" ) );
+        assertEquals( 1, ctx.size() );
+
+        ctx.addLong( late, 1L );
+        assertEquals( 6L, ctx.get( late ).longValue() );
+        assertEquals( 1, ctx.keySet().size() );
+    }
+
+    @Test
+    public void removedPrimitiveSlotStartsFromZero()
+    {
+        ThreadContext ctx = ThreadContext.getContext( true );
+        ctx.putLong( NANOS, 100L );
+        ctx.remove( NANOS );
+
+        assertEquals( -1L, ctx.getLong( NANOS, -1L ) );
+        assertEquals( 5L, ctx.addLong( NANOS, 5L ) );
+    }
+
+    /**
+     * Many threads repeatedly join and leave a shared context while the owning thread holds its reference; finalizers
+     * must only run once the owner lets go, and then exactly once, including ones registered concurrently with it.
+     */
+    @Test
+    public void finalizersRunExactlyOnceUnderContention()
+            throws Exception
+    {
+        final int threads = 64;
+        final int rounds = 50;
+
+        for ( int r = 0; r < rounds; r++ )
+        {
+            ThreadContext ctx = ThreadContext.getContext( true );
+            AtomicInteger early = new AtomicInteger();
+            AtomicInteger runs = new AtomicInteger();
+            AtomicInteger lateRuns = new AtomicInteger();
+            ctx.registerFinalizer( c -> runs.incrementAndGet() );
+
+            ExecutorService pool = Executors.newFixedThreadPool( threads );
+            CyclicBarrier start = new CyclicBarrier( threads );
+            CountDownLatch done = new CountDownLatch( threads );
+            for ( int t = 0; t < threads; t++ )
+            {
+                pool.execute( () -> {
+                    try
+                    {
+                        start.await();
+                        for ( int i = 0; i < 100; i++ )
+                        {
+                            ThreadContext.setContext( ctx );
+                            ThreadContext.clearContext();
+                            if ( runs.get() > 0 )
+                            {
+                                early.incrementAndGet();
+                            }
+                        }
+                    }
+                    catch ( Exception e )
+                    {
+                        throw new IllegalStateException( e );
+                    }
+                    finally
+                    {
+                        done.countDown();
+                    }
+                } );
+            }
+
+            assertTrue( done.await( 30, TimeUnit.SECONDS ) );
+            assertEquals( 0, runs.get() );
+
+            // race a late registration against the final release
+            CountDownLatch registered = new CountDownLatch( 1 );
+            pool.execute( () -> {
+                ctx.registerFinalizer( c -> lateRuns.incrementAndGet() );
+                registered.countDown();
+            } );
+            ThreadContext.clearContext();
+            assertTrue( registered.await( 5, TimeUnit.SECONDS ) );
+
+            pool.shutdown();
+            assertTrue( pool.awaitTermination( 5, TimeUnit.SECONDS ) );
+
+            assertEquals( 0, early.get() );
+            assertEquals( 1, runs.get() );
+            assertEquals( 1, lateRuns.get() );
+        }
+    }
+
+    @Test
+    public void trackerCountsContextsUntilCleared()
+    {
+        ThreadContextTracker.enable( true );
+        try
+        {
+            int before = ThreadContextTracker.getLiveCount();
+            ThreadContext ctx = ThreadContext.getContext( true );
+            ctx.put( LABEL, "foo" );
+
+            assertEquals( before + 1, ThreadContextTracker.getLiveCount() );
+            assertTrue( ThreadContextTracker.getLiveEntries() >= 1 );
+            assertTrue( ThreadContextTracker.checkForLeaks( 0, TimeUnit.NANOSECONDS ) >= 1 );
+
+            ThreadContext.clearContext();
+            assertEquals( before, ThreadContextTracker.getLiveCount() );
+        }
+        finally
+        {
+            ThreadContextTracker.disable();
+        }
+    }
+
+    @Test
+    public void recycledContextIsResetAndReused()
+    {
+        ThreadContext.setRecycling( true );
+        try
+        {
+            AtomicInteger runs = new AtomicInteger();
+            ThreadContext first = ThreadContext.getContext( true );
+            first.putLong( NANOS, 7L );
+            first.put( "plain", "value" );
+            first.registerFinalizer( c -> runs.incrementAndGet() );
+            ThreadContext.clearContext();
+
+            assertEquals( 1, runs.get() );
+
+            ThreadContext second = ThreadContext.getContext( true );
+            assertSame( first, second );
+            assertTrue( second.isEmpty() );
+            assertEquals( 0L, second.getLong( NANOS, 0L ) );
+
+            second.registerFinalizer( c -> runs.incrementAndGet() );
+            assertEquals( 1, runs.get() );
+
+            ThreadContext.clearContext();
+            assertEquals( 2, runs.get() );
+        }
+        finally
+        {
+            ThreadContext.setRecycling( false );
+        }
+    }
+
+    @Test
+    public void forkedChildReadsParentAndJoinsSummingKeys()
+            throws Exception
+    {
+        ThreadContext parent = ThreadContext.getContext( true );
+        parent.put( LABEL, "parent" );
+        parent.addLong( IO_NANOS, 5L );
+
+        ThreadContext child = parent.fork();
+        AtomicInteger checks = new AtomicInteger();
+        Thread t = new Thread( () -> {
+            ThreadContext.setContext( child );
+            ThreadContext ctx = ThreadContext.getContext( false );
+            if ( "parent".equals( ctx.get( LABEL ) ) && ctx.getLong( IO_NANOS, 0L ) == 0L )
+            {
+                checks.incrementAndGet();
+            }
+            ctx.put( LABEL, "child" );
+            ctx.addLong( IO_NANOS, 10L );
+            ThreadContext.clearContext();
+        } );
+        t.start();
+        t.join();
+
+        assertEquals( 1, checks.get() );
+        assertEquals( "parent", parent.get( LABEL ) );
+        assertEquals( 15L, parent.getLong( IO_NANOS, 0L ) );
+
+        // joining again is a no-op
+        child.join();
+        assertEquals( 15L, parent.getLong( IO_NANOS, 0L ) );
+    }
+
+    @Test
+    public void forkedChildKeepsParentFromBeingFinalizedOrRecycled()
+    {
+        ThreadContext.setRecycling( true );
+        try
+        {
+            AtomicInteger runs = new AtomicInteger();
+            AtomicLong joined = new AtomicLong();
+            ThreadContext parent = ThreadContext.getContext( true );
+            parent.put( LABEL, "parent" );
+            parent.registerFinalizer( c -> {
+                runs.incrementAndGet();
+                joined.set( c.getLong( IO_NANOS, 0L ) );
+            } );
+
+            ThreadContext child = parent.fork().retain();
+            ThreadContext.clearContext();
+            assertEquals( 0, runs.get() );
+
+            ThreadContext next = ThreadContext.getContext( true );
+            assertNotSame( parent, next );
+            assertEquals( "parent", child.get( LABEL ) );
+            ThreadContext.clearContext();
+
+            child.addLong( IO_NANOS, 3L );
+            child.release();
+            assertEquals( 1, runs.get() );
+            assertEquals( 3L, joined.get() );
+        }
+        finally
+        {
+            ThreadContext.setRecycling( false );
+        }
+    }
+}
@@ -25,12 +25,16 @@ public class MetricsConstants
 
     public static final String TIMER = "timer";
 
+    public static final String TIMER_STACK = "timer-stack";
+
     public static final String SKIP_METRIC = "skip-this-metric";
 
     public static final String CUMULATIVE_TIMINGS = "cumulative-timings";
 
     public static final String CUMULATIVE_COUNT = "cumulative-count";
 
+    public static final String CUMULATIVE_ACCUMULATOR = "cumulative-accumulator";
+
     public static final String AVERAGE_TIME_MS = "avg-time-ms";
 
     public static final String MAX_TIME_MS = "max-time-ms";
@@ -15,6 +15,7 @@
  */
 package org.commonjava.o11yphant.metrics;
 
+import org.commonjava.o11yphant.metrics.annotation.MetricWrapperEnd;
 import org.commonjava.o11yphant.metrics.api.Gauge;
 import org.commonjava.o11yphant.metrics.api.Histogram;
 import org.commonjava.o11yphant.metrics.api.Meter;
@@ -34,6 +35,12 @@ public interface MetricsManager
 
     long stopTimer( String name );
 
+    /**
+     * Like {@link #stopTimer(String)}, but not a {@link MetricWrapperEnd} point, so tracing adds no span fields for
+     * it. For callers that report the measured call themselves, such as the metrics interceptor.
+     */
+    long stopTimerUnwrapped( String name );
+
     Meter getMeter( String name );
 
     void accumulate( String name, final double elapsed );
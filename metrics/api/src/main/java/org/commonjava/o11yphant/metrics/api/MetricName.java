@@ -0,0 +1,166 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.api;
+
+import org.commonjava.o11yphant.metrics.util.NameUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interned, dotted metric name with its parts and its exporter-specific forms computed once, so exporters do not have
+ * to sanitize every name again on every pass. Obtain instances via {@link #of(String)} or
+ * {@link NameUtils#name(MetricName, String...)}.
+ */
+public final class MetricName
+{
+    /**
+     * Interning stops beyond this many names, so a runaway name cardinality cannot grow the cache without bound. Names
+     * of metrics that are removed from the registry (expired, cleared, dropped by a regeneration) are evicted, see
+     * {@link #evict(String)}.
+     */
+    private static final int MAX_INTERNED = 100_000;
+
+    private static final Map<String, MetricName> INTERNED = new ConcurrentHashMap<>();
+
+    private final String name;
+
+    private final int hash;
+
+    private final List<String> parts;
+
+    private final String prometheusName;
+
+    private final String graphiteName;
+
+    private MetricName( String name )
+    {
+        this.name = name;
+        this.hash = name.hashCode();
+        this.parts = Collections.unmodifiableList( Arrays.asList( name.split( "\\." ) ) );
+        this.prometheusName = sanitizePrometheus( name );
+        this.graphiteName = sanitizeGraphite( name );
+    }
+
+    public static MetricName of( String name )
+    {
+        MetricName metricName = INTERNED.get( name );
+        if ( metricName == null )
+        {
+            metricName = new MetricName( name );
+            if ( INTERNED.size() < MAX_INTERNED )
+            {
+                MetricName existing = INTERNED.putIfAbsent( name, metricName );
+                if ( existing != null )
+                {
+                    metricName = existing;
+                }
+            }
+        }
+        return metricName;
+    }
+
+    public static MetricName of( String name, String... names )
+    {
+        return of( NameUtils.name( name, names ) );
+    }
+
+    /**
+     * Drop the interned instance for a name that is no longer in use, e.g. because its metric was removed. Instances
+     * already handed out stay valid; the next {@link #of(String)} interns a new one.
+     */
+    public static void evict( String name )
+    {
+        INTERNED.remove( name );
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public List<String> getParts()
+    {
+        return parts;
+    }
+
+    /**
+     * Same as the Prometheus client's Collector.sanitizeMetricName: characters outside [a-zA-Z0-9_:] (and a leading
+     * digit) become '_'.
+     */
+    public String getPrometheusName()
+    {
+        return prometheusName;
+    }
+
+    /**
+     * Same as the codahale Graphite sender's sanitizing: trimmed, with whitespace runs replaced by '-'.
+     */
+    public String getGraphiteName()
+    {
+        return graphiteName;
+    }
+
+    private static String sanitizePrometheus( String name )
+    {
+        char[] sanitized = name.toCharArray();
+        for ( int i = 0; i < sanitized.length; i++ )
+        {
+            char ch = sanitized[i];
+            if ( !( ch == ':' || ( ch >= 'a' && ch <= 'z' ) || ( ch >= 'A' && ch <= 'Z' ) || ( i > 0 && ch >= '0'
+                            && ch <= '9' ) ) )
+            {
+                sanitized[i] = '_';
+            }
+        }
+        return new String( sanitized );
+    }
+
+    private static String sanitizeGraphite( String name )
+    {
+        return name.trim().replaceAll( "[\\s]+", "-" );
+    }
+
+    @Override
+    public boolean equals( Object o )
+    {
+        if ( this == o )
+        {
+            return true;
+        }
+        if ( !( o instanceof MetricName ) )
+        {
+            return false;
+        }
+        MetricName that = (MetricName) o;
+        return hash == that.hash && name.equals( that.name );
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return hash;
+    }
+
+    @Override
+    public String toString()
+    {
+        return name;
+    }
+}
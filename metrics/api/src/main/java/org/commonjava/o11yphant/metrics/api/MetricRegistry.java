@@ -38,4 +38,38 @@ public interface MetricRegistry
     <T> Gauge<T> gauge( String name, Gauge<T> o );
 
     Histogram histogram( String name );
+
+    Counter counter( String name );
+
+    UpDownCounter upDownCounter( String name );
+
+    default Meter meter( MetricName name )
+    {
+        return meter( name.getName() );
+    }
+
+    default Timer timer( MetricName name )
+    {
+        return timer( name.getName() );
+    }
+
+    default <T> Gauge<T> gauge( MetricName name, Gauge<T> o )
+    {
+        return gauge( name.getName(), o );
+    }
+
+    default Histogram histogram( MetricName name )
+    {
+        return histogram( name.getName() );
+    }
+
+    default Counter counter( MetricName name )
+    {
+        return counter( name.getName() );
+    }
+
+    default UpDownCounter upDownCounter( MetricName name )
+    {
+        return upDownCounter( name.getName() );
+    }
 }
@@ -26,6 +26,33 @@ public interface Timer
 
     Snapshot getSnapshot();
 
+    /**
+     * Record a duration in nanoseconds.
+     */
+    default void recordNanos( long nanos )
+    {
+        update( nanos, TimeUnit.NANOSECONDS );
+    }
+
+    /**
+     * Allocation-free alternative to {@link #time()}: keep the returned start time in a local variable and pass it
+     * to {@link #stop(long)}.
+     */
+    default long startNanos()
+    {
+        return System.nanoTime();
+    }
+
+    /**
+     * Record the time elapsed since the given {@link #startNanos()} value and return it in nanoseconds.
+     */
+    default long stop( long startNanos )
+    {
+        long elapsed = System.nanoTime() - startNanos;
+        recordNanos( elapsed );
+        return elapsed;
+    }
+
     interface Context
                     extends AutoCloseable
     {
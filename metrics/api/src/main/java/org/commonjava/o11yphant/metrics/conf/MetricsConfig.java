@@ -15,6 +15,10 @@
  */
 package org.commonjava.o11yphant.metrics.conf;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
 public interface MetricsConfig
 {
     String REPORTER_GRAPHITE = "graphite";
@@ -25,6 +29,14 @@ public interface MetricsConfig
 
     String REPORTER_PROMETHEUS = "prometheus";
 
+    String SAMPLER_COUNTER = "counter";
+
+    String SAMPLER_RANDOM = "random";
+
+    String SAMPLER_FUNCTION = "function";
+
+    String SAMPLER_TRACE = "trace";
+
     String getNodePrefix();
 
     boolean isEnabled();
@@ -40,4 +52,145 @@ public interface MetricsConfig
     ELKConfig getELKConfig();
 
     int getMeterRatio();
+
+    /**
+     * Name of the MeteringSampler deciding which requests are metered when the meter ratio is above 1, e.g.
+     * {@link #SAMPLER_RANDOM} (the default), {@link #SAMPLER_COUNTER}, {@link #SAMPLER_FUNCTION} or
+     * {@link #SAMPLER_TRACE} (requires the trace module).
+     */
+    default String getMeteringSampler()
+    {
+        return SAMPLER_RANDOM;
+    }
+
+    /**
+     * Meter ratios per golden-signal function, used by the {@link #SAMPLER_FUNCTION} sampler.
+     */
+    default Map<String, Integer> getFunctionMeterRatios()
+    {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Maximum number of classifiers whose resolved metrics are cached by wrapWithStandardMetrics. Classifiers beyond
+     * this still get metrics, resolved on every call.
+     */
+    default int getMetricHandleCacheSize()
+    {
+        return 1024;
+    }
+
+    /**
+     * Maximum number of distinct meter / timer / histogram / gauge names per name prefix (including the node prefix).
+     * Names beyond the limit are recorded in an overflow metric for the prefix instead.
+     */
+    default Map<String, Integer> getCardinalityLimits()
+    {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Regular expressions matching the full names of timers and histograms that should record into an HdrHistogram
+     * instead of codahale's exponentially decaying sample, for accurate high percentiles.
+     */
+    default List<String> getHdrHistogramPatterns()
+    {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Precision of HdrHistogram-backed timers and histograms, in significant decimal digits (1 to 5).
+     */
+    default int getHdrHistogramSignificantDigits()
+    {
+        return 2;
+    }
+
+    /**
+     * HdrHistogram-backed timers and histograms report the values recorded during the last one to two of these windows.
+     */
+    default long getHdrHistogramWindowSeconds()
+    {
+        return 60;
+    }
+
+    /**
+     * Regular expressions matching the full names of timers and histograms that should record into a mergeable
+     * quantile sketch, so per-node distributions can be combined into cluster-wide percentiles. HdrHistogram patterns
+     * take precedence when both match.
+     *
+     * Sketches never decay or roll over: their percentiles cover everything recorded since the metric was created (or
+     * last expired / regenerated), not a recent window like the default reservoirs. Use HdrHistogram patterns where
+     * recent percentiles matter. The raw buckets are only exported to Prometheus when
+     * {@link PrometheusConfig#isSketchBucketsExported()} is on.
+     */
+    default List<String> getQuantileSketchPatterns()
+    {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Relative error of the percentiles reported by sketch-backed timers and histograms.
+     */
+    default double getQuantileSketchRelativeAccuracy()
+    {
+        return 0.01;
+    }
+
+    /**
+     * Meters, timers and histograms not updated for this long are removed from the registry; 0 (the default) keeps
+     * them forever.
+     */
+    default long getMetricIdleTtlSeconds()
+    {
+        return 0;
+    }
+
+    /**
+     * Apply meter marks and timer updates from a background thread instead of on the request threads.
+     */
+    default boolean isAsyncRecordingEnabled()
+    {
+        return false;
+    }
+
+    /**
+     * Number of pending updates the asynchronous recorder can hold (rounded up to a power of two).
+     */
+    default int getAsyncRecordingQueueSize()
+    {
+        return 65536;
+    }
+
+    /**
+     * When the asynchronous recorder's queue is full, drop the update (true) or apply it on the request thread (false).
+     */
+    default boolean isAsyncRecordingDropOnFull()
+    {
+        return true;
+    }
+
+    /**
+     * Track live ThreadContext instances and expose them as gauges, to help find contexts that are never cleared.
+     */
+    default boolean isThreadContextTrackingEnabled()
+    {
+        return false;
+    }
+
+    /**
+     * Also record where each tracked ThreadContext was created, so leaked ones can be logged with their creation site.
+     */
+    default boolean isThreadContextCreationSiteCaptured()
+    {
+        return false;
+    }
+
+    /**
+     * Age after which a tracked ThreadContext that has not been cleared is counted (and logged) as leaked.
+     */
+    default long getThreadContextLeakAgeSeconds()
+    {
+        return 300;
+    }
 }
@@ -33,6 +33,8 @@ public class PrometheusConfig
 
     private String nodeLabel;
 
+    private boolean sketchBucketsExported;
+
     private final Function<String, Boolean> lookupFunction =
                     name -> expressedMetrics != null && expressedMetrics.stream().anyMatch( n -> {
         String pname = n.replace( '.', '_' );
@@ -70,4 +72,18 @@ public class PrometheusConfig
     {
         this.nodeLabel = nodeLabel;
     }
+
+    /**
+     * Whether sketch-backed timers and histograms also export their raw buckets (one series per occupied bucket index,
+     * up to a few thousand per metric), so an aggregator can merge them across nodes. Off by default.
+     */
+    public boolean isSketchBucketsExported()
+    {
+        return sketchBucketsExported;
+    }
+
+    public void setSketchBucketsExported( boolean sketchBucketsExported )
+    {
+        this.sketchBucketsExported = sketchBucketsExported;
+    }
 }
@@ -0,0 +1,32 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.sampling;
+
+import org.commonjava.o11yphant.metrics.conf.MetricsConfig;
+
+/**
+ * Decides whether the current request is metered, for the meter ratio set in {@link MetricsConfig#getMeterRatio()}.
+ * The implementation is chosen by name through {@link MetricsConfig#getMeteringSampler()}.
+ */
+public interface MeteringSampler
+{
+    String getName();
+
+    /**
+     * @param meterRatio meter about one in this many requests; always greater than 1
+     */
+    boolean isMetered( int meterRatio );
+}
@@ -16,6 +16,7 @@
 package org.commonjava.o11yphant.metrics.util;
 
 import org.commonjava.o11yphant.metrics.MetricsConstants;
+import org.commonjava.o11yphant.metrics.api.MetricName;
 
 import static org.apache.commons.lang.StringUtils.isBlank;
 
@@ -43,6 +44,14 @@ public class NameUtils
         return builder.toString();
     }
 
+    /**
+     * Append name parts to an already interned name, returning the interned result.
+     */
+    public static MetricName name( MetricName name, String... names )
+    {
+        return names == null || names.length == 0 ? name : MetricName.of( name.getName(), names );
+    }
+
     private static void append( StringBuilder builder, String part )
     {
         if ( part != null && !part.isEmpty() )
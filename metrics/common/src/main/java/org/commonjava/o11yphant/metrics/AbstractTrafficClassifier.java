@@ -20,6 +20,7 @@ import org.commonjava.o11yphant.common.thread.ThreadContext;
 import java.util.*;
 
 import static java.util.Arrays.asList;
+import static org.commonjava.o11yphant.metrics.RequestContextKeys.CACHED_FUNCTIONS_KEY;
 
 public abstract class AbstractTrafficClassifier
                 implements TrafficClassifier
@@ -49,12 +50,7 @@ public abstract class AbstractTrafficClassifier
         ThreadContext ctx = ThreadContext.getContext( false );
         if ( ctx != null )
         {
-            Object cached = ctx.get( CACHED_FUNCTIONS );
-            if ( cached != null )
-            {
-                //noinspection unchecked
-                return Optional.of( (List<String>) cached );
-            }
+            return Optional.ofNullable( ctx.get( CACHED_FUNCTIONS_KEY ) );
         }
 
         return Optional.empty();
@@ -65,7 +61,7 @@ public abstract class AbstractTrafficClassifier
         ThreadContext ctx = ThreadContext.getContext( false );
         if ( ctx != null )
         {
-            ctx.put( CACHED_FUNCTIONS, result );
+            ctx.put( CACHED_FUNCTIONS_KEY, result );
         }
     }
 
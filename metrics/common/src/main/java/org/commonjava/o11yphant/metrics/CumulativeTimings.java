@@ -0,0 +1,163 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Request-scoped accumulator of elapsed times (in milliseconds) per metric name. Each name keeps its sum, count and
+ * max as primitives updated with CAS, so recording a measurement allocates nothing once the name has been seen in the
+ * request. Maps are only built when a reporter or span asks for them.
+ */
+public final class CumulativeTimings
+{
+    private final Map<String, Stat> stats = new ConcurrentHashMap<>();
+
+    public void add( String name, double elapsed )
+    {
+        Stat stat = stats.get( name );
+        if ( stat == null )
+        {
+            stat = stats.computeIfAbsent( name, k -> new Stat() );
+        }
+        stat.add( elapsed, 1, elapsed );
+    }
+
+    /**
+     * Fold another accumulator (e.g. one from a joined child context) into this one.
+     * @return this accumulator
+     */
+    public CumulativeTimings merge( CumulativeTimings other )
+    {
+        other.stats.forEach( ( name, o ) -> stats.computeIfAbsent( name, k -> new Stat() )
+                                                 .add( o.getSum(), o.count, o.getMax() ) );
+        return this;
+    }
+
+    public boolean isEmpty()
+    {
+        return stats.isEmpty();
+    }
+
+    public double getSum( String name )
+    {
+        Stat stat = stats.get( name );
+        return stat == null ? 0 : stat.getSum();
+    }
+
+    public long getCount( String name )
+    {
+        Stat stat = stats.get( name );
+        return stat == null ? 0 : stat.count;
+    }
+
+    public double getMax( String name )
+    {
+        Stat stat = stats.get( name );
+        return stat == null ? 0 : stat.getMax();
+    }
+
+    /**
+     * @return metric name to cumulative elapsed milliseconds
+     */
+    public Map<String, Double> getTimings()
+    {
+        return toMap( Stat::getSum );
+    }
+
+    /**
+     * @return metric name to number of measurements
+     */
+    public Map<String, Integer> getCounts()
+    {
+        Map<String, Integer> result = new HashMap<>( stats.size() );
+        stats.forEach( ( k, v ) -> result.put( k, (int) v.count ) );
+        return result;
+    }
+
+    /**
+     * @return metric name to longest single measurement, in milliseconds
+     */
+    public Map<String, Double> getMaxTimings()
+    {
+        return toMap( Stat::getMax );
+    }
+
+    private Map<String, Double> toMap( ToDoubleFunction<Stat> value )
+    {
+        Map<String, Double> result = new HashMap<>( stats.size() );
+        stats.forEach( ( k, v ) -> result.put( k, value.applyAsDouble( v ) ) );
+        return result;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "CumulativeTimings{timings=" + getTimings() + ", counts=" + getCounts() + "}";
+    }
+
+    private static final class Stat
+    {
+        private static final AtomicLongFieldUpdater<Stat> SUM =
+                AtomicLongFieldUpdater.newUpdater( Stat.class, "sumBits" );
+
+        private static final AtomicLongFieldUpdater<Stat> COUNT =
+                AtomicLongFieldUpdater.newUpdater( Stat.class, "count" );
+
+        private static final AtomicLongFieldUpdater<Stat> MAX =
+                AtomicLongFieldUpdater.newUpdater( Stat.class, "maxBits" );
+
+        private volatile long sumBits;
+
+        private volatile long count;
+
+        private volatile long maxBits;
+
+        void add( double sum, long n, double max )
+        {
+            long prev;
+            do
+            {
+                prev = sumBits;
+            }
+            while ( !SUM.compareAndSet( this, prev,
+                                        Double.doubleToRawLongBits( Double.longBitsToDouble( prev ) + sum ) ) );
+
+            COUNT.addAndGet( this, n );
+
+            do
+            {
+                prev = maxBits;
+            }
+            while ( max > Double.longBitsToDouble( prev ) && !MAX.compareAndSet( this, prev,
+                                                                                  Double.doubleToRawLongBits( max ) ) );
+        }
+
+        double getSum()
+        {
+            return Double.longBitsToDouble( sumBits );
+        }
+
+        double getMax()
+        {
+            return Double.longBitsToDouble( maxBits );
+        }
+    }
+}
@@ -15,12 +15,14 @@
  */
 package org.commonjava.o11yphant.metrics;
 
+import org.commonjava.o11yphant.common.thread.ContextKey;
 import org.commonjava.o11yphant.common.thread.ThreadContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import static org.commonjava.o11yphant.metrics.RequestContextConstants.END_NANOS;
-import static org.commonjava.o11yphant.metrics.RequestContextConstants.RAW_IO_WRITE_NANOS;
+import static org.commonjava.o11yphant.metrics.RequestContextKeys.CUMULATIVE_TIMINGS_KEY;
+import static org.commonjava.o11yphant.metrics.RequestContextKeys.END_NANOS_KEY;
+import static org.commonjava.o11yphant.metrics.RequestContextKeys.RAW_IO_WRITE_NANOS_KEY;
 
 /**
  * The scope annotations (Thread, Header, MDC) tell where the constant is available/used. The static methods are used
@@ -28,11 +30,31 @@ import static org.commonjava.o11yphant.metrics.RequestContextConstants.RAW_IO_WR
  */
 public class RequestContextHelper
 {
+    /**
+     * System property; when set to false, {@link #setContext(String, Object)} and {@link #clearContext(String)} leave the
+     * MDC alone and log patterns are expected to read request fields through
+     * {@link org.commonjava.o11yphant.metrics.logback.ThreadContextConverter}. That converter only sees the
+     * ThreadContext of the thread that formats the event, so this requires appenders that format synchronously; behind
+     * an AsyncAppender the fields are missing from the output.
+     */
+    public static final String MDC_EAGER_PROPERTY = "o11yphant.mdc.eager";
+
+    private static boolean mdcEager = Boolean.parseBoolean( System.getProperty( MDC_EAGER_PROPERTY, "true" ) );
+
     private static final Logger logger = LoggerFactory.getLogger( RequestContextHelper.class );
 
+    static
+    {
+        RequestContextKeys.register();
+    }
+
     public static void setContext( final String key, final Object value )
     {
-        org.slf4j.MDC.put( key, String.valueOf( value ) );
+        if ( mdcEager )
+        {
+            org.slf4j.MDC.put( key, String.valueOf( value ) );
+        }
+
         ThreadContext ctx = ThreadContext.getContext( true );
         logger.trace( "Setting value: '{}' = '{}' in ThreadContext: {}", key, value, ctx );
         ctx.computeIfAbsent( key, k -> value );
@@ -59,7 +81,10 @@ public class RequestContextHelper
 
     public static void clearContext( final String key )
     {
-        org.slf4j.MDC.remove( key );
+        if ( mdcEager )
+        {
+            org.slf4j.MDC.remove( key );
+        }
 
         ThreadContext ctx = ThreadContext.getContext( false );
         if ( ctx != null )
@@ -69,14 +94,41 @@ public class RequestContextHelper
         }
     }
 
+    // for test
+    static void setMdcEager( boolean eager )
+    {
+        mdcEager = eager;
+    }
+
+    public static <T> T getContext( final ContextKey<T> key, final T defaultValue )
+    {
+        ThreadContext ctx = ThreadContext.getContext( false );
+        return ctx == null ? defaultValue : ctx.getOrDefault( key, defaultValue );
+    }
+
     public static long getRequestEndNanos()
     {
-        return getContext( END_NANOS, System.nanoTime() );
+        ThreadContext ctx = ThreadContext.getContext( false );
+        if ( ctx != null && ctx.contains( END_NANOS_KEY ) )
+        {
+            return ctx.getLong( END_NANOS_KEY, 0L );
+        }
+
+        return System.nanoTime();
     }
 
     public static long getRawIoWriteNanos()
     {
-        return getContext( RAW_IO_WRITE_NANOS, 0L );
+        ThreadContext ctx = ThreadContext.getContext( false );
+        return ctx == null ? 0L : ctx.getLong( RAW_IO_WRITE_NANOS_KEY, 0L );
+    }
+
+    /**
+     * @return the cumulative timings recorded for the current request, or null if nothing was measured.
+     */
+    public static CumulativeTimings getCumulativeTimings()
+    {
+        return getContext( CUMULATIVE_TIMINGS_KEY, null );
     }
 
 }
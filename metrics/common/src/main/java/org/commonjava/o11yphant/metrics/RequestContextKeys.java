@@ -0,0 +1,101 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics;
+
+import org.commonjava.o11yphant.common.thread.ContextKey;
+import org.commonjava.o11yphant.common.thread.ThreadContext;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static org.commonjava.o11yphant.metrics.AbstractTrafficClassifier.CACHED_FUNCTIONS;
+import static org.commonjava.o11yphant.metrics.MetricsConstants.CUMULATIVE_ACCUMULATOR;
+import static org.commonjava.o11yphant.metrics.MetricsConstants.CUMULATIVE_COUNT;
+import static org.commonjava.o11yphant.metrics.MetricsConstants.CUMULATIVE_TIMINGS;
+import static org.commonjava.o11yphant.metrics.MetricsConstants.TIMER_STACK;
+import static org.commonjava.o11yphant.metrics.RequestContextConstants.END_NANOS;
+import static org.commonjava.o11yphant.metrics.RequestContextConstants.GOLDEN_SIGNALS_FUNCTIONS;
+import static org.commonjava.o11yphant.metrics.RequestContextConstants.IS_METERED;
+import static org.commonjava.o11yphant.metrics.RequestContextConstants.RAW_IO_READ_NANOS;
+import static org.commonjava.o11yphant.metrics.RequestContextConstants.RAW_IO_WRITE_NANOS;
+import static org.commonjava.o11yphant.metrics.RequestContextConstants.REQUEST_LATENCY_MILLIS;
+import static org.commonjava.o11yphant.metrics.RequestContextConstants.REQUEST_LATENCY_NS;
+
+/**
+ * Typed {@link ThreadContext} slots for the hottest {@link RequestContextConstants}. The plain string constants keep
+ * working through the {@link Map} view of {@link ThreadContext}; these keys avoid the hashing, casting and (for the
+ * nanosecond / millisecond values) boxing.
+ *
+ * The raw I/O times and the cumulative timings are joinable: a forked child context accumulates its own and adds them
+ * to the parent's when it is joined.
+ *
+ * {@link MetricsConstants#CUMULATIVE_TIMINGS} and {@link MetricsConstants#CUMULATIVE_COUNT} are still readable through
+ * the {@link Map} view: they are derived from {@link #CUMULATIVE_TIMINGS_KEY} on lookup, as freshly built maps.
+ */
+@SuppressWarnings( { "unchecked", "rawtypes" } )
+public final class RequestContextKeys
+{
+    public static final ContextKey<Boolean> IS_METERED_KEY = ContextKey.of( IS_METERED, Boolean.class );
+
+    public static final ContextKey<Long> END_NANOS_KEY = ContextKey.longKey( END_NANOS );
+
+    public static final ContextKey<Long> RAW_IO_WRITE_NANOS_KEY = ContextKey.summingLongKey( RAW_IO_WRITE_NANOS );
+
+    public static final ContextKey<Long> RAW_IO_READ_NANOS_KEY = ContextKey.summingLongKey( RAW_IO_READ_NANOS );
+
+    public static final ContextKey<Long> REQUEST_LATENCY_NS_KEY = ContextKey.longKey( REQUEST_LATENCY_NS );
+
+    public static final ContextKey<Double> REQUEST_LATENCY_MILLIS_KEY = ContextKey.doubleKey( REQUEST_LATENCY_MILLIS );
+
+    public static final ContextKey<Collection<String>> GOLDEN_SIGNALS_FUNCTIONS_KEY =
+            ContextKey.of( GOLDEN_SIGNALS_FUNCTIONS, (Class) Collection.class );
+
+    public static final ContextKey<List<String>> CACHED_FUNCTIONS_KEY =
+            ContextKey.of( CACHED_FUNCTIONS, (Class) List.class );
+
+    public static final ContextKey<CumulativeTimings> CUMULATIVE_TIMINGS_KEY =
+            ContextKey.of( CUMULATIVE_ACCUMULATOR, CumulativeTimings.class, CumulativeTimings::merge );
+
+    /**
+     * Joinable only so a forked child gets its own stack; timers the child leaves running are dropped on join.
+     */
+    public static final ContextKey<TimerStack> TIMER_STACK_KEY =
+            ContextKey.of( TIMER_STACK, TimerStack.class, ( parent, child ) -> parent );
+
+    static
+    {
+        ThreadContext.registerDerivedEntry( CUMULATIVE_TIMINGS, ctx -> {
+            CumulativeTimings timings = ctx.get( CUMULATIVE_TIMINGS_KEY );
+            return timings == null ? null : timings.getTimings();
+        } );
+        ThreadContext.registerDerivedEntry( CUMULATIVE_COUNT, ctx -> {
+            CumulativeTimings timings = ctx.get( CUMULATIVE_TIMINGS_KEY );
+            return timings == null ? null : timings.getCounts();
+        } );
+    }
+
+    private RequestContextKeys()
+    {
+    }
+
+    /**
+     * Forces registration of the keys above, so their names are routed to slots before any context is populated.
+     */
+    static void register()
+    {
+    }
+}
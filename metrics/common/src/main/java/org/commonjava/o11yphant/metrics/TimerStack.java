@@ -0,0 +1,80 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics;
+
+import org.commonjava.o11yphant.metrics.api.Timer;
+
+import java.util.Arrays;
+
+/**
+ * Request-scoped stack of running {@link Timer.Context}s, replacing one ThreadContext entry per timer name. Timers are
+ * pushed as they start; stopping a name removes its most recently started timer, so nested and re-entrant timers for
+ * the same name are matched up last-in, first-out.
+ */
+public final class TimerStack
+{
+    private String[] names = new String[4];
+
+    private Timer.Context[] timers = new Timer.Context[4];
+
+    private int size;
+
+    public synchronized void push( String name, Timer.Context timer )
+    {
+        if ( size == names.length )
+        {
+            names = Arrays.copyOf( names, size * 2 );
+            timers = Arrays.copyOf( timers, size * 2 );
+        }
+
+        names[size] = name;
+        timers[size] = timer;
+        size++;
+    }
+
+    /**
+     * Remove the most recently pushed timer with this name.
+     * @return the timer, or null if there is none running under that name
+     */
+    public synchronized Timer.Context pop( String name )
+    {
+        for ( int i = size - 1; i >= 0; i-- )
+        {
+            String n = names[i];
+            if ( n == name || n.equals( name ) )
+            {
+                Timer.Context timer = timers[i];
+                int moved = size - i - 1;
+                if ( moved > 0 )
+                {
+                    System.arraycopy( names, i + 1, names, i, moved );
+                    System.arraycopy( timers, i + 1, timers, i, moved );
+                }
+                size--;
+                names[size] = null;
+                timers[size] = null;
+                return timer;
+            }
+        }
+
+        return null;
+    }
+
+    public synchronized int size()
+    {
+        return size;
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.impl;
+
+import org.commonjava.o11yphant.metrics.api.Counter;
+import org.commonjava.o11yphant.metrics.api.UpDownCounter;
+
+public class O11Counter
+                implements Counter, UpDownCounter
+{
+    private final com.codahale.metrics.Counter codahaleCounter;
+
+    public O11Counter()
+    {
+        codahaleCounter = new com.codahale.metrics.Counter();
+    }
+
+    public O11Counter( com.codahale.metrics.Counter counter )
+    {
+        codahaleCounter = counter;
+    }
+
+    @Override
+    public void inc()
+    {
+        codahaleCounter.inc();
+    }
+
+    @Override
+    public void inc( long n )
+    {
+        codahaleCounter.inc( n );
+    }
+
+    @Override
+    public void dec()
+    {
+        codahaleCounter.dec();
+    }
+
+    @Override
+    public void dec( long n )
+    {
+        codahaleCounter.dec( n );
+    }
+
+    @Override
+    public long getCount()
+    {
+        return codahaleCounter.getCount();
+    }
+
+    public com.codahale.metrics.Counter getCodahaleCounter()
+    {
+        return codahaleCounter;
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.logback;
+
+import ch.qos.logback.classic.pattern.ClassicConverter;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import org.commonjava.o11yphant.common.thread.ThreadContext;
+import org.commonjava.o11yphant.metrics.RequestContextHelper;
+
+import java.util.Map;
+
+import static ch.qos.logback.core.util.OptionHelper.extractDefaultReplacement;
+
+/**
+ * Logback converter that renders a request field straight from the {@link ThreadContext}, so the value only becomes a
+ * string when a log event is actually formatted. Register it in logback.xml:
+ * <pre>
+ * &lt;conversionRule conversionWord="ctx"
+ *                 converterClass="org.commonjava.o11yphant.metrics.logback.ThreadContextConverter" /&gt;
+ * </pre>
+ * and use it like %X: <code>%ctx{trace-id}</code> or <code>%ctx{trace-id:-none}</code>. Fields that are not in the
+ * ThreadContext are looked up in the event's MDC.
+ *
+ * The ThreadContext is only consulted when the event is formatted on the thread that logged it. Appenders that format
+ * on another thread, like AsyncAppender, get the event's MDC only, which logback captures when the event is queued.
+ * Combined with <code>-D{@value RequestContextHelper#MDC_EAGER_PROPERTY}=false</code>,
+ * {@link RequestContextHelper#setContext(String, Object)} stops copying every field into the MDC, so that mode needs
+ * synchronous appenders: the fields it keeps out of the MDC are not in any queued event.
+ */
+public class ThreadContextConverter
+        extends ClassicConverter
+{
+    private String key;
+
+    private String defaultValue = "";
+
+    @Override
+    public void start()
+    {
+        String[] keyInfo = extractDefaultReplacement( getFirstOption() );
+        key = keyInfo[0];
+        if ( keyInfo[1] != null )
+        {
+            defaultValue = keyInfo[1];
+        }
+        super.start();
+    }
+
+    @Override
+    public void stop()
+    {
+        key = null;
+        super.stop();
+    }
+
+    @Override
+    public String convert( ILoggingEvent event )
+    {
+        if ( key == null )
+        {
+            return defaultValue;
+        }
+
+        // the formatting thread's context only belongs to the event when the event was logged on this thread
+        if ( Thread.currentThread().getName().equals( event.getThreadName() ) )
+        {
+            ThreadContext ctx = ThreadContext.getContext( false );
+            Object value = ctx == null ? null : ctx.get( key );
+            if ( value != null )
+            {
+                return String.valueOf( value );
+            }
+        }
+
+        Map<String, String> mdc = event.getMDCPropertyMap();
+        String mdcValue = mdc == null ? null : mdc.get( key );
+        return mdcValue == null ? defaultValue : mdcValue;
+    }
+}
@@ -26,7 +26,6 @@ import org.commonjava.o11yphant.metrics.impl.O11Timer;
 import java.util.HashMap;
 import java.util.Map;
 
-import java.util.concurrent.TimeUnit;
 
 public class GoldenSignalsFunctionMetrics
 {
@@ -62,7 +61,7 @@ public class GoldenSignalsFunctionMetrics
 
     public GoldenSignalsFunctionMetrics latency( long duration )
     {
-        latency.update( duration, TimeUnit.NANOSECONDS );
+        latency.recordNanos( duration );
         return this;
     }
 
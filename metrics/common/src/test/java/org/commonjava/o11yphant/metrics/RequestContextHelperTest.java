@@ -0,0 +1,92 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import org.commonjava.o11yphant.common.thread.ThreadContext;
+import org.commonjava.o11yphant.metrics.logback.ThreadContextConverter;
+import org.junit.After;
+import org.junit.Test;
+import org.slf4j.MDC;
+
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class RequestContextHelperTest
+{
+    @After
+    public void tearDown()
+    {
+        RequestContextHelper.setMdcEager( true );
+        ThreadContext.clearContext();
+        MDC.clear();
+    }
+
+    @Test
+    public void eagerModeWritesTheMdc()
+    {
+        RequestContextHelper.setContext( "trace-id", 42 );
+        assertEquals( "42", MDC.get( "trace-id" ) );
+        assertEquals( Integer.valueOf( 42 ), RequestContextHelper.getContext( "trace-id" ) );
+
+        RequestContextHelper.clearContext( "trace-id" );
+        assertNull( MDC.get( "trace-id" ) );
+        assertNull( RequestContextHelper.getContext( "trace-id" ) );
+    }
+
+    @Test
+    public void lazyModeLeavesTheMdcAlone()
+            throws Exception
+    {
+        RequestContextHelper.setMdcEager( false );
+        MDC.put( "trace-id", "unrelated" );
+
+        RequestContextHelper.setContext( "trace-id", 42 );
+        assertEquals( "unrelated", MDC.get( "trace-id" ) );
+        MDC.remove( "trace-id" );
+
+        ThreadContextConverter converter = new ThreadContextConverter();
+        converter.setOptionList( Collections.singletonList( "trace-id:-none" ) );
+        converter.start();
+
+        LoggingEvent event =
+                new LoggingEvent( getClass().getName(), new LoggerContext().getLogger( "test" ), Level.INFO, "message",
+                                  null, null );
+        assertEquals( "42", converter.convert( event ) );
+
+        // an event formatted on another thread only has the MDC, which never saw the field
+        event.prepareForDeferredProcessing();
+        ExecutorService worker = Executors.newSingleThreadExecutor();
+        try
+        {
+            assertEquals( "none", worker.submit( () -> converter.convert( event ) ).get( 5, TimeUnit.SECONDS ) );
+        }
+        finally
+        {
+            worker.shutdown();
+        }
+
+        RequestContextHelper.clearContext( "trace-id" );
+        assertNull( RequestContextHelper.getContext( "trace-id" ) );
+    }
+}
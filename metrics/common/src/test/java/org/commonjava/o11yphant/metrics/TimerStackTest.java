@@ -0,0 +1,98 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics;
+
+import org.commonjava.o11yphant.metrics.api.Timer;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class TimerStackTest
+{
+    @Test
+    public void sameNameTimersStopInnermostFirst()
+    {
+        TimerStack stack = new TimerStack();
+        Timer.Context outer = new TestContext();
+        Timer.Context inner = new TestContext();
+        Timer.Context innermost = new TestContext();
+
+        stack.push( "node.timer", outer );
+        stack.push( "node.timer", inner );
+        stack.push( "node.timer", innermost );
+
+        assertSame( innermost, stack.pop( "node.timer" ) );
+        assertSame( inner, stack.pop( "node.timer" ) );
+        assertSame( outer, stack.pop( "node.timer" ) );
+        assertNull( stack.pop( "node.timer" ) );
+        assertEquals( 0, stack.size() );
+    }
+
+    @Test
+    public void outOfOrderStopLeavesOtherTimersInPlace()
+    {
+        TimerStack stack = new TimerStack();
+        Timer.Context a = new TestContext();
+        Timer.Context b = new TestContext();
+        Timer.Context c = new TestContext();
+
+        stack.push( "a", a );
+        stack.push( "b", b );
+        stack.push( "c", c );
+
+        assertSame( a, stack.pop( new String( "a" ) ) );
+        assertEquals( 2, stack.size() );
+        assertNull( stack.pop( "a" ) );
+
+        assertSame( c, stack.pop( "c" ) );
+        assertSame( b, stack.pop( "b" ) );
+        assertEquals( 0, stack.size() );
+    }
+
+    @Test
+    public void growsPastInitialCapacity()
+    {
+        TimerStack stack = new TimerStack();
+        Timer.Context[] timers = new Timer.Context[10];
+        for ( int i = 0; i < timers.length; i++ )
+        {
+            timers[i] = new TestContext();
+            stack.push( "t" + ( i % 3 ), timers[i] );
+        }
+
+        assertSame( timers[9], stack.pop( "t0" ) );
+        assertSame( timers[8], stack.pop( "t2" ) );
+        assertSame( timers[6], stack.pop( "t0" ) );
+        assertEquals( 7, stack.size() );
+    }
+
+    private static final class TestContext
+            implements Timer.Context
+    {
+        @Override
+        public long stop()
+        {
+            return 0;
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.logback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import org.commonjava.o11yphant.common.thread.ThreadContext;
+import org.junit.After;
+import org.junit.Test;
+import org.slf4j.MDC;
+
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class ThreadContextConverterTest
+{
+    private final LoggerContext loggerContext = new LoggerContext();
+
+    @After
+    public void tearDown()
+    {
+        ThreadContext.clearContext();
+        MDC.clear();
+    }
+
+    @Test
+    public void rendersFieldFromThreadContext()
+    {
+        ThreadContext.getContext( true ).put( "trace-id", 42 );
+        assertEquals( "42", converter( "trace-id:-none" ).convert( event() ) );
+    }
+
+    @Test
+    public void fallsBackToMdcThenDefault()
+    {
+        ThreadContext.getContext( true );
+        MDC.put( "user", "bob" );
+
+        LoggingEvent event = event();
+        assertEquals( "bob", converter( "user" ).convert( event ) );
+        assertEquals( "none", converter( "trace-id:-none" ).convert( event ) );
+        assertEquals( "", converter( "trace-id" ).convert( event ) );
+    }
+
+    @Test
+    public void deferredEventIgnoresTheFormattingThreadContext()
+            throws Exception
+    {
+        ThreadContext.getContext( true ).put( "trace-id", "mine" );
+        MDC.put( "trace-id", "from-mdc" );
+
+        LoggingEvent event = event();
+        // what AsyncAppender does before queueing the event
+        event.prepareForDeferredProcessing();
+
+        ThreadContextConverter converter = converter( "trace-id:-none" );
+        ExecutorService worker = Executors.newSingleThreadExecutor();
+        try
+        {
+            String rendered = worker.submit( () -> {
+                ThreadContext.getContext( true ).put( "trace-id", "other-request" );
+                try
+                {
+                    return converter.convert( event );
+                }
+                finally
+                {
+                    ThreadContext.clearContext();
+                }
+            } ).get( 5, TimeUnit.SECONDS );
+
+            assertEquals( "from-mdc", rendered );
+        }
+        finally
+        {
+            worker.shutdown();
+        }
+    }
+
+    private LoggingEvent event()
+    {
+        return new LoggingEvent( getClass().getName(), loggerContext.getLogger( "test" ), Level.INFO, "message", null,
+                                 null );
+    }
+
+    private static ThreadContextConverter converter( String option )
+    {
+        ThreadContextConverter converter = new ThreadContextConverter();
+        converter.setOptionList( Collections.singletonList( option ) );
+        converter.start();
+        return converter;
+    }
+}
@@ -16,15 +16,34 @@
 package org.commonjava.o11yphant.metrics;
 
 import com.codahale.metrics.ConsoleReporter;
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Reservoir;
 import com.codahale.metrics.health.HealthCheckRegistry;
+import org.commonjava.o11yphant.metrics.api.Counter;
 import org.commonjava.o11yphant.metrics.api.Gauge;
 import org.commonjava.o11yphant.metrics.api.Histogram;
 import org.commonjava.o11yphant.metrics.api.Meter;
 import org.commonjava.o11yphant.metrics.api.Metric;
+import org.commonjava.o11yphant.metrics.api.MetricName;
 import org.commonjava.o11yphant.metrics.api.MetricRegistry;
 import org.commonjava.o11yphant.metrics.api.MetricSet;
 import org.commonjava.o11yphant.metrics.api.Timer;
+import org.commonjava.o11yphant.metrics.api.UpDownCounter;
 import org.commonjava.o11yphant.metrics.api.healthcheck.HealthCheck;
+import org.commonjava.o11yphant.metrics.engine.CodahaleCounterAdapter;
+import org.commonjava.o11yphant.metrics.engine.CodahaleHistogramAdapter;
+import org.commonjava.o11yphant.metrics.engine.CodahaleMeterAdapter;
+import org.commonjava.o11yphant.metrics.engine.CodahaleTimerAdapter;
+import org.commonjava.o11yphant.metrics.engine.CodahaleUpDownCounterAdapter;
+import org.commonjava.o11yphant.metrics.engine.NativeCounter;
+import org.commonjava.o11yphant.metrics.engine.NativeHistogram;
+import org.commonjava.o11yphant.metrics.engine.NativeMeter;
+import org.commonjava.o11yphant.metrics.engine.NativeTimer;
+import org.commonjava.o11yphant.metrics.engine.NativeUpDownCounter;
+import org.commonjava.o11yphant.metrics.expiry.TouchClock;
+import org.commonjava.o11yphant.metrics.expiry.TouchTracking;
+import org.commonjava.o11yphant.metrics.hdr.ReservoirSelector;
+import org.commonjava.o11yphant.metrics.impl.O11Counter;
 import org.commonjava.o11yphant.metrics.impl.O11Histogram;
 import org.commonjava.o11yphant.metrics.impl.O11Meter;
 import org.commonjava.o11yphant.metrics.impl.O11Timer;
@@ -33,10 +52,17 @@ import org.slf4j.LoggerFactory;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import static com.codahale.metrics.MetricFilter.ALL;
 import static org.apache.commons.lang3.StringUtils.join;
@@ -46,23 +72,51 @@ import static org.commonjava.o11yphant.metrics.util.NameUtils.name;
 public class DefaultMetricRegistry
                 implements MetricRegistry
 {
+    private static final String METER = "meter";
+
+    private static final String TIMER = "timer";
+
+    private static final String HISTOGRAM = "histogram";
+
+    private static final String GAUGE = "gauge";
+
+    private static final String COUNTER = "counter";
+
+    private static final String UP_DOWN_COUNTER = "upDownCounter";
+
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
     /**
      * This only contains metric registered via {@link #register(String, Metric)} and {@link #register(String, MetricSet)}
      */
-    private final Map<String, Metric> metrics = new ConcurrentHashMap<>();
+    private volatile Map<String, Metric> metrics = new ConcurrentHashMap<>();
+
+    /**
+     * Names exempt from idle expiry. Everything registered via {@link #register(String, Metric)} is pinned.
+     */
+    private final Set<String> pinned = ConcurrentHashMap.newKeySet();
+
+    private final List<Consumer<Collection<String>>> expiryListeners = new CopyOnWriteArrayList<>();
 
     private final com.codahale.metrics.MetricRegistry registry;
 
     private final HealthCheckRegistry healthCheckRegistry;
 
+    @Inject
+    private MetricCardinalityLimiter cardinalityLimiter;
+
+    @Inject
+    private ReservoirSelector reservoirSelector;
+
+    private volatile MetricIndex index;
+
     @Inject
     public DefaultMetricRegistry( com.codahale.metrics.MetricRegistry registry,
                                   HealthCheckRegistry healthCheckRegistry )
     {
         this.registry = registry;
         this.healthCheckRegistry = healthCheckRegistry;
+        registry.addListener( new RemovedMetricListener() );
     }
 
     @Override
@@ -70,9 +124,49 @@ public class DefaultMetricRegistry
     {
         logger.trace( "BEFORE CLEAR, found metrics:\n  {}", join( registry.getNames(), "\n  " ) );
         registry.removeMatching( ALL );
+        if ( cardinalityLimiter != null )
+        {
+            cardinalityLimiter.reset();
+        }
         logger.trace( "AFTER CLEAR, found metrics:\n  {}", join( registry.getNames(), "\n  " ) );
     }
 
+    /**
+     * Replace all metrics with the ones the populator registers. If the underlying codahale registry is a
+     * {@link GenerationalMetricRegistry}, they are registered into a fresh generation which is then swapped in, so
+     * readers see either all old or all new metrics. Otherwise this is {@link #clear()} followed by the populator.
+     */
+    public void regenerate( Consumer<MetricRegistry> populator )
+    {
+        if ( !( registry instanceof GenerationalMetricRegistry ) )
+        {
+            clear();
+            populator.accept( this );
+            return;
+        }
+
+        DefaultMetricRegistry next =
+                        new DefaultMetricRegistry( new com.codahale.metrics.MetricRegistry(), healthCheckRegistry );
+        next.reservoirSelector = reservoirSelector;
+        populator.accept( next );
+
+        ( (GenerationalMetricRegistry) registry ).swap( next.registry );
+        metrics = next.metrics;
+        // replace rather than merge, so pins of metrics the new generation dropped don't accumulate; retaining first
+        // keeps names pinned in both generations pinned throughout
+        pinned.retainAll( next.pinned );
+        pinned.addAll( next.pinned );
+        if ( cardinalityLimiter != null )
+        {
+            // the new generation was populated without the limiter, so account for its names now; metrics passed to
+            // register() never go through the limiter, as in clear(), so they take no slot
+            Set<String> limited = new HashSet<>( next.registry.getNames() );
+            limited.removeAll( next.metrics.keySet() );
+            cardinalityLimiter.reset( limited );
+        }
+        logger.trace( "Swapped in new generation with metrics:\n  {}", join( registry.getNames(), "\n  " ) );
+    }
+
     /**
      * Register a detached / standalone metric.
      *
@@ -85,11 +179,33 @@ public class DefaultMetricRegistry
     public <T extends Metric> T register( String metricName, T metric )
     {
         logger.trace( "Registering: '{}'", metricName );
+        MetricName.of( metricName );
+        pinned.add( metricName );
         if ( metric instanceof Gauge )
         {
             Gauge<?> gauge = (Gauge<?>) metric;
             registry.register( metricName, (com.codahale.metrics.Gauge<?>) gauge::getValue );
         }
+        else if ( metric instanceof NativeMeter )
+        {
+            registry.register( metricName, new CodahaleMeterAdapter( (NativeMeter) metric ) );
+        }
+        else if ( metric instanceof NativeTimer )
+        {
+            registry.register( metricName, new CodahaleTimerAdapter( (NativeTimer) metric ) );
+        }
+        else if ( metric instanceof NativeHistogram )
+        {
+            registry.register( metricName, new CodahaleHistogramAdapter( (NativeHistogram) metric ) );
+        }
+        else if ( metric instanceof NativeCounter )
+        {
+            registry.register( metricName, new CodahaleCounterAdapter( (NativeCounter) metric ) );
+        }
+        else if ( metric instanceof NativeUpDownCounter )
+        {
+            registry.register( metricName, new CodahaleUpDownCounterAdapter( (NativeUpDownCounter) metric ) );
+        }
         else if ( metric instanceof O11Meter )
         {
             registry.register( metricName, ( (O11Meter) metric ).getCodahaleMeter() );
@@ -102,6 +218,10 @@ public class DefaultMetricRegistry
         {
             registry.register( metricName, ( (O11Histogram) metric ).getCodehaleHistogram() );
         }
+        else if ( metric instanceof O11Counter )
+        {
+            registry.register( metricName, ( (O11Counter) metric ).getCodahaleCounter() );
+        }
 
         metrics.put( metricName, metric );
         return metric;
@@ -153,29 +273,238 @@ public class DefaultMetricRegistry
         } );
     }
 
+    /**
+     * Meters, timers and histograms created here are native implementations; the codahale registry only holds
+     * adapters for the reporters, so no wrapper is allocated per call. Metrics registered in the codahale registry
+     * by other means are still wrapped.
+     */
     @Override
     public Meter meter( String name )
     {
-        return new O11Meter( registry.meter( name ) );
+        String admitted = admit( name, METER );
+        com.codahale.metrics.Meter meter = registry.meter( admitted, () -> {
+            MetricName.of( admitted );
+            return new CodahaleMeterAdapter( new NativeMeter() );
+        } );
+        return meter instanceof CodahaleMeterAdapter ?
+                        ( (CodahaleMeterAdapter) meter ).getMeter() :
+                        new O11Meter( meter );
     }
 
     @Override
     public Timer timer( String name )
     {
-        return new O11Timer( registry.timer( name ) );
+        String admitted = admit( name, TIMER );
+        com.codahale.metrics.Timer timer = registry.timer( admitted, () -> {
+            MetricName.of( admitted );
+            return new CodahaleTimerAdapter( new NativeTimer( newReservoir( admitted ) ) );
+        } );
+        return timer instanceof CodahaleTimerAdapter ?
+                        ( (CodahaleTimerAdapter) timer ).getTimer() :
+                        new O11Timer( timer );
     }
 
+    /**
+     * A gauge beyond the cardinality limit of its prefix is not registered at all, since gauges cannot be aggregated.
+     */
     @Override
     public <T> Gauge<T> gauge( String name, Gauge<T> o )
     {
-        registry.gauge( name, () -> o::getValue );
+        String admitted = admit( name, GAUGE );
+        if ( admitted.equals( name ) )
+        {
+            registry.gauge( name, () -> {
+                MetricName.of( name );
+                return o::getValue;
+            } );
+        }
         return o;
     }
 
     @Override
     public Histogram histogram( String name )
     {
-        return new O11Histogram( registry.histogram( name ) );
+        String admitted = admit( name, HISTOGRAM );
+        com.codahale.metrics.Histogram histogram = registry.histogram( admitted, () -> {
+            MetricName.of( admitted );
+            return new CodahaleHistogramAdapter( new NativeHistogram( newReservoir( admitted ) ) );
+        } );
+        return histogram instanceof CodahaleHistogramAdapter ?
+                        ( (CodahaleHistogramAdapter) histogram ).getHistogram() :
+                        new O11Histogram( histogram );
+    }
+
+    @Override
+    public Counter counter( String name )
+    {
+        String admitted = admit( name, COUNTER );
+        com.codahale.metrics.Counter counter = registry.counter( admitted, () -> {
+            MetricName.of( admitted );
+            return new CodahaleCounterAdapter( new NativeCounter() );
+        } );
+        if ( counter instanceof CodahaleUpDownCounterAdapter )
+        {
+            throw new IllegalArgumentException( admitted + " is already used for an up-down counter" );
+        }
+        return counter instanceof CodahaleCounterAdapter ?
+                        ( (CodahaleCounterAdapter) counter ).getCounter() :
+                        new O11Counter( counter );
+    }
+
+    /**
+     * Up-down counters are never expired by {@link #expireIdle(long)}, since their value is state rather than a rate.
+     */
+    @Override
+    public UpDownCounter upDownCounter( String name )
+    {
+        String admitted = admit( name, UP_DOWN_COUNTER );
+        com.codahale.metrics.Counter counter = registry.counter( admitted, () -> {
+            MetricName.of( admitted );
+            return new CodahaleUpDownCounterAdapter( new NativeUpDownCounter() );
+        } );
+        if ( counter instanceof CodahaleCounterAdapter )
+        {
+            throw new IllegalArgumentException( admitted + " is already used for a monotonic counter" );
+        }
+        return counter instanceof CodahaleUpDownCounterAdapter ?
+                        ( (CodahaleUpDownCounterAdapter) counter ).getCounter() :
+                        new O11Counter( counter );
+    }
+
+    /**
+     * Exempt a metric from {@link #expireIdle(long)}, e.g. one that is only updated rarely but must stay visible.
+     */
+    public void pin( String name )
+    {
+        pinned.add( name );
+    }
+
+    public void addExpiryListener( Consumer<Collection<String>> listener )
+    {
+        expiryListeners.add( listener );
+    }
+
+    /**
+     * Remove meters, timers and histograms that have not been updated for the given time, according to
+     * {@link TouchClock}. Gauges, pinned metrics and anything registered via {@link #register(String, Metric)} are
+     * kept. Listeners are told about the removed names so they can drop handles still pointing at them.
+     */
+    public Collection<String> expireIdle( long idleMillis )
+    {
+        long cutoff = TouchClock.now() - idleMillis;
+        List<String> expired = new ArrayList<>();
+        registry.getMetrics().forEach( ( name, metric ) -> {
+            if ( metric instanceof TouchTracking && !pinned.contains( name )
+                            && ( (TouchTracking) metric ).getLastTouched() < cutoff && registry.remove( name ) )
+            {
+                expired.add( name );
+            }
+        } );
+
+        if ( !expired.isEmpty() )
+        {
+            expiryListeners.forEach( l -> l.accept( expired ) );
+        }
+        return expired;
+    }
+
+    /**
+     * Live per-type (and per-prefix) views of all metrics in the registry. The index is built on first use and kept
+     * up to date from then on, so iterating it does not copy the registry like the codahale getters do. A
+     * {@link GenerationalMetricRegistry} shares the index its own getters are served from.
+     */
+    public MetricIndex getIndex()
+    {
+        if ( registry instanceof GenerationalMetricRegistry )
+        {
+            return ( (GenerationalMetricRegistry) registry ).getIndex();
+        }
+
+        MetricIndex i = index;
+        if ( i == null )
+        {
+            synchronized ( this )
+            {
+                i = index;
+                if ( i == null )
+                {
+                    i = MetricIndex.attach( registry, name -> true );
+                    index = i;
+                }
+            }
+        }
+        return i;
+    }
+
+    public void setCardinalityLimiter( MetricCardinalityLimiter cardinalityLimiter )
+    {
+        this.cardinalityLimiter = cardinalityLimiter;
+    }
+
+    public void setReservoirSelector( ReservoirSelector reservoirSelector )
+    {
+        this.reservoirSelector = reservoirSelector;
+    }
+
+    private Reservoir newReservoir( String name )
+    {
+        ReservoirSelector selector = reservoirSelector;
+        return selector == null ? new ExponentiallyDecayingReservoir() : selector.newReservoir( name );
+    }
+
+    private String admit( String name, String kind )
+    {
+        MetricCardinalityLimiter limiter = cardinalityLimiter;
+        return limiter == null || !limiter.isEnabled() ? name : limiter.admit( name, kind );
+    }
+
+    /**
+     * Gives back the limiter slot and the interned {@link MetricName} of every metric removed from the codahale
+     * registry, whether through {@link #expireIdle(long)}, {@link #clear()}, a generation swap or a direct remove() /
+     * removeMatching() on the codahale registry.
+     */
+    private final class RemovedMetricListener
+            extends com.codahale.metrics.MetricRegistryListener.Base
+    {
+        private void release( String name )
+        {
+            MetricCardinalityLimiter limiter = cardinalityLimiter;
+            if ( limiter != null )
+            {
+                limiter.release( name );
+            }
+            MetricName.evict( name );
+        }
+
+        @Override
+        public void onGaugeRemoved( String name )
+        {
+            release( name );
+        }
+
+        @Override
+        public void onCounterRemoved( String name )
+        {
+            release( name );
+        }
+
+        @Override
+        public void onHistogramRemoved( String name )
+        {
+            release( name );
+        }
+
+        @Override
+        public void onMeterRemoved( String name )
+        {
+            release( name );
+        }
+
+        @Override
+        public void onTimerRemoved( String name )
+        {
+            release( name );
+        }
     }
 
     protected com.codahale.metrics.MetricRegistry getRegistry()
@@ -27,10 +27,14 @@ import org.commonjava.o11yphant.metrics.api.Meter;
 import org.commonjava.o11yphant.metrics.api.MetricRegistry;
 import org.commonjava.o11yphant.metrics.api.Timer;
 import org.commonjava.o11yphant.metrics.api.healthcheck.CompoundHealthCheck;
+import org.commonjava.o11yphant.metrics.async.AsyncMetricRecorder;
 import org.commonjava.o11yphant.metrics.api.healthcheck.HealthCheck;
 import org.commonjava.o11yphant.metrics.conf.MetricsConfig;
+import org.commonjava.o11yphant.metrics.expiry.IdleMetricSweeper;
 import org.commonjava.o11yphant.metrics.healthcheck.impl.AbstractHealthCheck;
 import org.commonjava.o11yphant.metrics.jvm.JVMInstrumentation;
+import org.commonjava.o11yphant.metrics.sampling.MeteringSampler;
+import org.commonjava.o11yphant.metrics.sampling.RandomMeteringSampler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,16 +42,15 @@ import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.inject.Instance;
 import javax.inject.Inject;
-import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Map;
-import java.util.Random;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Supplier;
 
 import static org.commonjava.o11yphant.metrics.MetricsConstants.*;
-import static org.commonjava.o11yphant.metrics.RequestContextConstants.IS_METERED;
+import static org.commonjava.o11yphant.metrics.RequestContextKeys.CUMULATIVE_TIMINGS_KEY;
+import static org.commonjava.o11yphant.metrics.RequestContextKeys.IS_METERED_KEY;
+import static org.commonjava.o11yphant.metrics.RequestContextKeys.TIMER_STACK_KEY;
 import static org.commonjava.o11yphant.metrics.util.HealthCheckUtils.wrap;
 import static org.commonjava.o11yphant.metrics.util.NameUtils.*;
 
@@ -79,7 +82,18 @@ public class DefaultMetricsManager
     @Inject
     private MetricsConfig config;
 
-    private final Random random = new Random();
+    @Inject
+    private Instance<MeteringSampler> meteringSamplers;
+
+    @Inject
+    private AsyncMetricRecorder asyncRecorder;
+
+    @Inject
+    private IdleMetricSweeper idleMetricSweeper;
+
+    private volatile MeteringSampler meteringSampler;
+
+    private final Map<String, StandardMetricHandles> handleCache = new ConcurrentHashMap<>();
 
     public DefaultMetricsManager()
     {
@@ -91,6 +105,14 @@ public class DefaultMetricsManager
         this.metricRegistry = metricRegistry;
     }
 
+    // for test, without metric set providers
+    DefaultMetricsManager( MetricRegistry metricRegistry, MetricsConfig config )
+    {
+        this.metricRegistry = metricRegistry;
+        this.config = config;
+        invalidateHandlesOnExpiry();
+    }
+
     @PostConstruct
     public void init()
     {
@@ -126,6 +148,18 @@ public class DefaultMetricsManager
                 metricRegistry.register( provider.getName(), provider.getMetricSet() );
             }
         } );
+
+        invalidateHandlesOnExpiry();
+        idleMetricSweeper.start();
+    }
+
+    private void invalidateHandlesOnExpiry()
+    {
+        if ( metricRegistry instanceof DefaultMetricRegistry )
+        {
+            // cached handles may point at expired metrics, which would no longer be reported
+            ( (DefaultMetricRegistry) metricRegistry ).addExpiryListener( expired -> handleCache.clear() );
+        }
     }
 
     public void reset()
@@ -136,8 +170,31 @@ public class DefaultMetricsManager
             return;
         }
 
+        if ( metricRegistry instanceof DefaultMetricRegistry )
+        {
+            logger.info( "Reset metrics subsystem, building new generation..." );
+            resetProviders();
+            ( (DefaultMetricRegistry) metricRegistry ).regenerate( this::registerProviders );
+            handleCache.clear();
+            return;
+        }
+
         logger.info( "Clear metrics subsystem..." );
         metricRegistry.clear();
+        handleCache.clear();
+        resetProviders();
+
+        logger.info( "Re-adding metric sets from providers..." );
+        registerProviders( metricRegistry );
+    }
+
+    private void resetProviders()
+    {
+        if ( metricSetProviderInstances == null )
+        {
+            return;
+        }
+
         metricSetProviderInstances.forEach( ( provider ) -> {
             if ( provider.isEnabled() )
             {
@@ -145,13 +202,20 @@ public class DefaultMetricsManager
                 provider.reset();
             }
         } );
+    }
+
+    private void registerProviders( MetricRegistry registry )
+    {
+        if ( metricSetProviderInstances == null )
+        {
+            return;
+        }
 
-        logger.info( "Re-adding metric sets from providers..." );
         metricSetProviderInstances.forEach( ( provider ) -> {
             if ( provider.isEnabled() )
             {
                 logger.trace( "Registering metrics for provider: {} (class: {})", provider.getName(), provider.getClass().getSimpleName() );
-                metricRegistry.register( provider.getName(), provider.getMetricSet() );
+                registry.register( provider.getName(), provider.getMetricSet() );
             }
         } );
     }
@@ -159,13 +223,42 @@ public class DefaultMetricsManager
     public boolean isMetered( Supplier<Boolean> meteringOverride )
     {
         int meterRatio = config.getMeterRatio();
-        if ( meterRatio <= 1 || random.nextInt() % meterRatio == 0 )
+        if ( meterRatio <= 1 || getMeteringSampler().isMetered( meterRatio ) )
         {
             return true;
         }
         return meteringOverride != null && Boolean.TRUE.equals( meteringOverride.get() );
     }
 
+    private MeteringSampler getMeteringSampler()
+    {
+        MeteringSampler sampler = meteringSampler;
+        if ( sampler == null )
+        {
+            sampler = selectMeteringSampler();
+            meteringSampler = sampler;
+        }
+        return sampler;
+    }
+
+    private MeteringSampler selectMeteringSampler()
+    {
+        String name = config.getMeteringSampler();
+        if ( meteringSamplers != null && name != null )
+        {
+            for ( MeteringSampler sampler : meteringSamplers )
+            {
+                if ( name.equals( sampler.getName() ) )
+                {
+                    logger.info( "Using metering sampler: {}", name );
+                    return sampler;
+                }
+            }
+            logger.warn( "Metering sampler: {} not found, using: {}", name, MetricsConfig.SAMPLER_RANDOM );
+        }
+        return new RandomMeteringSampler();
+    }
+
     @MetricWrapperStart
     public Timer.Context startTimer( @MetricWrapperNamed String name )
     {
@@ -176,7 +269,7 @@ public class DefaultMetricsManager
     {
         Timer.Context tctx = metricRegistry.timer( name ).time();
         ThreadContext ctx = ThreadContext.getContext( true );
-        ctx.put( TIMER + name, tctx );
+        ctx.computeIfAbsent( TIMER_STACK_KEY, k -> new TimerStack() ).push( name, tctx );
         return tctx;
     }
 
@@ -186,6 +279,12 @@ public class DefaultMetricsManager
         return stopTimerInternal( name );
     }
 
+    @Override
+    public long stopTimerUnwrapped( String name )
+    {
+        return stopTimerInternal( name );
+    }
+
     private long stopTimerInternal( String name )
     {
         ThreadContext ctx = ThreadContext.getContext( false );
@@ -194,14 +293,9 @@ public class DefaultMetricsManager
             return 0;
         }
 
-        Timer.Context tctx = (Timer.Context) ctx.get( TIMER + name );
-        if ( tctx != null )
-        {
-            ctx.remove( TIMER + name );
-            return tctx.stop();
-        }
-
-        return 0;
+        TimerStack timers = ctx.get( TIMER_STACK_KEY );
+        Timer.Context tctx = timers == null ? null : timers.pop( name );
+        return tctx == null ? 0 : tctx.stop();
     }
 
     public Meter getMeter( String name )
@@ -215,7 +309,6 @@ public class DefaultMetricsManager
         return metricRegistry.histogram( name );
     }
 
-    @SuppressWarnings( "unchecked" )
     public void accumulate( String name, final double elapsed )
     {
         ThreadContext ctx = ThreadContext.getContext( true );
@@ -226,15 +319,7 @@ public class DefaultMetricsManager
                 return;
             }
 
-            ctx.putIfAbsent( CUMULATIVE_TIMINGS, new ConcurrentHashMap<>() );
-            Map<String, Double> timingMap = (Map<String, Double>) ctx.get( CUMULATIVE_TIMINGS );
-
-            timingMap.merge( name, elapsed, Double::sum );
-
-            ctx.putIfAbsent( CUMULATIVE_COUNT, new ConcurrentHashMap<>() );
-            Map<String, Integer> countMap = (Map<String, Integer>) ctx.get( CUMULATIVE_COUNT );
-
-            countMap.merge( name, 1, ( existingVal, newVal ) -> existingVal + 1 );
+            ctx.computeIfAbsent( CUMULATIVE_TIMINGS_KEY, k -> new CumulativeTimings() ).add( name, elapsed );
         }
     }
 
@@ -248,40 +333,81 @@ public class DefaultMetricsManager
             return method.get();
         }
 
-        String nodePrefix = config.getNodePrefix();
-
-        String metricName = name( nodePrefix, name );
-        String startName = name( metricName, "starts" );
-
-        String timerName = name( metricName, TIMER );
-        String errorName = name( name, EXCEPTION );
-        String eClassName;
+        StandardMetricHandles handles = getHandles( name );
 
-        Timer.Context timer = startTimerInternal( timerName );
-        logger.trace( "START: {} ({})", metricName, timer );
+        boolean async = isAsyncRecording();
+        logger.trace( "START: {}", handles.metricName );
 
-        long start = System.nanoTime();
+        long start = handles.timer.startNanos();
         try
         {
-            mark( Collections.singletonList( startName ) );
+            mark( handles.starts );
 
             return method.get();
         }
         catch ( Throwable e )
         {
-            eClassName = name( name, EXCEPTION, e.getClass().getSimpleName() );
-            mark( Arrays.asList( errorName, eClassName ) );
+            mark( handles.errors );
+            mark( handles.exceptionMeter( e.getClass() ) );
 
             throw e;
         }
         finally
         {
-            stopTimers( Collections.singletonMap( timerName, timer ) );
-            mark( Collections.singletonList( metricName ) );
+            long elapsedNanos;
+            if ( async )
+            {
+                elapsedNanos = System.nanoTime() - start;
+                asyncRecorder.update( handles.timer, elapsedNanos );
+            }
+            else
+            {
+                elapsedNanos = handles.timer.stop( start );
+            }
+            mark( handles.calls );
 
-            double elapsed = ( System.nanoTime() - start ) / NANOS_PER_MILLISECOND;
-            accumulate( metricName, elapsed );
+            accumulate( handles.metricName, elapsedNanos / NANOS_PER_MILLISECOND );
+        }
+    }
+
+    private boolean isAsyncRecording()
+    {
+        return asyncRecorder != null && asyncRecorder.isEnabled();
+    }
+
+    private void mark( Meter meter )
+    {
+        if ( isAsyncRecording() )
+        {
+            asyncRecorder.mark( meter );
+        }
+        else
+        {
+            meter.mark();
+        }
+    }
+
+    /**
+     * Resolved metrics for a classifier. The cache is bounded by {@link MetricsConfig#getMetricHandleCacheSize()}, so a
+     * classifier with unbounded values cannot grow it forever; it is dropped on {@link #reset()}, together with the
+     * metrics it points to.
+     */
+    StandardMetricHandles getHandles( String name )
+    {
+        StandardMetricHandles handles = handleCache.get( name );
+        if ( handles == null )
+        {
+            handles = new StandardMetricHandles( metricRegistry, config.getNodePrefix(), name );
+            if ( handleCache.size() < config.getMetricHandleCacheSize() )
+            {
+                StandardMetricHandles existing = handleCache.putIfAbsent( name, handles );
+                if ( existing != null )
+                {
+                    handles = existing;
+                }
+            }
         }
+        return handles;
     }
 
     public boolean checkMetered()
@@ -296,7 +422,7 @@ public class DefaultMetricsManager
             ctx = ThreadContext.getContext( false );
         }
 
-        return  ctx == null ||  (Boolean) ctx.getOrDefault( IS_METERED, Boolean.TRUE ) ;
+        return ctx == null || ctx.getOrDefault( IS_METERED_KEY, Boolean.TRUE );
     }
 
     public void stopTimers( final Map<String, Timer.Context> timers )
@@ -309,7 +435,7 @@ public class DefaultMetricsManager
 
     public void mark( final Collection<String> meters )
     {
-        meters.forEach( name -> getMeter( name ).mark() );
+        meters.forEach( name -> mark( getMeter( name ) ) );
     }
 
     public void addGauges( Class<?> className, String method, Map<String, Gauge<Integer>> gauges )
@@ -0,0 +1,432 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricRegistryListener;
+import com.codahale.metrics.MetricSet;
+import com.codahale.metrics.Timer;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Codahale registry that forwards everything to its current generation, a plain {@link MetricRegistry}. A new
+ * generation is populated off to the side and published with {@link #swap(MetricRegistry)}, so readers never see a
+ * half-cleared registry.
+ *
+ * Each getter reads whichever generation is current at the time. Exporters reading several maps (gauges, timers, ...)
+ * should do so within {@link #readConsistently(Supplier)}, or run on an executor from
+ * {@link #newReporterExecutor(String)}, to read all of them from the same generation.
+ *
+ * The per-type getters (gauges, counters, histograms, meters, timers, with or without a filter) are served from a
+ * {@link MetricIndex} kept on the registry, so a reporter polling them does not copy and sort every metric on each
+ * cycle. Unfiltered (and {@link MetricFilter#ALL}) results are live, read-only views; other filters get a sorted copy
+ * of just the matching metrics of that type.
+ */
+public class GenerationalMetricRegistry
+        extends MetricRegistry
+{
+    private final ThreadLocal<MetricRegistry> pinned = new ThreadLocal<>();
+
+    private final ThreadLocal<MetricIndex.View> pinnedView = new ThreadLocal<>();
+
+    private volatile MetricIndex index;
+
+    private final List<MetricRegistryListener> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile MetricRegistry current = new MetricRegistry();
+
+    private volatile long generation;
+
+    /**
+     * The generation this thread is reading, which is the current one unless inside {@link #readConsistently}.
+     */
+    public MetricRegistry getCurrent()
+    {
+        MetricRegistry p = pinned.get();
+        return p == null ? current : p;
+    }
+
+    public long getGeneration()
+    {
+        return generation;
+    }
+
+    /**
+     * The index serving the per-type getters, created on first use.
+     */
+    public MetricIndex getIndex()
+    {
+        MetricIndex i = index;
+        if ( i == null )
+        {
+            synchronized ( this )
+            {
+                i = index;
+                if ( i == null )
+                {
+                    i = new MetricIndex();
+                    addListener( i );
+                    index = i;
+                }
+            }
+        }
+        return i;
+    }
+
+    private MetricIndex.View getView()
+    {
+        MetricIndex.View v = pinnedView.get();
+        return v == null ? getIndex().getView() : v;
+    }
+
+    /**
+     * Publish a new generation. Listeners are moved over to it: they hear about the removal of names missing from the
+     * new generation, then about every metric in it. A {@link MetricIndex} is instead reloaded with the new generation
+     * and switches over in one step, so it never holds a mix of both.
+     */
+    public synchronized MetricRegistry swap( MetricRegistry next )
+    {
+        MetricRegistry old = current;
+        listeners.forEach( old::removeListener );
+        current = next;
+        generation++;
+
+        Set<String> kept = next.getNames();
+        listeners.forEach( l -> {
+            if ( l instanceof MetricIndex )
+            {
+                ( (MetricIndex) l ).reload( next.getMetrics() );
+                next.addListener( l );
+                return;
+            }
+
+            old.getMetrics().forEach( ( name, metric ) -> {
+                if ( !kept.contains( name ) )
+                {
+                    notifyRemoved( l, name, metric );
+                }
+            } );
+            next.addListener( l );
+        } );
+        return old;
+    }
+
+    public <T> T readConsistently( Supplier<T> reader )
+    {
+        if ( pinned.get() != null )
+        {
+            return reader.get();
+        }
+
+        MetricIndex i = getIndex();
+        synchronized ( this )
+        {
+            // swap() replaces both under the same lock
+            pinned.set( current );
+            pinnedView.set( i.getView() );
+        }
+        try
+        {
+            return reader.get();
+        }
+        finally
+        {
+            pinned.remove();
+            pinnedView.remove();
+        }
+    }
+
+    /**
+     * Executor for codahale ScheduledReporters (see their Builder.scheduleOn), which runs every report within
+     * {@link #readConsistently(Supplier)}.
+     */
+    public ScheduledExecutorService newReporterExecutor( String threadName )
+    {
+        return new ScheduledThreadPoolExecutor( 1, r -> {
+            Thread t = new Thread( r, threadName );
+            t.setDaemon( true );
+            return t;
+        } )
+        {
+            @Override
+            public ScheduledFuture<?> scheduleAtFixedRate( Runnable command, long initialDelay, long period,
+                                                           TimeUnit unit )
+            {
+                return super.scheduleAtFixedRate( consistent( command ), initialDelay, period, unit );
+            }
+
+            @Override
+            public ScheduledFuture<?> scheduleWithFixedDelay( Runnable command, long initialDelay, long delay,
+                                                              TimeUnit unit )
+            {
+                return super.scheduleWithFixedDelay( consistent( command ), initialDelay, delay, unit );
+            }
+        };
+    }
+
+    private Runnable consistent( Runnable command )
+    {
+        return () -> readConsistently( () -> {
+            command.run();
+            return null;
+        } );
+    }
+
+    private static <T extends Metric> SortedMap<String, T> filter( SortedMap<String, T> metrics, MetricFilter filter )
+    {
+        if ( filter == MetricFilter.ALL )
+        {
+            return metrics;
+        }
+
+        SortedMap<String, T> result = new TreeMap<>();
+        metrics.forEach( ( name, metric ) -> {
+            if ( filter.matches( name, metric ) )
+            {
+                result.put( name, metric );
+            }
+        } );
+        return result;
+    }
+
+    private static void notifyRemoved( MetricRegistryListener listener, String name, Metric metric )
+    {
+        if ( metric instanceof Gauge )
+        {
+            listener.onGaugeRemoved( name );
+        }
+        else if ( metric instanceof Counter )
+        {
+            listener.onCounterRemoved( name );
+        }
+        else if ( metric instanceof Histogram )
+        {
+            listener.onHistogramRemoved( name );
+        }
+        else if ( metric instanceof Meter )
+        {
+            listener.onMeterRemoved( name );
+        }
+        else if ( metric instanceof Timer )
+        {
+            listener.onTimerRemoved( name );
+        }
+    }
+
+    @Override
+    public <T> Gauge<T> registerGauge( String name, Gauge<T> metric )
+    {
+        return current.registerGauge( name, metric );
+    }
+
+    @Override
+    public <T extends Metric> T register( String name, T metric )
+    {
+        return current.register( name, metric );
+    }
+
+    @Override
+    public void registerAll( MetricSet metrics )
+    {
+        current.registerAll( metrics );
+    }
+
+    @Override
+    public void registerAll( String prefix, MetricSet metrics )
+    {
+        current.registerAll( prefix, metrics );
+    }
+
+    @Override
+    public Counter counter( String name )
+    {
+        return current.counter( name );
+    }
+
+    @Override
+    public Counter counter( String name, MetricSupplier<Counter> supplier )
+    {
+        return current.counter( name, supplier );
+    }
+
+    @Override
+    public Histogram histogram( String name )
+    {
+        return current.histogram( name );
+    }
+
+    @Override
+    public Histogram histogram( String name, MetricSupplier<Histogram> supplier )
+    {
+        return current.histogram( name, supplier );
+    }
+
+    @Override
+    public Meter meter( String name )
+    {
+        return current.meter( name );
+    }
+
+    @Override
+    public Meter meter( String name, MetricSupplier<Meter> supplier )
+    {
+        return current.meter( name, supplier );
+    }
+
+    @Override
+    public Timer timer( String name )
+    {
+        return current.timer( name );
+    }
+
+    @Override
+    public Timer timer( String name, MetricSupplier<Timer> supplier )
+    {
+        return current.timer( name, supplier );
+    }
+
+    @Override
+    @SuppressWarnings( "rawtypes" )
+    public <T extends Gauge> T gauge( String name )
+    {
+        return current.gauge( name );
+    }
+
+    @Override
+    @SuppressWarnings( "rawtypes" )
+    public <T extends Gauge> T gauge( String name, MetricSupplier<T> supplier )
+    {
+        return current.gauge( name, supplier );
+    }
+
+    @Override
+    public boolean remove( String name )
+    {
+        return current.remove( name );
+    }
+
+    @Override
+    public void removeMatching( MetricFilter filter )
+    {
+        current.removeMatching( filter );
+    }
+
+    @Override
+    public synchronized void addListener( MetricRegistryListener listener )
+    {
+        listeners.add( listener );
+        current.addListener( listener );
+    }
+
+    @Override
+    public synchronized void removeListener( MetricRegistryListener listener )
+    {
+        listeners.remove( listener );
+        current.removeListener( listener );
+    }
+
+    @Override
+    public SortedSet<String> getNames()
+    {
+        return getCurrent().getNames();
+    }
+
+    @Override
+    @SuppressWarnings( "rawtypes" )
+    public SortedMap<String, Gauge> getGauges()
+    {
+        return getView().getGauges();
+    }
+
+    @Override
+    @SuppressWarnings( "rawtypes" )
+    public SortedMap<String, Gauge> getGauges( MetricFilter filter )
+    {
+        return filter( getView().getGauges(), filter );
+    }
+
+    @Override
+    public SortedMap<String, Counter> getCounters()
+    {
+        return getView().getCounters();
+    }
+
+    @Override
+    public SortedMap<String, Counter> getCounters( MetricFilter filter )
+    {
+        return filter( getView().getCounters(), filter );
+    }
+
+    @Override
+    public SortedMap<String, Histogram> getHistograms()
+    {
+        return getView().getHistograms();
+    }
+
+    @Override
+    public SortedMap<String, Histogram> getHistograms( MetricFilter filter )
+    {
+        return filter( getView().getHistograms(), filter );
+    }
+
+    @Override
+    public SortedMap<String, Meter> getMeters()
+    {
+        return getView().getMeters();
+    }
+
+    @Override
+    public SortedMap<String, Meter> getMeters( MetricFilter filter )
+    {
+        return filter( getView().getMeters(), filter );
+    }
+
+    @Override
+    public SortedMap<String, Timer> getTimers()
+    {
+        return getView().getTimers();
+    }
+
+    @Override
+    public SortedMap<String, Timer> getTimers( MetricFilter filter )
+    {
+        return filter( getView().getTimers(), filter );
+    }
+
+    @Override
+    public Map<String, Metric> getMetrics()
+    {
+        return getCurrent().getMetrics();
+    }
+}
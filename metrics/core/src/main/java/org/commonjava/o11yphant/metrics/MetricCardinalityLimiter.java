@@ -0,0 +1,269 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics;
+
+import org.commonjava.o11yphant.metrics.conf.MetricsConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.commonjava.o11yphant.metrics.util.NameUtils.name;
+
+/**
+ * Caps the number of distinct metric names under configured prefixes, see
+ * {@link MetricsConfig#getCardinalityLimits()}. Once a prefix has reached its limit, new names under it are redirected to one overflow metric per kind,
+ * <code>&lt;prefix&gt;._overflow.&lt;kind&gt;</code>, so dynamically named metrics cannot grow the registry without
+ * bound. A prefix matches a name equal to it or starting with it followed by a dot; the longest matching prefix wins.
+ */
+@ApplicationScoped
+public class MetricCardinalityLimiter
+{
+    public static final String OVERFLOW = "_overflow";
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    private MetricsConfig config;
+
+    private volatile Bucket[] buckets = new Bucket[0];
+
+    public MetricCardinalityLimiter()
+    {
+    }
+
+    public MetricCardinalityLimiter( Map<String, Integer> limits )
+    {
+        setLimits( limits );
+    }
+
+    @PostConstruct
+    public void init()
+    {
+        if ( config != null )
+        {
+            setLimits( config.getCardinalityLimits() );
+        }
+    }
+
+    public synchronized void setLimits( Map<String, Integer> limits )
+    {
+        if ( limits == null )
+        {
+            limits = Collections.emptyMap();
+        }
+
+        Bucket[] newBuckets = limits.entrySet()
+                                    .stream()
+                                    .filter( e -> e.getValue() != null && e.getValue() >= 0 )
+                                    .map( e -> new Bucket( e.getKey(), e.getValue() ) )
+                                    .sorted( Comparator.comparingInt( ( Bucket b ) -> b.prefix.length() ).reversed() )
+                                    .toArray( Bucket[]::new );
+
+        logger.info( "Metric cardinality limits: {}", limits );
+        buckets = newBuckets;
+    }
+
+    public boolean isEnabled()
+    {
+        return buckets.length > 0;
+    }
+
+    /**
+     * @param kind metric type, used to keep overflow metrics of different types apart (e.g. "meter", "timer")
+     * @return the name to use: the given name, or its prefix's overflow name once the prefix is over its limit
+     */
+    public String admit( String name, String kind )
+    {
+        Bucket bucket = bucketFor( name );
+        if ( bucket == null || bucket.admit( name ) )
+        {
+            return name;
+        }
+        return bucket.overflowName( kind );
+    }
+
+    /**
+     * Give back the slot of a metric that was removed from the registry.
+     */
+    public void release( String name )
+    {
+        Bucket bucket = bucketFor( name );
+        if ( bucket != null )
+        {
+            bucket.release( name );
+        }
+    }
+
+    /**
+     * Forget all admitted names, e.g. after the registry has been cleared.
+     */
+    public void reset()
+    {
+        for ( Bucket bucket : buckets )
+        {
+            bucket.clear();
+        }
+    }
+
+    /**
+     * Forget all admitted names and admit the given ones instead, e.g. the names of a registry generation that was
+     * populated without going through this limiter. Overflow metrics do not take a slot.
+     */
+    public void reset( Collection<String> names )
+    {
+        reset();
+        names.forEach( name -> {
+            Bucket bucket = bucketFor( name );
+            if ( bucket != null && !bucket.isOverflowName( name ) )
+            {
+                bucket.admit( name );
+            }
+        } );
+    }
+
+    public List<Bucket> getBuckets()
+    {
+        return Collections.unmodifiableList( Arrays.asList( buckets ) );
+    }
+
+    private Bucket bucketFor( String name )
+    {
+        for ( Bucket bucket : buckets )
+        {
+            if ( bucket.matches( name ) )
+            {
+                return bucket;
+            }
+        }
+        return null;
+    }
+
+    public static final class Bucket
+    {
+        private final String prefix;
+
+        private final int limit;
+
+        private final Set<String> names = ConcurrentHashMap.newKeySet();
+
+        private final AtomicInteger size = new AtomicInteger();
+
+        private final LongAdder overflowed = new LongAdder();
+
+        private final Map<String, String> overflowNames = new ConcurrentHashMap<>();
+
+        private final String overflowPrefix;
+
+        private Bucket( String prefix, int limit )
+        {
+            this.prefix = prefix;
+            this.limit = limit;
+            this.overflowPrefix = name( prefix, OVERFLOW ) + ".";
+        }
+
+        public String getPrefix()
+        {
+            return prefix;
+        }
+
+        public int getLimit()
+        {
+            return limit;
+        }
+
+        public int getSeriesCount()
+        {
+            return size.get();
+        }
+
+        /**
+         * @return number of metric lookups redirected to the overflow metrics
+         */
+        public long getOverflowCount()
+        {
+            return overflowed.sum();
+        }
+
+        private boolean matches( String name )
+        {
+            return name.startsWith( prefix ) && ( name.length() == prefix.length()
+                    || name.charAt( prefix.length() ) == '.' );
+        }
+
+        private boolean admit( String name )
+        {
+            if ( names.contains( name ) )
+            {
+                return true;
+            }
+
+            int n;
+            do
+            {
+                n = size.get();
+                if ( n >= limit )
+                {
+                    overflowed.increment();
+                    return false;
+                }
+            }
+            while ( !size.compareAndSet( n, n + 1 ) );
+
+            if ( !names.add( name ) )
+            {
+                // admitted concurrently by another thread
+                size.decrementAndGet();
+            }
+            return true;
+        }
+
+        private void release( String name )
+        {
+            if ( names.remove( name ) )
+            {
+                size.decrementAndGet();
+            }
+        }
+
+        private void clear()
+        {
+            names.forEach( this::release );
+        }
+
+        private boolean isOverflowName( String name )
+        {
+            return name.startsWith( overflowPrefix );
+        }
+
+        private String overflowName( String kind )
+        {
+            return overflowNames.computeIfAbsent( kind, k -> name( prefix, OVERFLOW, k ) );
+        }
+    }
+}
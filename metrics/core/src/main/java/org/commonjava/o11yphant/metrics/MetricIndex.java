@@ -0,0 +1,298 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricRegistryListener;
+import com.codahale.metrics.Timer;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Predicate;
+
+/**
+ * Per-type sorted index of a codahale registry, kept up to date through {@link MetricRegistryListener} callbacks.
+ * Unlike the registry getters, which build a new TreeMap over all metrics on every call, the views returned here are
+ * live and cost nothing to obtain. An optional predicate decides once per name whether a metric is indexed at all.
+ *
+ * When attached to a {@link GenerationalMetricRegistry}, the index is reloaded with each new generation and switches
+ * over to it in one step. A {@link View} is bound to the generation it was obtained from, so get it again for each
+ * reporting pass.
+ */
+@SuppressWarnings( "rawtypes" )
+public class MetricIndex
+        implements MetricRegistryListener
+{
+    private final Predicate<String> include;
+
+    private volatile View view = new View();
+
+    public MetricIndex()
+    {
+        this( name -> true );
+    }
+
+    public MetricIndex( Predicate<String> include )
+    {
+        this.include = include;
+    }
+
+    /**
+     * Create an index over the given registry, populated with the metrics already in it.
+     */
+    public static MetricIndex attach( MetricRegistry registry, Predicate<String> include )
+    {
+        MetricIndex index = new MetricIndex( include );
+        registry.addListener( index );
+        return index;
+    }
+
+    /**
+     * The indexed metrics of the current generation. Read all types from the same view for a consistent pass.
+     */
+    public View getView()
+    {
+        return view;
+    }
+
+    public SortedMap<String, Gauge> getGauges()
+    {
+        return view.getGauges();
+    }
+
+    public SortedMap<String, Counter> getCounters()
+    {
+        return view.getCounters();
+    }
+
+    public SortedMap<String, Histogram> getHistograms()
+    {
+        return view.getHistograms();
+    }
+
+    public SortedMap<String, Meter> getMeters()
+    {
+        return view.getMeters();
+    }
+
+    public SortedMap<String, Timer> getTimers()
+    {
+        return view.getTimers();
+    }
+
+    public int size()
+    {
+        return view.size();
+    }
+
+    /**
+     * Replace the indexed metrics with the given ones in one step.
+     */
+    void reload( Map<String, Metric> metrics )
+    {
+        View v = new View();
+        metrics.forEach( ( name, metric ) -> {
+            if ( include.test( name ) )
+            {
+                v.put( name, metric );
+            }
+        } );
+        view = v;
+    }
+
+    @Override
+    public void onGaugeAdded( String name, Gauge<?> gauge )
+    {
+        if ( include.test( name ) )
+        {
+            view.gauges.put( name, gauge );
+        }
+    }
+
+    @Override
+    public void onGaugeRemoved( String name )
+    {
+        view.gauges.remove( name );
+    }
+
+    @Override
+    public void onCounterAdded( String name, Counter counter )
+    {
+        if ( include.test( name ) )
+        {
+            view.counters.put( name, counter );
+        }
+    }
+
+    @Override
+    public void onCounterRemoved( String name )
+    {
+        view.counters.remove( name );
+    }
+
+    @Override
+    public void onHistogramAdded( String name, Histogram histogram )
+    {
+        if ( include.test( name ) )
+        {
+            view.histograms.put( name, histogram );
+        }
+    }
+
+    @Override
+    public void onHistogramRemoved( String name )
+    {
+        view.histograms.remove( name );
+    }
+
+    @Override
+    public void onMeterAdded( String name, Meter meter )
+    {
+        if ( include.test( name ) )
+        {
+            view.meters.put( name, meter );
+        }
+    }
+
+    @Override
+    public void onMeterRemoved( String name )
+    {
+        view.meters.remove( name );
+    }
+
+    @Override
+    public void onTimerAdded( String name, Timer timer )
+    {
+        if ( include.test( name ) )
+        {
+            view.timers.put( name, timer );
+        }
+    }
+
+    @Override
+    public void onTimerRemoved( String name )
+    {
+        view.timers.remove( name );
+    }
+
+    public static final class View
+    {
+        private final ConcurrentSkipListMap<String, Gauge> gauges = new ConcurrentSkipListMap<>();
+
+        private final ConcurrentSkipListMap<String, Counter> counters = new ConcurrentSkipListMap<>();
+
+        private final ConcurrentSkipListMap<String, Histogram> histograms = new ConcurrentSkipListMap<>();
+
+        private final ConcurrentSkipListMap<String, Meter> meters = new ConcurrentSkipListMap<>();
+
+        private final ConcurrentSkipListMap<String, Timer> timers = new ConcurrentSkipListMap<>();
+
+        public SortedMap<String, Gauge> getGauges()
+        {
+            return Collections.unmodifiableSortedMap( gauges );
+        }
+
+        public SortedMap<String, Counter> getCounters()
+        {
+            return Collections.unmodifiableSortedMap( counters );
+        }
+
+        public SortedMap<String, Histogram> getHistograms()
+        {
+            return Collections.unmodifiableSortedMap( histograms );
+        }
+
+        public SortedMap<String, Meter> getMeters()
+        {
+            return Collections.unmodifiableSortedMap( meters );
+        }
+
+        public SortedMap<String, Timer> getTimers()
+        {
+            return Collections.unmodifiableSortedMap( timers );
+        }
+
+        public SortedMap<String, Gauge> getGauges( String prefix )
+        {
+            return underPrefix( gauges, prefix );
+        }
+
+        public SortedMap<String, Counter> getCounters( String prefix )
+        {
+            return underPrefix( counters, prefix );
+        }
+
+        public SortedMap<String, Histogram> getHistograms( String prefix )
+        {
+            return underPrefix( histograms, prefix );
+        }
+
+        public SortedMap<String, Meter> getMeters( String prefix )
+        {
+            return underPrefix( meters, prefix );
+        }
+
+        public SortedMap<String, Timer> getTimers( String prefix )
+        {
+            return underPrefix( timers, prefix );
+        }
+
+        public int size()
+        {
+            return gauges.size() + counters.size() + histograms.size() + meters.size() + timers.size();
+        }
+
+        /**
+         * Names below the prefix, i.e. starting with "prefix." ('/' is the character following '.').
+         */
+        private static <T> SortedMap<String, T> underPrefix( ConcurrentNavigableMap<String, T> map, String prefix )
+        {
+            return Collections.unmodifiableSortedMap( map.subMap( prefix + ".", prefix + "/" ) );
+        }
+
+        private void put( String name, Metric metric )
+        {
+            if ( metric instanceof Gauge )
+            {
+                gauges.put( name, (Gauge) metric );
+            }
+            else if ( metric instanceof Counter )
+            {
+                counters.put( name, (Counter) metric );
+            }
+            else if ( metric instanceof Histogram )
+            {
+                histograms.put( name, (Histogram) metric );
+            }
+            else if ( metric instanceof Meter )
+            {
+                meters.put( name, (Meter) metric );
+            }
+            else if ( metric instanceof Timer )
+            {
+                timers.put( name, (Timer) metric );
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics;
+
+import org.commonjava.o11yphant.metrics.api.Meter;
+import org.commonjava.o11yphant.metrics.api.MetricRegistry;
+import org.commonjava.o11yphant.metrics.api.Timer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.commonjava.o11yphant.metrics.MetricsConstants.EXCEPTION;
+import static org.commonjava.o11yphant.metrics.MetricsConstants.TIMER;
+import static org.commonjava.o11yphant.metrics.util.NameUtils.name;
+
+/**
+ * The metrics used by {@link DefaultMetricsManager#wrapWithStandardMetrics} for one classifier, resolved once so a
+ * wrapped call neither builds metric names nor looks them up in the registry.
+ */
+final class StandardMetricHandles
+{
+    final String metricName;
+
+    final Meter starts;
+
+    final Meter calls;
+
+    final Timer timer;
+
+    final Meter errors;
+
+    private final String name;
+
+    private final MetricRegistry registry;
+
+    private final Map<Class<?>, Meter> exceptionMeters = new ConcurrentHashMap<>();
+
+    StandardMetricHandles( MetricRegistry registry, String nodePrefix, String name )
+    {
+        this.registry = registry;
+        this.name = name;
+        this.metricName = name( nodePrefix, name );
+        this.starts = registry.meter( name( metricName, "starts" ) );
+        this.calls = registry.meter( metricName );
+        this.timer = registry.timer( name( metricName, TIMER ) );
+        this.errors = registry.meter( name( name, EXCEPTION ) );
+    }
+
+    Meter exceptionMeter( Class<? extends Throwable> type )
+    {
+        Meter meter = exceptionMeters.get( type );
+        if ( meter == null )
+        {
+            meter = exceptionMeters.computeIfAbsent( type, t -> registry.meter(
+                    name( name, EXCEPTION, t.getSimpleName() ) ) );
+        }
+        return meter;
+    }
+}
@@ -0,0 +1,299 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.async;
+
+import org.commonjava.o11yphant.metrics.api.Histogram;
+import org.commonjava.o11yphant.metrics.api.Meter;
+import org.commonjava.o11yphant.metrics.api.Timer;
+import org.commonjava.o11yphant.metrics.conf.MetricsConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Optional asynchronous recording of meter marks, timer and histogram updates. Request threads publish each update as
+ * a primitive event into a {@link MetricEventRing}; one background thread applies them to the metrics, so request
+ * threads never wait on a reservoir lock.
+ *
+ * When the ring is full the update is dropped (and counted), or applied inline on the calling thread if
+ * {@link MetricsConfig#isAsyncRecordingDropOnFull()} is off. When asynchronous recording is not enabled every update
+ * is applied inline.
+ *
+ * The aggregator sleeps while the ring is empty and producers wake it up, so an idle recorder costs no CPU.
+ */
+@ApplicationScoped
+public class AsyncMetricRecorder
+{
+    private static final byte MARK = 0;
+
+    private static final byte TIMER_NANOS = 1;
+
+    private static final byte HISTOGRAM = 2;
+
+    private static final int DRAIN_BATCH = 1024;
+
+    // producers wake the aggregator when they publish; this only bounds the sleep in case a wake-up is missed
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos( 100 );
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    private MetricsConfig config;
+
+    private final LongAdder dropped = new LongAdder();
+
+    private final LongAdder published = new LongAdder();
+
+    private volatile MetricEventRing ring;
+
+    private volatile boolean dropOnFull;
+
+    private volatile boolean running;
+
+    private volatile boolean sleeping;
+
+    private volatile Thread aggregator;
+
+    private final Object drainLock = new Object();
+
+    private final MetricEventRing.EventHandler applier = this::apply;
+
+    public AsyncMetricRecorder()
+    {
+    }
+
+    public AsyncMetricRecorder( MetricsConfig config )
+    {
+        this.config = config;
+    }
+
+    @PostConstruct
+    public void init()
+    {
+        if ( config.isEnabled() && config.isAsyncRecordingEnabled() )
+        {
+            start( config.getAsyncRecordingQueueSize(), config.isAsyncRecordingDropOnFull() );
+        }
+    }
+
+    public synchronized void start( int queueSize, boolean dropOnFull )
+    {
+        if ( running )
+        {
+            return;
+        }
+
+        logger.info( "Starting asynchronous metric recording, queue size: {}, drop on full: {}", queueSize,
+                     dropOnFull );
+
+        this.dropOnFull = dropOnFull;
+        this.ring = new MetricEventRing( queueSize );
+        this.running = true;
+        this.aggregator = new Thread( this::aggregate, "o11yphant-metric-aggregator" );
+        aggregator.setDaemon( true );
+        aggregator.start();
+    }
+
+    /**
+     * Stop the aggregator after it has applied everything published so far. Later updates are applied inline; an
+     * update published while stopping is applied by its publisher if the aggregator could have missed it.
+     */
+    @PreDestroy
+    public void stop()
+    {
+        Thread thread;
+        synchronized ( this )
+        {
+            if ( !running )
+            {
+                return;
+            }
+            running = false;
+            thread = aggregator;
+            aggregator = null;
+        }
+
+        LockSupport.unpark( thread );
+        try
+        {
+            thread.join( TimeUnit.SECONDS.toMillis( 5 ) );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+        }
+        ring = null;
+    }
+
+    public boolean isEnabled()
+    {
+        return ring != null;
+    }
+
+    public void mark( Meter meter )
+    {
+        if ( !publish( meter, MARK, 1 ) )
+        {
+            meter.mark();
+        }
+    }
+
+    public void update( Timer timer, long nanos )
+    {
+        if ( !publish( timer, TIMER_NANOS, nanos ) )
+        {
+            timer.recordNanos( nanos );
+        }
+    }
+
+    public void update( Histogram histogram, long value )
+    {
+        if ( !publish( histogram, HISTOGRAM, value ) )
+        {
+            histogram.update( value );
+        }
+    }
+
+    public int getQueueDepth()
+    {
+        MetricEventRing r = ring;
+        return r == null ? 0 : r.size();
+    }
+
+    public int getQueueCapacity()
+    {
+        MetricEventRing r = ring;
+        return r == null ? 0 : r.capacity();
+    }
+
+    public long getDroppedCount()
+    {
+        return dropped.sum();
+    }
+
+    public long getPublishedCount()
+    {
+        return published.sum();
+    }
+
+    /**
+     * @return true if the event was handled here (queued or dropped), false if the caller should apply it inline
+     */
+    private boolean publish( Object target, byte kind, long value )
+    {
+        MetricEventRing r = ring;
+        if ( r == null || !running )
+        {
+            return false;
+        }
+
+        if ( r.offer( target, kind, value ) )
+        {
+            published.increment();
+            if ( !running )
+            {
+                // stop() came in between: the aggregator may already have done its final drain
+                drainAll( r );
+            }
+            else if ( sleeping )
+            {
+                LockSupport.unpark( aggregator );
+            }
+            return true;
+        }
+
+        if ( dropOnFull )
+        {
+            dropped.increment();
+            return true;
+        }
+
+        return false;
+    }
+
+    private void aggregate()
+    {
+        MetricEventRing r = ring;
+        while ( running )
+        {
+            if ( drain( r ) == 0 )
+            {
+                // announce the sleep before the last look at the ring: a producer either sees the flag and wakes us,
+                // or its event is counted here
+                sleeping = true;
+                if ( running && r.size() == 0 )
+                {
+                    LockSupport.parkNanos( this, IDLE_PARK_NANOS );
+                }
+                sleeping = false;
+            }
+        }
+
+        // apply whatever was published before stop()
+        drainAll( r );
+    }
+
+    /**
+     * The ring has a single consumer; this lock keeps the aggregator and publishers finishing up after stop() from
+     * draining at the same time.
+     */
+    private int drain( MetricEventRing r )
+    {
+        synchronized ( drainLock )
+        {
+            return r.drain( applier, DRAIN_BATCH );
+        }
+    }
+
+    private void drainAll( MetricEventRing r )
+    {
+        while ( drain( r ) > 0 )
+        {
+        }
+    }
+
+    private void apply( Object target, byte kind, long value )
+    {
+        try
+        {
+            switch ( kind )
+            {
+                case MARK:
+                    ( (Meter) target ).mark( value );
+                    break;
+                case TIMER_NANOS:
+                    ( (Timer) target ).recordNanos( value );
+                    break;
+                case HISTOGRAM:
+                    ( (Histogram) target ).update( value );
+                    break;
+                default:
+                    logger.warn( "Unknown metric event kind: {}", kind );
+            }
+        }
+        catch ( RuntimeException e )
+        {
+            logger.warn( "Failed to apply metric event to: " + target, e );
+        }
+    }
+}
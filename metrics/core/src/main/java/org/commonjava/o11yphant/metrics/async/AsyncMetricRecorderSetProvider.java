@@ -0,0 +1,86 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.async;
+
+import org.commonjava.o11yphant.metrics.MetricSetProvider;
+import org.commonjava.o11yphant.metrics.api.Gauge;
+import org.commonjava.o11yphant.metrics.api.Metric;
+import org.commonjava.o11yphant.metrics.api.MetricSet;
+import org.commonjava.o11yphant.metrics.conf.MetricsConfig;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.commonjava.o11yphant.metrics.util.NameUtils.name;
+
+/**
+ * Self-metrics of the {@link AsyncMetricRecorder}: queue depth / capacity, and published / dropped event counts.
+ */
+@ApplicationScoped
+public class AsyncMetricRecorderSetProvider
+        implements MetricSetProvider
+{
+    @Inject
+    private AsyncMetricRecorder recorder;
+
+    @Inject
+    private MetricsConfig metricsConfig;
+
+    private static final String ASYNC_RECORDER = "async-recorder";
+
+    @Override
+    public MetricSet getMetricSet()
+    {
+        final Map<String, Metric> gauges = new HashMap<>();
+        gauges.put( "queue.depth", (Gauge<Integer>) recorder::getQueueDepth );
+        gauges.put( "queue.capacity", (Gauge<Integer>) recorder::getQueueCapacity );
+        gauges.put( "published", (Gauge<Long>) recorder::getPublishedCount );
+        gauges.put( "dropped", (Gauge<Long>) recorder::getDroppedCount );
+        return new MetricSet()
+        {
+            @Override
+            public Map<String, Metric> getMetrics()
+            {
+                return gauges;
+            }
+
+            @Override
+            public void reset()
+            {
+            }
+        };
+    }
+
+    @Override
+    public String getName()
+    {
+        return name( metricsConfig.getNodePrefix(), ASYNC_RECORDER );
+    }
+
+    @Override
+    public boolean isEnabled()
+    {
+        return metricsConfig.isAsyncRecordingEnabled();
+    }
+
+    @Override
+    public void reset()
+    {
+    }
+
+}
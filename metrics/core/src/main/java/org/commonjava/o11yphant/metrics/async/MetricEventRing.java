@@ -0,0 +1,137 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.async;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded multi-producer / single-consumer ring of metric events. Each event is a target metric, a kind and a long
+ * value, stored in parallel arrays so publishing allocates nothing. Producers claim a slot with a CAS on the tail and
+ * publish it through the slot's sequence number (after Dmitry Vyukov's bounded queue); the single consumer needs no
+ * atomic operations beyond reading those sequences.
+ */
+final class MetricEventRing
+{
+    private final int mask;
+
+    private final Object[] targets;
+
+    private final byte[] kinds;
+
+    private final long[] values;
+
+    private final AtomicLongArray sequences;
+
+    private final AtomicLong tail = new AtomicLong();
+
+    private volatile long head;
+
+    MetricEventRing( int capacity )
+    {
+        int size = Integer.highestOneBit( Math.max( 2, capacity - 1 ) ) << 1;
+        this.mask = size - 1;
+        this.targets = new Object[size];
+        this.kinds = new byte[size];
+        this.values = new long[size];
+        this.sequences = new AtomicLongArray( size );
+        for ( int i = 0; i < size; i++ )
+        {
+            sequences.set( i, i );
+        }
+    }
+
+    /**
+     * @return false if the ring is full
+     */
+    boolean offer( Object target, byte kind, long value )
+    {
+        long pos = tail.get();
+        while ( true )
+        {
+            int idx = (int) pos & mask;
+            long diff = sequences.get( idx ) - pos;
+            if ( diff == 0 )
+            {
+                if ( tail.compareAndSet( pos, pos + 1 ) )
+                {
+                    targets[idx] = target;
+                    kinds[idx] = kind;
+                    values[idx] = value;
+                    // a full volatile store, so the producer's next volatile read (see AsyncMetricRecorder) can't
+                    // be ordered before the event becomes visible to the consumer
+                    sequences.set( idx, pos + 1 );
+                    return true;
+                }
+                pos = tail.get();
+            }
+            else if ( diff < 0 )
+            {
+                return false;
+            }
+            else
+            {
+                pos = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Consume up to max events; only one thread may call this.
+     * @return number of events consumed
+     */
+    int drain( EventHandler handler, int max )
+    {
+        long h = head;
+        int n = 0;
+        while ( n < max )
+        {
+            int idx = (int) h & mask;
+            if ( sequences.get( idx ) != h + 1 )
+            {
+                break;
+            }
+
+            Object target = targets[idx];
+            byte kind = kinds[idx];
+            long value = values[idx];
+            targets[idx] = null;
+            sequences.lazySet( idx, h + mask + 1 );
+            h++;
+            n++;
+
+            handler.handle( target, kind, value );
+        }
+        head = h;
+        return n;
+    }
+
+    int size()
+    {
+        long size = tail.get() - head;
+        return (int) Math.max( 0, Math.min( size, mask + 1 ) );
+    }
+
+    int capacity()
+    {
+        return mask + 1;
+    }
+
+    interface EventHandler
+    {
+        void handle( Object target, byte kind, long value );
+    }
+}
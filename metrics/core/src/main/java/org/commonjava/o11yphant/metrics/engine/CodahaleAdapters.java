@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.engine;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MovingAverages;
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.UniformSnapshot;
+
+/**
+ * Placeholders for the state codahale base classes insist on, shared by all adapters since it is never used.
+ */
+final class CodahaleAdapters
+{
+    static final MovingAverages NO_AVERAGES = new MovingAverages()
+    {
+        @Override
+        public void tickIfNecessary()
+        {
+        }
+
+        @Override
+        public void update( long n )
+        {
+        }
+
+        @Override
+        public double getM1Rate()
+        {
+            return 0;
+        }
+
+        @Override
+        public double getM5Rate()
+        {
+            return 0;
+        }
+
+        @Override
+        public double getM15Rate()
+        {
+            return 0;
+        }
+    };
+
+    static final Reservoir NO_RESERVOIR = new Reservoir()
+    {
+        @Override
+        public int size()
+        {
+            return 0;
+        }
+
+        @Override
+        public void update( long value )
+        {
+        }
+
+        @Override
+        public Snapshot getSnapshot()
+        {
+            return new UniformSnapshot( new long[0] );
+        }
+    };
+
+    static final Meter UNUSED_METER = new Meter( NO_AVERAGES );
+
+    static final Histogram UNUSED_HISTOGRAM = new Histogram( NO_RESERVOIR );
+
+    private CodahaleAdapters()
+    {
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.engine;
+
+import com.codahale.metrics.Counter;
+import org.commonjava.o11yphant.metrics.expiry.TouchTracking;
+
+/**
+ * Exposes a {@link NativeCounter} to codahale registries and reporters. Being monotonic, it rejects decrements.
+ */
+public class CodahaleCounterAdapter
+        extends Counter
+        implements TouchTracking
+{
+    private final NativeCounter counter;
+
+    public CodahaleCounterAdapter( NativeCounter counter )
+    {
+        this.counter = counter;
+    }
+
+    public NativeCounter getCounter()
+    {
+        return counter;
+    }
+
+    @Override
+    public void inc( long n )
+    {
+        counter.inc( n );
+    }
+
+    @Override
+    public void dec( long n )
+    {
+        throw new UnsupportedOperationException( "Counter can only be increased" );
+    }
+
+    @Override
+    public long getCount()
+    {
+        return counter.getCount();
+    }
+
+    @Override
+    public long getLastTouched()
+    {
+        return counter.getLastTouched();
+    }
+}
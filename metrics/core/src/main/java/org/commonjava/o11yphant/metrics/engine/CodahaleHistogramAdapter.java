@@ -0,0 +1,71 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.engine;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Snapshot;
+import org.commonjava.o11yphant.metrics.expiry.TouchTracking;
+
+/**
+ * Exposes a {@link NativeHistogram} to codahale registries and reporters.
+ */
+public class CodahaleHistogramAdapter
+        extends Histogram
+        implements TouchTracking
+{
+    private final NativeHistogram histogram;
+
+    public CodahaleHistogramAdapter( NativeHistogram histogram )
+    {
+        super( CodahaleAdapters.NO_RESERVOIR );
+        this.histogram = histogram;
+    }
+
+    public NativeHistogram getHistogram()
+    {
+        return histogram;
+    }
+
+    @Override
+    public void update( int value )
+    {
+        histogram.update( value );
+    }
+
+    @Override
+    public void update( long value )
+    {
+        histogram.update( value );
+    }
+
+    @Override
+    public long getCount()
+    {
+        return histogram.getCount();
+    }
+
+    @Override
+    public Snapshot getSnapshot()
+    {
+        return histogram.getReservoir().getSnapshot();
+    }
+
+    @Override
+    public long getLastTouched()
+    {
+        return histogram.getLastTouched();
+    }
+}
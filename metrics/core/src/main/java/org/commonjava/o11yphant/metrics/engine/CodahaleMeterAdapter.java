@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.engine;
+
+import com.codahale.metrics.Meter;
+import org.commonjava.o11yphant.metrics.expiry.TouchTracking;
+
+/**
+ * Exposes a {@link NativeMeter} to codahale registries and reporters.
+ */
+public class CodahaleMeterAdapter
+        extends Meter
+        implements TouchTracking
+{
+    private final NativeMeter meter;
+
+    public CodahaleMeterAdapter( NativeMeter meter )
+    {
+        super( CodahaleAdapters.NO_AVERAGES );
+        this.meter = meter;
+    }
+
+    public NativeMeter getMeter()
+    {
+        return meter;
+    }
+
+    @Override
+    public void mark( long n )
+    {
+        meter.mark( n );
+    }
+
+    @Override
+    public long getCount()
+    {
+        return meter.getCount();
+    }
+
+    @Override
+    public double getFifteenMinuteRate()
+    {
+        return meter.getFifteenMinuteRate();
+    }
+
+    @Override
+    public double getFiveMinuteRate()
+    {
+        return meter.getFiveMinuteRate();
+    }
+
+    @Override
+    public double getMeanRate()
+    {
+        return meter.getMeanRate();
+    }
+
+    @Override
+    public double getOneMinuteRate()
+    {
+        return meter.getOneMinuteRate();
+    }
+
+    @Override
+    public long getLastTouched()
+    {
+        return meter.getLastTouched();
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.engine;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import org.commonjava.o11yphant.metrics.expiry.TouchTracking;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Exposes a {@link NativeTimer} to codahale registries and reporters. Codahale contexts from {@link #time()} record
+ * through {@link #update(long, TimeUnit)}, so they end up in the native timer as well.
+ */
+public class CodahaleTimerAdapter
+        extends Timer
+        implements TouchTracking
+{
+    private final NativeTimer timer;
+
+    public CodahaleTimerAdapter( NativeTimer timer )
+    {
+        super( CodahaleAdapters.UNUSED_METER, CodahaleAdapters.UNUSED_HISTOGRAM, Clock.defaultClock() );
+        this.timer = timer;
+    }
+
+    public NativeTimer getTimer()
+    {
+        return timer;
+    }
+
+    @Override
+    public void update( long duration, TimeUnit unit )
+    {
+        timer.update( duration, unit );
+    }
+
+    @Override
+    public void update( Duration duration )
+    {
+        timer.recordNanos( duration.toNanos() );
+    }
+
+    @Override
+    public <T> T time( Callable<T> event )
+            throws Exception
+    {
+        org.commonjava.o11yphant.metrics.api.Timer.Context context = timer.time();
+        try
+        {
+            return event.call();
+        }
+        finally
+        {
+            context.stop();
+        }
+    }
+
+    @Override
+    public <T> T timeSupplier( Supplier<T> event )
+    {
+        org.commonjava.o11yphant.metrics.api.Timer.Context context = timer.time();
+        try
+        {
+            return event.get();
+        }
+        finally
+        {
+            context.stop();
+        }
+    }
+
+    @Override
+    public void time( Runnable event )
+    {
+        org.commonjava.o11yphant.metrics.api.Timer.Context context = timer.time();
+        try
+        {
+            event.run();
+        }
+        finally
+        {
+            context.stop();
+        }
+    }
+
+    @Override
+    public long getCount()
+    {
+        return timer.getCount();
+    }
+
+    @Override
+    public double getFifteenMinuteRate()
+    {
+        return timer.getFifteenMinuteRate();
+    }
+
+    @Override
+    public double getFiveMinuteRate()
+    {
+        return timer.getFiveMinuteRate();
+    }
+
+    @Override
+    public double getMeanRate()
+    {
+        return timer.getMeanRate();
+    }
+
+    @Override
+    public double getOneMinuteRate()
+    {
+        return timer.getOneMinuteRate();
+    }
+
+    @Override
+    public Snapshot getSnapshot()
+    {
+        return timer.getReservoir().getSnapshot();
+    }
+
+    @Override
+    public long getLastTouched()
+    {
+        return timer.getLastTouched();
+    }
+}
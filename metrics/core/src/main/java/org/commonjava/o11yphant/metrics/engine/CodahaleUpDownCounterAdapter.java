@@ -0,0 +1,55 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.engine;
+
+import com.codahale.metrics.Counter;
+
+/**
+ * Exposes a {@link NativeUpDownCounter} to codahale registries and reporters.
+ */
+public class CodahaleUpDownCounterAdapter
+        extends Counter
+{
+    private final NativeUpDownCounter counter;
+
+    public CodahaleUpDownCounterAdapter( NativeUpDownCounter counter )
+    {
+        this.counter = counter;
+    }
+
+    public NativeUpDownCounter getCounter()
+    {
+        return counter;
+    }
+
+    @Override
+    public void inc( long n )
+    {
+        counter.inc( n );
+    }
+
+    @Override
+    public void dec( long n )
+    {
+        counter.dec( n );
+    }
+
+    @Override
+    public long getCount()
+    {
+        return counter.getCount();
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.engine;
+
+/**
+ * Exponentially weighted moving average of a per-second rate, fed one {@link #TICK_SECONDS} interval at a time (the
+ * same decay as the Unix load average and codahale's EWMA). Callers serialize {@link #tick(long)}.
+ */
+final class Ewma
+{
+    static final int TICK_SECONDS = 5;
+
+    private final double alpha;
+
+    private volatile double rate;
+
+    private boolean initialized;
+
+    Ewma( int minutes )
+    {
+        this.alpha = 1 - Math.exp( -TICK_SECONDS / 60.0 / minutes );
+    }
+
+    void tick( long count )
+    {
+        double instantRate = (double) count / TICK_SECONDS;
+        if ( initialized )
+        {
+            rate += alpha * ( instantRate - rate );
+        }
+        else
+        {
+            rate = instantRate;
+            initialized = true;
+        }
+    }
+
+    double getRate()
+    {
+        return rate;
+    }
+}
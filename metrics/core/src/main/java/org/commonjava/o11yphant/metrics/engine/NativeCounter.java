@@ -0,0 +1,71 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.engine;
+
+import org.commonjava.o11yphant.metrics.api.Counter;
+import org.commonjava.o11yphant.metrics.expiry.TouchClock;
+import org.commonjava.o11yphant.metrics.expiry.TouchTracking;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counter backed by a {@link LongAdder}, so concurrent increments do not contend on one cache line.
+ */
+public class NativeCounter
+        implements Counter, TouchTracking
+{
+    private final LongAdder count = new LongAdder();
+
+    private volatile long lastTouched = TouchClock.now();
+
+    @Override
+    public void inc()
+    {
+        inc( 1 );
+    }
+
+    @Override
+    public void inc( long n )
+    {
+        if ( n < 0 )
+        {
+            throw new IllegalArgumentException( "Counter can only be increased, use an UpDownCounter: " + n );
+        }
+        touch();
+        count.add( n );
+    }
+
+    @Override
+    public long getCount()
+    {
+        return count.sum();
+    }
+
+    @Override
+    public long getLastTouched()
+    {
+        return lastTouched;
+    }
+
+    private void touch()
+    {
+        long now = TouchClock.now();
+        if ( lastTouched != now )
+        {
+            lastTouched = now;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.engine;
+
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Reservoir;
+import org.commonjava.o11yphant.metrics.api.Histogram;
+import org.commonjava.o11yphant.metrics.api.Snapshot;
+import org.commonjava.o11yphant.metrics.expiry.TouchClock;
+import org.commonjava.o11yphant.metrics.expiry.TouchTracking;
+import org.commonjava.o11yphant.metrics.impl.O11Snapshot;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram recording into a pluggable {@link Reservoir}, e.g. codahale's exponentially decaying one or
+ * {@link org.commonjava.o11yphant.metrics.hdr.HdrHistogramReservoir}.
+ */
+public class NativeHistogram
+        implements Histogram, TouchTracking
+{
+    private final LongAdder count = new LongAdder();
+
+    private final Reservoir reservoir;
+
+    private volatile long lastTouched = TouchClock.now();
+
+    public NativeHistogram()
+    {
+        this( new ExponentiallyDecayingReservoir() );
+    }
+
+    public NativeHistogram( Reservoir reservoir )
+    {
+        this.reservoir = reservoir;
+    }
+
+    @Override
+    public void update( int value )
+    {
+        update( (long) value );
+    }
+
+    @Override
+    public void update( long value )
+    {
+        long now = TouchClock.now();
+        if ( lastTouched != now )
+        {
+            lastTouched = now;
+        }
+        count.increment();
+        reservoir.update( value );
+    }
+
+    @Override
+    public long getCount()
+    {
+        return count.sum();
+    }
+
+    @Override
+    public Snapshot getSnapshot()
+    {
+        return new O11Snapshot( reservoir.getSnapshot() );
+    }
+
+    public Reservoir getReservoir()
+    {
+        return reservoir;
+    }
+
+    @Override
+    public long getLastTouched()
+    {
+        return lastTouched;
+    }
+}
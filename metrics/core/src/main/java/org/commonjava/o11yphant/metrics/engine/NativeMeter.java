@@ -0,0 +1,161 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.engine;
+
+import org.commonjava.o11yphant.metrics.api.Meter;
+import org.commonjava.o11yphant.metrics.expiry.TouchClock;
+import org.commonjava.o11yphant.metrics.expiry.TouchTracking;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Meter whose {@link #mark(long)} is a single striped add. The moving averages are only ticked when a rate is read,
+ * typically by a reporter: marks made since the previous tick are spread evenly over the time that elapsed in between,
+ * so for a steady rate the averages come out the same however often (and by how many readers) they are read.
+ */
+public class NativeMeter
+        implements Meter, TouchTracking
+{
+    private static final long TICK_INTERVAL = TimeUnit.SECONDS.toNanos( Ewma.TICK_SECONDS );
+
+    private final LongAdder count = new LongAdder();
+
+    private final Ewma m1 = new Ewma( 1 );
+
+    private final Ewma m5 = new Ewma( 5 );
+
+    private final Ewma m15 = new Ewma( 15 );
+
+    private final LongSupplier nanoClock;
+
+    private final long startTime;
+
+    private long lastTick;
+
+    private long tickedCount;
+
+    private volatile long lastTouched = TouchClock.now();
+
+    public NativeMeter()
+    {
+        this( System::nanoTime );
+    }
+
+    // for test
+    NativeMeter( LongSupplier nanoClock )
+    {
+        this.nanoClock = nanoClock;
+        this.startTime = nanoClock.getAsLong();
+        this.lastTick = startTime;
+    }
+
+    @Override
+    public void mark()
+    {
+        mark( 1 );
+    }
+
+    @Override
+    public void mark( long n )
+    {
+        touch();
+        count.add( n );
+    }
+
+    @Override
+    public long getCount()
+    {
+        return count.sum();
+    }
+
+    @Override
+    public double getMeanRate()
+    {
+        long c = getCount();
+        if ( c == 0 )
+        {
+            return 0.0;
+        }
+        double elapsed = nanoClock.getAsLong() - startTime;
+        return c / elapsed * TimeUnit.SECONDS.toNanos( 1 );
+    }
+
+    @Override
+    public double getOneMinuteRate()
+    {
+        tickIfNecessary();
+        return m1.getRate();
+    }
+
+    @Override
+    public double getFiveMinuteRate()
+    {
+        tickIfNecessary();
+        return m5.getRate();
+    }
+
+    @Override
+    public double getFifteenMinuteRate()
+    {
+        tickIfNecessary();
+        return m15.getRate();
+    }
+
+    @Override
+    public long getLastTouched()
+    {
+        return lastTouched;
+    }
+
+    void touch()
+    {
+        long now = TouchClock.now();
+        if ( lastTouched != now )
+        {
+            lastTouched = now;
+        }
+    }
+
+    private synchronized void tickIfNecessary()
+    {
+        long now = nanoClock.getAsLong();
+        long elapsed = now - lastTick;
+        long ticks = elapsed / TICK_INTERVAL;
+        if ( ticks <= 0 )
+        {
+            return;
+        }
+
+        // marks since the last tick are assumed to be spread evenly up to now; the share falling into the partial
+        // interval still in progress is carried over to the next tick
+        long uncounted = count.sum() - tickedCount;
+        long counted = Math.round( uncounted * ( (double) ( ticks * TICK_INTERVAL ) / elapsed ) );
+        lastTick += ticks * TICK_INTERVAL;
+        tickedCount += counted;
+
+        long perTick = counted / ticks;
+        long remainder = counted % ticks;
+        for ( long i = 0; i < ticks; i++ )
+        {
+            long n = i < remainder ? perTick + 1 : perTick;
+            m1.tick( n );
+            m5.tick( n );
+            m15.tick( n );
+        }
+    }
+}
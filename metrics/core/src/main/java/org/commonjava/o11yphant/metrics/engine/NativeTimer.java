@@ -0,0 +1,152 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.engine;
+
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Reservoir;
+import org.commonjava.o11yphant.metrics.api.Snapshot;
+import org.commonjava.o11yphant.metrics.api.Timer;
+import org.commonjava.o11yphant.metrics.expiry.TouchTracking;
+import org.commonjava.o11yphant.metrics.impl.O11Snapshot;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timer made of a {@link NativeMeter} for the rates and a pluggable {@link Reservoir} for the durations, in
+ * nanoseconds. A timer counts as touched when a measurement starts as well as when one is recorded.
+ */
+public class NativeTimer
+        implements Timer, TouchTracking
+{
+    private final NativeMeter meter = new NativeMeter();
+
+    private final Reservoir reservoir;
+
+    public NativeTimer()
+    {
+        this( new ExponentiallyDecayingReservoir() );
+    }
+
+    public NativeTimer( Reservoir reservoir )
+    {
+        this.reservoir = reservoir;
+    }
+
+    @Override
+    public Context time()
+    {
+        meter.touch();
+        return new NativeContext( this, System.nanoTime() );
+    }
+
+    @Override
+    public void update( long duration, TimeUnit timeUnit )
+    {
+        recordNanos( timeUnit.toNanos( duration ) );
+    }
+
+    @Override
+    public void recordNanos( long nanos )
+    {
+        if ( nanos >= 0 )
+        {
+            reservoir.update( nanos );
+            meter.mark();
+        }
+    }
+
+    @Override
+    public long startNanos()
+    {
+        meter.touch();
+        return System.nanoTime();
+    }
+
+    @Override
+    public Snapshot getSnapshot()
+    {
+        return new O11Snapshot( reservoir.getSnapshot() );
+    }
+
+    @Override
+    public long getCount()
+    {
+        return meter.getCount();
+    }
+
+    @Override
+    public double getFifteenMinuteRate()
+    {
+        return meter.getFifteenMinuteRate();
+    }
+
+    @Override
+    public double getFiveMinuteRate()
+    {
+        return meter.getFiveMinuteRate();
+    }
+
+    @Override
+    public double getMeanRate()
+    {
+        return meter.getMeanRate();
+    }
+
+    @Override
+    public double getOneMinuteRate()
+    {
+        return meter.getOneMinuteRate();
+    }
+
+    public Reservoir getReservoir()
+    {
+        return reservoir;
+    }
+
+    @Override
+    public long getLastTouched()
+    {
+        return meter.getLastTouched();
+    }
+
+    private static final class NativeContext
+            implements Context
+    {
+        private final NativeTimer timer;
+
+        private final long start;
+
+        private NativeContext( NativeTimer timer, long start )
+        {
+            this.timer = timer;
+            this.start = start;
+        }
+
+        @Override
+        public long stop()
+        {
+            long elapsed = System.nanoTime() - start;
+            timer.recordNanos( elapsed );
+            return elapsed;
+        }
+
+        @Override
+        public void close()
+        {
+            stop();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.engine;
+
+import org.commonjava.o11yphant.metrics.api.UpDownCounter;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Up-down counter backed by a {@link LongAdder}. It is deliberately not subject to idle expiry: a quiet in-flight
+ * counter still holds a meaningful value, and dropping it would lose the matching decrements.
+ */
+public class NativeUpDownCounter
+        implements UpDownCounter
+{
+    private final LongAdder count = new LongAdder();
+
+    @Override
+    public void inc()
+    {
+        count.increment();
+    }
+
+    @Override
+    public void inc( long n )
+    {
+        count.add( n );
+    }
+
+    @Override
+    public void dec()
+    {
+        count.decrement();
+    }
+
+    @Override
+    public void dec( long n )
+    {
+        count.add( -n );
+    }
+
+    @Override
+    public long getCount()
+    {
+        return count.sum();
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.expiry;
+
+import org.commonjava.o11yphant.metrics.DefaultMetricRegistry;
+import org.commonjava.o11yphant.metrics.conf.MetricsConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.Collection;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically removes metrics that have not been updated for {@link MetricsConfig#getMetricIdleTtlSeconds()}, see
+ * {@link DefaultMetricRegistry#expireIdle(long)}. It runs every quarter of the TTL, which is also the resolution of
+ * the {@link TouchClock}, so a metric is removed after being idle for between 1 and 1.25 times the TTL.
+ */
+@ApplicationScoped
+public class IdleMetricSweeper
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    private MetricsConfig config;
+
+    @Inject
+    private DefaultMetricRegistry registry;
+
+    private ScheduledExecutorService executor;
+
+    public synchronized void start()
+    {
+        long ttlSeconds = config.getMetricIdleTtlSeconds();
+        if ( ttlSeconds <= 0 || executor != null )
+        {
+            return;
+        }
+
+        long ttlMillis = TimeUnit.SECONDS.toMillis( ttlSeconds );
+        long periodMillis = Math.max( 1000, ttlMillis / 4 );
+        logger.info( "Expiring metrics idle for more than {}s, checking every {}ms", ttlSeconds, periodMillis );
+
+        TouchClock.tick();
+        executor = Executors.newSingleThreadScheduledExecutor( r -> {
+            Thread t = new Thread( r, "o11yphant-metric-sweeper" );
+            t.setDaemon( true );
+            return t;
+        } );
+        executor.scheduleWithFixedDelay( () -> sweep( ttlMillis ), periodMillis, periodMillis,
+                                         TimeUnit.MILLISECONDS );
+    }
+
+    @PreDestroy
+    public synchronized void stop()
+    {
+        if ( executor != null )
+        {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    private void sweep( long ttlMillis )
+    {
+        try
+        {
+            TouchClock.tick();
+            Collection<String> expired = registry.expireIdle( ttlMillis );
+            if ( !expired.isEmpty() )
+            {
+                logger.debug( "Expired {} idle metrics: {}", expired.size(), expired );
+            }
+        }
+        catch ( RuntimeException e )
+        {
+            logger.warn( "Failed to expire idle metrics", e );
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.expiry;
+
+/**
+ * Coarse wall clock for idle tracking. It is only advanced by the {@link IdleMetricSweeper}, so touching a metric is a
+ * volatile read, plus a write only the first time the metric is touched in each tick.
+ */
+public final class TouchClock
+{
+    private static volatile long now = System.currentTimeMillis();
+
+    private TouchClock()
+    {
+    }
+
+    public static long now()
+    {
+        return now;
+    }
+
+    public static void tick()
+    {
+        now = System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.hdr;
+
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.PackedHistogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reservoir recording every value into an HdrHistogram {@link Recorder}, which is wait-free for the recording threads
+ * and keeps all values (within the configured precision) instead of a sample, so high percentiles are reported
+ * accurately. Histograms are packed, so an idle or narrow-ranged metric takes little memory.
+ *
+ * Each snapshot covers the values recorded during the current and the previous window, i.e. between one and two window
+ * lengths. Values below zero cannot be recorded and are ignored.
+ */
+public class HdrHistogramReservoir
+        implements Reservoir
+{
+    private final Recorder recorder;
+
+    private final int significantDigits;
+
+    private final long windowNanos;
+
+    private Histogram interval;
+
+    private Histogram current;
+
+    private Histogram previous;
+
+    private long windowStart;
+
+    public HdrHistogramReservoir( int significantDigits, long window, TimeUnit unit )
+    {
+        this.recorder = new Recorder( significantDigits, true );
+        this.significantDigits = significantDigits;
+        this.windowNanos = unit.toNanos( window );
+        this.current = new PackedHistogram( significantDigits );
+        this.previous = new PackedHistogram( significantDigits );
+        this.windowStart = System.nanoTime();
+    }
+
+    @Override
+    public void update( long value )
+    {
+        if ( value >= 0 )
+        {
+            recorder.recordValue( value );
+        }
+    }
+
+    @Override
+    public synchronized int size()
+    {
+        roll();
+        return (int) Math.min( Integer.MAX_VALUE, current.getTotalCount() + previous.getTotalCount() );
+    }
+
+    @Override
+    public synchronized Snapshot getSnapshot()
+    {
+        roll();
+        Histogram histogram = new PackedHistogram( significantDigits );
+        histogram.add( previous );
+        histogram.add( current );
+        return new HdrSnapshot( histogram );
+    }
+
+    private void roll()
+    {
+        interval = recorder.getIntervalHistogram( interval );
+
+        long now = System.nanoTime();
+        long elapsed = now - windowStart;
+        if ( elapsed >= windowNanos )
+        {
+            Histogram h = previous;
+            previous = current;
+            current = h;
+            current.reset();
+            if ( elapsed >= 2 * windowNanos )
+            {
+                previous.reset();
+            }
+            windowStart = now;
+        }
+
+        current.add( interval );
+    }
+}
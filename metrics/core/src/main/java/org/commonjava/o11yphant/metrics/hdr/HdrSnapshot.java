@@ -0,0 +1,116 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.hdr;
+
+import com.codahale.metrics.Snapshot;
+import org.HdrHistogram.AbstractHistogram;
+import org.HdrHistogram.HistogramIterationValue;
+
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Snapshot of an HdrHistogram. Quantiles come straight from the histogram; {@link #getValues()} returns one value per
+ * recorded bucket rather than every recorded value.
+ */
+public class HdrSnapshot
+        extends Snapshot
+{
+    private final AbstractHistogram histogram;
+
+    private final long count;
+
+    public HdrSnapshot( AbstractHistogram histogram )
+    {
+        this.histogram = histogram;
+        this.count = histogram.getTotalCount();
+    }
+
+    @Override
+    public double getValue( double quantile )
+    {
+        if ( quantile < 0.0 || quantile > 1.0 || Double.isNaN( quantile ) )
+        {
+            throw new IllegalArgumentException( quantile + " is not in [0..1]" );
+        }
+        return count == 0 ? 0.0 : histogram.getValueAtPercentile( quantile * 100.0 );
+    }
+
+    @Override
+    public long[] getValues()
+    {
+        long[] values = new long[16];
+        int n = 0;
+        for ( HistogramIterationValue v : histogram.recordedValues() )
+        {
+            if ( n == values.length )
+            {
+                long[] grown = new long[n * 2];
+                System.arraycopy( values, 0, grown, 0, n );
+                values = grown;
+            }
+            values[n++] = v.getValueIteratedTo();
+        }
+
+        long[] result = new long[n];
+        System.arraycopy( values, 0, result, 0, n );
+        return result;
+    }
+
+    @Override
+    public int size()
+    {
+        return (int) Math.min( Integer.MAX_VALUE, count );
+    }
+
+    @Override
+    public long getMax()
+    {
+        return count == 0 ? 0 : histogram.getMaxValue();
+    }
+
+    @Override
+    public double getMean()
+    {
+        return count == 0 ? 0.0 : histogram.getMean();
+    }
+
+    @Override
+    public long getMin()
+    {
+        return count == 0 ? 0 : histogram.getMinValue();
+    }
+
+    @Override
+    public double getStdDev()
+    {
+        return count < 2 ? 0.0 : histogram.getStdDeviation();
+    }
+
+    @Override
+    public void dump( OutputStream output )
+    {
+        try (PrintWriter out = new PrintWriter( new OutputStreamWriter( output, StandardCharsets.UTF_8 ) ))
+        {
+            for ( long value : getValues() )
+            {
+                out.printf( "%d%n", value );
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.hdr;
+
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Reservoir;
+import org.commonjava.o11yphant.metrics.conf.MetricsConfig;
+import org.commonjava.o11yphant.metrics.sketch.SketchReservoir;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Picks the reservoir for a new timer or histogram: an {@link HdrHistogramReservoir} if the metric name matches one of
+ * {@link MetricsConfig#getHdrHistogramPatterns()}, a {@link SketchReservoir} if it matches one of
+ * {@link MetricsConfig#getQuantileSketchPatterns()}, otherwise codahale's default exponentially decaying one.
+ */
+@ApplicationScoped
+public class ReservoirSelector
+{
+    @Inject
+    private MetricsConfig config;
+
+    private volatile List<Pattern> patterns = Collections.emptyList();
+
+    private int significantDigits = 2;
+
+    private long windowSeconds = 60;
+
+    private volatile List<Pattern> sketchPatterns = Collections.emptyList();
+
+    private double sketchAccuracy = 0.01;
+
+    public ReservoirSelector()
+    {
+    }
+
+    public ReservoirSelector( Collection<String> patterns, int significantDigits, long windowSeconds )
+    {
+        configure( patterns, significantDigits, windowSeconds );
+    }
+
+    @PostConstruct
+    public void init()
+    {
+        configure( config.getHdrHistogramPatterns(), config.getHdrHistogramSignificantDigits(),
+                   config.getHdrHistogramWindowSeconds() );
+        configureSketches( config.getQuantileSketchPatterns(), config.getQuantileSketchRelativeAccuracy() );
+    }
+
+    public void configureSketches( Collection<String> patterns, double relativeAccuracy )
+    {
+        this.sketchAccuracy = relativeAccuracy;
+        this.sketchPatterns = compile( patterns );
+    }
+
+    private void configure( Collection<String> patterns, int significantDigits, long windowSeconds )
+    {
+        this.significantDigits = significantDigits;
+        this.windowSeconds = windowSeconds;
+        this.patterns = compile( patterns );
+    }
+
+    private static List<Pattern> compile( Collection<String> patterns )
+    {
+        return patterns == null ?
+                        Collections.emptyList() :
+                        patterns.stream().map( Pattern::compile ).collect( Collectors.toList() );
+    }
+
+    public boolean isHdrHistogram( String name )
+    {
+        return matches( patterns, name );
+    }
+
+    public boolean isQuantileSketch( String name )
+    {
+        return matches( sketchPatterns, name );
+    }
+
+    private static boolean matches( List<Pattern> patterns, String name )
+    {
+        for ( Pattern pattern : patterns )
+        {
+            if ( pattern.matcher( name ).matches() )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Reservoir newReservoir( String name )
+    {
+        if ( isHdrHistogram( name ) )
+        {
+            return new HdrHistogramReservoir( significantDigits, windowSeconds, TimeUnit.SECONDS );
+        }
+        if ( isQuantileSketch( name ) )
+        {
+            return new SketchReservoir( sketchAccuracy );
+        }
+        return new ExponentiallyDecayingReservoir();
+    }
+}
@@ -17,6 +17,7 @@ package org.commonjava.o11yphant.metrics.inject;
 
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.health.HealthCheckRegistry;
+import org.commonjava.o11yphant.metrics.GenerationalMetricRegistry;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.inject.Produces;
@@ -28,7 +29,7 @@ public class DefaultMetricProducer
     @Produces
     public MetricRegistry getMetricRegistry()
     {
-        return new MetricRegistry();
+        return new GenerationalMetricRegistry();
     }
 
     @ApplicationScoped
@@ -16,7 +16,6 @@
 package org.commonjava.o11yphant.metrics.interceptor;
 
 import org.commonjava.o11yphant.metrics.annotation.Measure;
-import org.commonjava.o11yphant.metrics.api.Timer;
 import org.commonjava.o11yphant.metrics.conf.MetricsConfig;
 import org.commonjava.o11yphant.metrics.MetricsManager;
 import org.slf4j.Logger;
@@ -26,16 +25,8 @@ import javax.inject.Inject;
 import javax.interceptor.AroundInvoke;
 import javax.interceptor.Interceptor;
 import javax.interceptor.InvocationContext;
-import java.lang.reflect.Method;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
 
-import static com.codahale.metrics.MetricRegistry.name;
-import static org.commonjava.o11yphant.metrics.MetricsConstants.*;
-import static org.commonjava.o11yphant.metrics.util.NameUtils.*;
+import static org.commonjava.o11yphant.metrics.MetricsConstants.NANOS_PER_MILLISECOND;
 
 @Interceptor
 @Measure
@@ -57,79 +48,41 @@ public class DefaultMetricsInterceptor
             return context.proceed();
         }
 
-        Method method = context.getMethod();
-        Measure measure = method.getAnnotation( Measure.class );
-        if ( measure == null )
-        {
-            measure = method.getDeclaringClass().getAnnotation( Measure.class );
-        }
-
-        if ( measure == null )
+        MeasurePlan plan = MeasurePlan.of( context.getMethod(), config.getNodePrefix() );
+        if ( !plan.measured )
         {
             return context.proceed();
         }
 
-        String defaultName = getDefaultName( context.getMethod().getDeclaringClass(), context.getMethod().getName() );
-        logger.trace( "Gathering metrics for: {} using context: {}", defaultName, context.getContextData() );
+        logger.trace( "Gathering metrics for: {} using context: {}", plan.defaultName, context.getContextData() );
 
-        Map<String, Timer.Context> timers = initTimers( defaultName );
-        List<String> exceptionMeters = initMeters( EXCEPTION, defaultName );
-        List<String> meters = initMeters( METER, defaultName );
-
-        List<String> startMeters = meters.stream().map( name -> name( name, "starts" ) ).collect( Collectors.toList() );
+        metricsManager.startTimer( plan.timerName );
 
         long start = System.nanoTime();
 
         try
         {
-            metricsManager.mark( startMeters );
+            metricsManager.mark( plan.startMeters );
 
             return context.proceed();
         }
         catch ( Exception e )
         {
-            metricsManager.mark( exceptionMeters );
-
-            List<String> eClassMeters = exceptionMeters.stream()
-                                                       .map( name -> name( name, e.getClass().getSimpleName() ) )
-                                                       .filter( name -> !exceptionMeters.contains( name ) )
-                                                       .collect( Collectors.toList() );
-
-            metricsManager.mark( eClassMeters );
+            metricsManager.mark( plan.exceptionMeters );
+            metricsManager.mark( plan.getExceptionClassMeters( e.getClass() ) );
 
             throw e;
         }
         finally
         {
-            metricsManager.stopTimers( timers );
-            metricsManager.mark( meters );
+            // not stopTimer(): the trace interceptor for @Measure reports this call, the wrapper would add end fields
+            metricsManager.stopTimerUnwrapped( plan.timerName );
+            metricsManager.mark( plan.meters );
 
             double elapsed = (System.nanoTime() - start) / NANOS_PER_MILLISECOND;
 
-            metricsManager.accumulate( defaultName, elapsed );
+            metricsManager.accumulate( plan.defaultName, elapsed );
         }
     }
 
-    private List<String> initMeters( String classifier, final String defaultName )
-    {
-        List<String> meters = new ArrayList<>();
-
-        meters.add( getName( config.getNodePrefix(), DEFAULT, defaultName, classifier ) );
-
-        logger.trace( "Got meter for {} with classifier: {}: {}", defaultName, classifier, meters );
-
-        return meters;
-    }
-
-    private Map<String, Timer.Context> initTimers( String defaultName )
-    {
-        Map<String, Timer.Context> timers = new HashMap<>();
-
-        String name = getName( config.getNodePrefix(), DEFAULT, defaultName, TIMER );
-        timers.put(name,
-                metricsManager.startTimer( name ) );
-
-        return timers;
-    }
-
 }
@@ -0,0 +1,98 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.interceptor;
+
+import org.commonjava.o11yphant.metrics.annotation.Measure;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static org.commonjava.o11yphant.metrics.MetricsConstants.DEFAULT;
+import static org.commonjava.o11yphant.metrics.MetricsConstants.EXCEPTION;
+import static org.commonjava.o11yphant.metrics.MetricsConstants.METER;
+import static org.commonjava.o11yphant.metrics.MetricsConstants.TIMER;
+import static org.commonjava.o11yphant.metrics.util.NameUtils.getDefaultName;
+import static org.commonjava.o11yphant.metrics.util.NameUtils.getName;
+
+/**
+ * The resolved {@link Measure} decision and metric names for one intercepted method, built once per {@link Method}
+ * (and node prefix) so {@link DefaultMetricsInterceptor} does no reflection or name building per invocation.
+ */
+final class MeasurePlan
+{
+    private static final Map<Method, MeasurePlan> PLANS = new ConcurrentHashMap<>();
+
+    final boolean measured;
+
+    final String defaultName;
+
+    final String timerName;
+
+    final List<String> meters;
+
+    final List<String> startMeters;
+
+    final List<String> exceptionMeters;
+
+    private final String nodePrefix;
+
+    private final Map<Class<?>, List<String>> exceptionClassMeters = new ConcurrentHashMap<>();
+
+    private MeasurePlan( Method method, String nodePrefix )
+    {
+        this.nodePrefix = nodePrefix;
+        this.measured = method.getAnnotation( Measure.class ) != null
+                || method.getDeclaringClass().getAnnotation( Measure.class ) != null;
+        this.defaultName = getDefaultName( method.getDeclaringClass(), method.getName() );
+        this.timerName = getName( nodePrefix, DEFAULT, defaultName, TIMER );
+
+        String meter = getName( nodePrefix, DEFAULT, defaultName, METER );
+        this.meters = Collections.singletonList( meter );
+        this.startMeters = Collections.singletonList( name( meter, "starts" ) );
+        this.exceptionMeters = Collections.singletonList( getName( nodePrefix, DEFAULT, defaultName, EXCEPTION ) );
+    }
+
+    static MeasurePlan of( Method method, String nodePrefix )
+    {
+        MeasurePlan plan = PLANS.get( method );
+        if ( plan == null || !Objects.equals( plan.nodePrefix, nodePrefix ) )
+        {
+            plan = new MeasurePlan( method, nodePrefix );
+            PLANS.put( method, plan );
+        }
+        return plan;
+    }
+
+    List<String> getExceptionClassMeters( Class<?> type )
+    {
+        List<String> result = exceptionClassMeters.get( type );
+        if ( result == null )
+        {
+            result = exceptionClassMeters.computeIfAbsent( type, t -> {
+                String eClassMeter = name( exceptionMeters.get( 0 ), t.getSimpleName() );
+                return exceptionMeters.contains( eClassMeter ) ?
+                        Collections.emptyList() :
+                        Collections.singletonList( eClassMeter );
+            } );
+        }
+        return result;
+    }
+}
@@ -23,7 +23,11 @@ import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Snapshot;
 import com.codahale.metrics.Timer;
 import io.prometheus.client.dropwizard.DropwizardExports;
+import org.commonjava.o11yphant.metrics.MetricIndex;
 import org.commonjava.o11yphant.metrics.conf.PrometheusConfig;
+import org.commonjava.o11yphant.metrics.engine.CodahaleCounterAdapter;
+import org.commonjava.o11yphant.metrics.sketch.QuantileSketch;
+import org.commonjava.o11yphant.metrics.sketch.SketchSnapshot;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -52,10 +56,13 @@ public class PromEnhancedStatsAndTimingExports
 
     private final PrometheusSampleBuilder sampleBuilder;
 
+    private final boolean sketchBucketsExported;
+
     public PromEnhancedStatsAndTimingExports( MetricRegistry metricRegistry, PrometheusConfig prometheusConfig )
     {
         this.registry = new PrometheusFilteringRegistry( metricRegistry, prometheusConfig );
         this.sampleBuilder = new PrometheusSampleBuilder( prometheusConfig.getNodeLabel() );
+        this.sketchBucketsExported = prometheusConfig.isSketchBucketsExported();
     }
 
     private static String getHelpMessage( String metricName )
@@ -64,10 +71,22 @@ public class PromEnhancedStatsAndTimingExports
     }
 
     /**
-     * Export counter as Prometheus <a href="https://prometheus.io/docs/concepts/metric_types/#gauge">Gauge</a>.
+     * Export counter as Prometheus <a href="https://prometheus.io/docs/concepts/metric_types/#counter">Counter</a>
+     * when it is known to be monotonic, i.e. created via {@code MetricRegistry.counter()}. Up-down counters and plain
+     * codahale counters may be decremented, so they are exported as a
+     * <a href="https://prometheus.io/docs/concepts/metric_types/#gauge">Gauge</a>.
      */
     MetricFamilySamples fromCounter( String dropwizardName, Counter counter )
     {
+        if ( counter instanceof CodahaleCounterAdapter )
+        {
+            MetricFamilySamples.Sample sample =
+                            sampleBuilder.createSample( dropwizardName, "_total", emptyList(), emptyList(),
+                                                        counter.getCount() );
+            return new MetricFamilySamples( sample.name, Type.COUNTER, getHelpMessage( dropwizardName ),
+                                            singletonList( sample ) );
+        }
+
         MetricFamilySamples.Sample sample = sampleBuilder.createSample( dropwizardName, "", emptyList(), emptyList(),
                                                                         Long.valueOf( counter.getCount() )
                                                                             .doubleValue() );
@@ -132,11 +151,35 @@ public class PromEnhancedStatsAndTimingExports
 
         samples.add( sampleBuilder.createSample( dropwizardName, "_count", emptyList(), emptyList(), count ) );
 
+        if ( sketchBucketsExported && snapshot instanceof SketchSnapshot )
+        {
+            addSketchSamples( samples, dropwizardName, ( (SketchSnapshot) snapshot ).getSketch() );
+        }
+
         samples.addAll( extraSamples );
 
         return new MetricFamilySamples( samples.get( 0 ).name, Type.SUMMARY, helpMessage, samples );
     }
 
+    /**
+     * Export the raw buckets of a sketch-backed snapshot, in recorded units, so an aggregator can sum them by index
+     * across nodes and read cluster-wide quantiles off the merged sketch. Opt-in through
+     * {@link PrometheusConfig#isSketchBucketsExported()}, as each occupied bucket is a series of its own.
+     */
+    private void addSketchSamples( List<MetricFamilySamples.Sample> samples, String dropwizardName,
+                                   QuantileSketch sketch )
+    {
+        samples.add( sampleBuilder.createSample( dropwizardName, "_sketch_accuracy", emptyList(), emptyList(),
+                                                 sketch.getRelativeAccuracy() ) );
+
+        samples.add( sampleBuilder.createSample( dropwizardName, "_sketch_zero", emptyList(), emptyList(),
+                                                 sketch.getZeroCount() ) );
+
+        sketch.forEachBucket( ( index, bucketCount ) -> samples.add(
+                        sampleBuilder.createSample( dropwizardName, "_sketch_bucket", singletonList( "index" ),
+                                                    singletonList( Integer.toString( index ) ), bucketCount ) ) );
+    }
+
     /**
      * Convert histogram snapshot.
      */
@@ -190,25 +233,27 @@ public class PromEnhancedStatsAndTimingExports
     @Override
     public List<MetricFamilySamples> collect()
     {
+        // one view, so all metric types come from the same generation even if the registry is reset mid-scrape
+        MetricIndex.View view = registry.getView();
         Map<String, MetricFamilySamples> mfSamplesMap = new HashMap<>();
 
-        for ( SortedMap.Entry<String, Gauge> entry : registry.getGauges().entrySet() )
+        for ( SortedMap.Entry<String, Gauge> entry : view.getGauges().entrySet() )
         {
             addToMap( mfSamplesMap, fromGauge( entry.getKey(), entry.getValue() ) );
         }
-        for ( SortedMap.Entry<String, Counter> entry : registry.getCounters().entrySet() )
+        for ( SortedMap.Entry<String, Counter> entry : view.getCounters().entrySet() )
         {
             addToMap( mfSamplesMap, fromCounter( entry.getKey(), entry.getValue() ) );
         }
-        for ( SortedMap.Entry<String, Histogram> entry : registry.getHistograms().entrySet() )
+        for ( SortedMap.Entry<String, Histogram> entry : view.getHistograms().entrySet() )
         {
             addToMap( mfSamplesMap, fromHistogram( entry.getKey(), entry.getValue() ) );
         }
-        for ( SortedMap.Entry<String, Timer> entry : registry.getTimers().entrySet() )
+        for ( SortedMap.Entry<String, Timer> entry : view.getTimers().entrySet() )
         {
             addToMap( mfSamplesMap, fromTimer( entry.getKey(), entry.getValue() ) );
         }
-        for ( SortedMap.Entry<String, Meter> entry : registry.getMeters().entrySet() )
+        for ( SortedMap.Entry<String, Meter> entry : view.getMeters().entrySet() )
         {
             addToMap( mfSamplesMap, fromMeter( entry.getKey(), entry.getValue() ) );
         }
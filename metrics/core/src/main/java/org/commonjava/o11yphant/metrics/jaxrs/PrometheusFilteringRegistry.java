@@ -23,101 +23,119 @@ import com.codahale.metrics.Metric;
 import com.codahale.metrics.MetricFilter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
+import org.commonjava.o11yphant.metrics.MetricIndex;
 import org.commonjava.o11yphant.metrics.conf.PrometheusConfig;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import java.util.Map;
 import java.util.SortedMap;
 import java.util.TreeMap;
 
+/**
+ * Exposes the metrics of the delegate registry that are expressed in the {@link PrometheusConfig}. The selection is
+ * made once per name, as metrics are added, into a {@link MetricIndex}; the getters return its live views without
+ * copying.
+ */
 public class PrometheusFilteringRegistry
         extends MetricRegistry
 {
-    private final Logger logger = LoggerFactory.getLogger( getClass() );
-
-    private final MetricRegistry delegate;
-
-    private final PrometheusConfig config;
+    private final MetricIndex index;
 
     public PrometheusFilteringRegistry( MetricRegistry delegate, PrometheusConfig config )
     {
-        this.delegate = delegate;
-        this.config = config;
+        this.index = MetricIndex.attach( delegate, config::isMetricExpressed );
+    }
+
+    public MetricIndex.View getView()
+    {
+        return index.getView();
     }
 
     @Override
     public SortedMap<String, Gauge> getGauges()
     {
-        return filter( delegate.getGauges() );
+        return index.getGauges();
+    }
+
+    @Override
+    public SortedMap<String, Gauge> getGauges( MetricFilter filter )
+    {
+        return filter( index.getGauges(), filter );
+    }
+
+    @Override
+    public SortedMap<String, Counter> getCounters()
+    {
+        return index.getCounters();
     }
 
     @Override
     public SortedMap<String, Counter> getCounters( MetricFilter filter )
     {
-        return filter( delegate.getCounters( filter ) );
+        return filter( index.getCounters(), filter );
     }
 
     @Override
     public SortedMap<String, Histogram> getHistograms()
     {
-        return filter( delegate.getHistograms() );
+        return index.getHistograms();
     }
 
     @Override
     public SortedMap<String, Histogram> getHistograms( MetricFilter filter )
     {
-        return filter( delegate.getHistograms( filter ) );
+        return filter( index.getHistograms(), filter );
     }
 
     @Override
     public SortedMap<String, Meter> getMeters()
     {
-        return filter( delegate.getMeters() );
+        return index.getMeters();
     }
 
     @Override
     public SortedMap<String, Meter> getMeters( MetricFilter filter )
     {
-        return filter( delegate.getMeters( filter ) );
+        return filter( index.getMeters(), filter );
     }
 
     @Override
     public SortedMap<String, Timer> getTimers()
     {
-        return filter( delegate.getTimers() );
+        return index.getTimers();
     }
 
     @Override
     public SortedMap<String, Timer> getTimers( MetricFilter filter )
     {
-        return filter( delegate.getTimers( filter ) );
+        return filter( index.getTimers(), filter );
     }
 
     @Override
     public Map<String, Metric> getMetrics()
     {
-        return filter( delegate.getMetrics() );
+        Map<String, Metric> result = new TreeMap<>();
+        result.putAll( index.getGauges() );
+        result.putAll( index.getCounters() );
+        result.putAll( index.getHistograms() );
+        result.putAll( index.getMeters() );
+        result.putAll( index.getTimers() );
+        return result;
     }
 
-    private <T extends Metric> SortedMap<String, T> filter( Map<String, T> input )
+    private <T extends Metric> SortedMap<String, T> filter( SortedMap<String, T> input, MetricFilter filter )
     {
-        TreeMap<String, T> result = new TreeMap<>();
+        if ( filter == MetricFilter.ALL )
+        {
+            return input;
+        }
 
-        StringBuilder sb = new StringBuilder( "Included in Prometheus metrics:\n" );
+        TreeMap<String, T> result = new TreeMap<>();
         input.forEach( ( k, v ) -> {
-            if ( logger.isTraceEnabled() )
-            {
-                sb.append( config.isMetricExpressed( k ) ? "\n+  " : "\n-  " ).append( k );
-            }
-
-            if ( config.isMetricExpressed( k ) )
+            if ( filter.matches( k, v ) )
             {
                 result.put( k, v );
             }
         } );
-
-        logger.trace( sb.toString() );
         return result;
     }
 }
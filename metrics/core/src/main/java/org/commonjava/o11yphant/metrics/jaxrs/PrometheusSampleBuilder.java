@@ -17,6 +17,7 @@ package org.commonjava.o11yphant.metrics.jaxrs;
 
 import io.prometheus.client.Collector;
 import io.prometheus.client.dropwizard.samplebuilder.DefaultSampleBuilder;
+import org.commonjava.o11yphant.metrics.api.MetricName;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -32,12 +33,18 @@ public class PrometheusSampleBuilder
 
     private final String nodeLabel;
 
+    private final String hostname = System.getenv( "HOSTNAME" );
+
     public PrometheusSampleBuilder( String nodeLabel )
     {
         super();
         this.nodeLabel = nodeLabel;
     }
 
+    /**
+     * Same as {@link DefaultSampleBuilder}, but the sanitized name comes from the interned {@link MetricName}. Suffixes
+     * are already valid Prometheus name characters, so sanitizing the name alone gives the same result.
+     */
     @Override
     public Collector.MetricFamilySamples.Sample createSample( final String dropwizardName, final String nameSuffix,
                                                               final List<String> additionalLabelNames,
@@ -53,13 +60,17 @@ public class PrometheusSampleBuilder
             labelValues.add( nodeLabel );
         }
 
-        String hostname = System.getenv( "HOSTNAME" );
         if ( isNotEmpty( hostname ) )
         {
             labelNames.add( LABEL_HOSTNAME );
             labelValues.add( hostname );
         }
 
-        return super.createSample( dropwizardName, nameSuffix, labelNames, labelValues, value );
+        String name = MetricName.of( dropwizardName ).getPrometheusName();
+        if ( isNotEmpty( nameSuffix ) )
+        {
+            name += nameSuffix;
+        }
+        return new Collector.MetricFamilySamples.Sample( name, labelNames, labelValues, value );
     }
 }
@@ -19,6 +19,7 @@ import com.codahale.metrics.ConsoleReporter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.graphite.Graphite;
 import com.codahale.metrics.graphite.GraphiteReporter;
+import org.commonjava.o11yphant.metrics.GenerationalMetricRegistry;
 import org.commonjava.o11yphant.metrics.conf.ConsoleConfig;
 import org.commonjava.o11yphant.metrics.conf.GraphiteConfig;
 import org.commonjava.o11yphant.metrics.conf.MetricsConfig;
@@ -109,7 +110,7 @@ public class ReporterInitializer
     {
         final Graphite graphite =
                 new Graphite( new InetSocketAddress( config.getGraphiteHostName(), config.getGraphitePort() ) );
-        final GraphiteReporter reporter = GraphiteReporter.forRegistry( metrics )
+        final GraphiteReporter reporter = graphiteReporterFor( metrics, "o11yphant-graphite-reporter" )
                                                           .prefixedWith( config.getGraphitePrefix() )
                                                           .convertRatesTo( TimeUnit.SECONDS )
                                                           .convertDurationsTo( TimeUnit.MILLISECONDS )
@@ -122,7 +123,7 @@ public class ReporterInitializer
     {
         final Graphite graphite =
                 new Graphite( new InetSocketAddress( config.getGraphiteHostName(), config.getGraphitePort() ) );
-        final GraphiteReporter reporter = GraphiteReporter.forRegistry( metrics )
+        final GraphiteReporter reporter = graphiteReporterFor( metrics, "o11yphant-graphite-jvm-reporter" )
                                                           .prefixedWith( config.getGraphitePrefix() )
                                                           .convertRatesTo( TimeUnit.SECONDS )
                                                           .convertDurationsTo( TimeUnit.MILLISECONDS )
@@ -131,4 +132,17 @@ public class ReporterInitializer
         reporter.start( config.getGraphiteJVMPeriodInSeconds(), TimeUnit.SECONDS );
     }
 
+    /**
+     * Reports from a generational registry are scheduled so that each one reads a single generation.
+     */
+    private GraphiteReporter.Builder graphiteReporterFor( MetricRegistry metrics, String threadName )
+    {
+        GraphiteReporter.Builder builder = GraphiteReporter.forRegistry( metrics );
+        if ( metrics instanceof GenerationalMetricRegistry )
+        {
+            builder.scheduleOn( ( (GenerationalMetricRegistry) metrics ).newReporterExecutor( threadName ) );
+        }
+        return builder;
+    }
+
 }
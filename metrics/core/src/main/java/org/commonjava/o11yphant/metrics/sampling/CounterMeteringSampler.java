@@ -0,0 +1,56 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.sampling;
+
+import javax.enterprise.context.ApplicationScoped;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.commonjava.o11yphant.metrics.conf.MetricsConfig.SAMPLER_COUNTER;
+
+/**
+ * Meters exactly every Nth request, using a single counter shared by all threads. Unlike the default
+ * {@link RandomMeteringSampler}, requests arriving in a fixed pattern can line up with the ratio, so this one has to
+ * be selected explicitly.
+ */
+@ApplicationScoped
+public class CounterMeteringSampler
+        implements MeteringSampler
+{
+    private final AtomicLong counter;
+
+    public CounterMeteringSampler()
+    {
+        this( 0 );
+    }
+
+    // for test
+    CounterMeteringSampler( long start )
+    {
+        this.counter = new AtomicLong( start );
+    }
+
+    @Override
+    public String getName()
+    {
+        return SAMPLER_COUNTER;
+    }
+
+    @Override
+    public boolean isMetered( int meterRatio )
+    {
+        return Math.floorMod( counter.getAndIncrement(), meterRatio ) == 0;
+    }
+}
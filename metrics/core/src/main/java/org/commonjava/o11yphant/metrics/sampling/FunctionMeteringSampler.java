@@ -0,0 +1,94 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.sampling;
+
+import org.commonjava.o11yphant.common.thread.ThreadContext;
+import org.commonjava.o11yphant.metrics.conf.MetricsConfig;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.commonjava.o11yphant.metrics.RequestContextKeys.GOLDEN_SIGNALS_FUNCTIONS_KEY;
+import static org.commonjava.o11yphant.metrics.conf.MetricsConfig.SAMPLER_FUNCTION;
+
+/**
+ * Meters with a per-function ratio, from {@link MetricsConfig#getFunctionMeterRatios()}, keyed by the golden-signal
+ * functions the request was classified into. When a request has several functions, the one metered most often wins.
+ * Requests with no configured function use the global ratio. Each function counts its own requests, so every Nth one
+ * is metered.
+ */
+@ApplicationScoped
+public class FunctionMeteringSampler
+        implements MeteringSampler
+{
+    @Inject
+    private MetricsConfig config;
+
+    private final Map<String, AtomicLong> counters = new ConcurrentHashMap<>();
+
+    private final AtomicLong defaultCounter = new AtomicLong();
+
+    public FunctionMeteringSampler()
+    {
+    }
+
+    public FunctionMeteringSampler( MetricsConfig config )
+    {
+        this.config = config;
+    }
+
+    @Override
+    public String getName()
+    {
+        return SAMPLER_FUNCTION;
+    }
+
+    @Override
+    public boolean isMetered( int meterRatio )
+    {
+        ThreadContext ctx = ThreadContext.getContext( false );
+        Collection<String> functions = ctx == null ? null : ctx.get( GOLDEN_SIGNALS_FUNCTIONS_KEY );
+        Map<String, Integer> ratios = config.getFunctionMeterRatios();
+
+        String selected = null;
+        int ratio = meterRatio;
+        if ( functions != null && ratios != null )
+        {
+            for ( String function : functions )
+            {
+                Integer r = ratios.get( function );
+                if ( r != null && ( selected == null || r < ratio ) )
+                {
+                    selected = function;
+                    ratio = r;
+                }
+            }
+        }
+
+        if ( ratio <= 1 )
+        {
+            return true;
+        }
+
+        AtomicLong counter =
+                selected == null ? defaultCounter : counters.computeIfAbsent( selected, f -> new AtomicLong() );
+        return Math.floorMod( counter.getAndIncrement(), ratio ) == 0;
+    }
+}
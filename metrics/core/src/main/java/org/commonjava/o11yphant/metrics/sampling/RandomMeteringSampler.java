@@ -0,0 +1,41 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.sampling;
+
+import javax.enterprise.context.ApplicationScoped;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.commonjava.o11yphant.metrics.conf.MetricsConfig.SAMPLER_RANDOM;
+
+/**
+ * Meters each request with a probability of 1 / ratio, drawn from the calling thread's own random generator.
+ */
+@ApplicationScoped
+public class RandomMeteringSampler
+        implements MeteringSampler
+{
+    @Override
+    public String getName()
+    {
+        return SAMPLER_RANDOM;
+    }
+
+    @Override
+    public boolean isMetered( int meterRatio )
+    {
+        return ThreadLocalRandom.current().nextInt( meterRatio ) == 0;
+    }
+}
@@ -0,0 +1,417 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.sketch;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * DDSketch-style quantile sketch: positive values are counted in logarithmically sized buckets, so any quantile is
+ * estimated within the relative accuracy, and two sketches with the same accuracy merge exactly by adding their
+ * buckets. This is what makes cluster-wide percentiles possible, unlike merging per-node quantiles. Values of zero
+ * and below are counted in a single zero bucket.
+ *
+ * Not thread-safe; concurrent recording goes through {@link SketchReservoir}.
+ */
+public final class QuantileSketch
+{
+    private static final byte VERSION = 1;
+
+    private final double relativeAccuracy;
+
+    private final double gamma;
+
+    private final double logGamma;
+
+    private long[] counts = new long[0];
+
+    private int offset;
+
+    private long zeroCount;
+
+    private long count;
+
+    private long min = Long.MAX_VALUE;
+
+    private long max = Long.MIN_VALUE;
+
+    private double sum;
+
+    public QuantileSketch( double relativeAccuracy )
+    {
+        if ( relativeAccuracy <= 0 || relativeAccuracy >= 1 )
+        {
+            throw new IllegalArgumentException( "Relative accuracy must be in (0, 1): " + relativeAccuracy );
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        this.gamma = ( 1 + relativeAccuracy ) / ( 1 - relativeAccuracy );
+        this.logGamma = Math.log( gamma );
+    }
+
+    /**
+     * Bucket holding the given positive value: bucket i covers (gamma^(i-1), gamma^i].
+     */
+    int indexOf( long value )
+    {
+        return (int) Math.ceil( Math.log( value ) / logGamma );
+    }
+
+    private double valueOf( int index )
+    {
+        return 2 * Math.pow( gamma, index ) / ( gamma + 1 );
+    }
+
+    public void add( long value )
+    {
+        add( value, 1 );
+    }
+
+    public void add( long value, long n )
+    {
+        if ( n <= 0 )
+        {
+            return;
+        }
+
+        count += n;
+        sum += (double) value * n;
+        min = Math.min( min, value );
+        max = Math.max( max, value );
+        if ( value <= 0 )
+        {
+            zeroCount += n;
+        }
+        else
+        {
+            addToBucket( indexOf( value ), n );
+        }
+    }
+
+    /**
+     * Add all values of the other sketch to this one. Both must have been created with the same relative accuracy.
+     */
+    public QuantileSketch merge( QuantileSketch other )
+    {
+        if ( other.gamma != gamma )
+        {
+            throw new IllegalArgumentException(
+                            "Cannot merge sketches with relative accuracy " + relativeAccuracy + " and "
+                                            + other.relativeAccuracy );
+        }
+        if ( other.count == 0 )
+        {
+            return this;
+        }
+
+        for ( int i = 0; i < other.counts.length; i++ )
+        {
+            if ( other.counts[i] > 0 )
+            {
+                addToBucket( other.offset + i, other.counts[i] );
+            }
+        }
+        zeroCount += other.zeroCount;
+        count += other.count;
+        sum += other.sum;
+        min = Math.min( min, other.min );
+        max = Math.max( max, other.max );
+        return this;
+    }
+
+    public QuantileSketch copy()
+    {
+        QuantileSketch copy = new QuantileSketch( relativeAccuracy );
+        return copy.merge( this );
+    }
+
+    public double getValueAtQuantile( double quantile )
+    {
+        if ( count == 0 )
+        {
+            return 0.0;
+        }
+
+        double rank = quantile * ( count - 1 );
+        long seen = zeroCount;
+        if ( rank < seen )
+        {
+            return Math.min( 0, max );
+        }
+        for ( int i = 0; i < counts.length; i++ )
+        {
+            seen += counts[i];
+            if ( rank < seen )
+            {
+                return Math.max( min, Math.min( max, valueOf( offset + i ) ) );
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Approximate standard deviation, taking each bucket's values to be its representative value.
+     */
+    public double getStdDev()
+    {
+        if ( count < 2 )
+        {
+            return 0.0;
+        }
+
+        double mean = getMean();
+        double squares = zeroCount * mean * mean;
+        for ( int i = 0; i < counts.length; i++ )
+        {
+            if ( counts[i] > 0 )
+            {
+                double diff = valueOf( offset + i ) - mean;
+                squares += counts[i] * diff * diff;
+            }
+        }
+        return Math.sqrt( squares / ( count - 1 ) );
+    }
+
+    public void forEachBucket( BucketConsumer consumer )
+    {
+        for ( int i = 0; i < counts.length; i++ )
+        {
+            if ( counts[i] > 0 )
+            {
+                consumer.accept( offset + i, counts[i] );
+            }
+        }
+    }
+
+    /**
+     * Representative value of each non-empty bucket, and zero if the zero bucket is used, in ascending order.
+     */
+    public long[] getBucketValues()
+    {
+        long[] values = new long[counts.length + 1];
+        int n = 0;
+        if ( zeroCount > 0 )
+        {
+            values[n++] = 0;
+        }
+        for ( int i = 0; i < counts.length; i++ )
+        {
+            if ( counts[i] > 0 )
+            {
+                values[n++] = Math.round( valueOf( offset + i ) );
+            }
+        }
+        return Arrays.copyOf( values, n );
+    }
+
+    public double getRelativeAccuracy()
+    {
+        return relativeAccuracy;
+    }
+
+    public long getCount()
+    {
+        return count;
+    }
+
+    public long getZeroCount()
+    {
+        return zeroCount;
+    }
+
+    public long getMin()
+    {
+        return count == 0 ? 0 : min;
+    }
+
+    public long getMax()
+    {
+        return count == 0 ? 0 : max;
+    }
+
+    public double getSum()
+    {
+        return sum;
+    }
+
+    public double getMean()
+    {
+        return count == 0 ? 0.0 : sum / count;
+    }
+
+    /**
+     * Compact binary form: accuracy, totals and the non-empty buckets as delta-encoded varints.
+     */
+    public byte[] toBytes()
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream( 64 + counts.length * 3 );
+        try (DataOutputStream out = new DataOutputStream( bytes ))
+        {
+            out.writeByte( VERSION );
+            out.writeDouble( relativeAccuracy );
+            writeVarLong( out, count );
+            writeVarLong( out, zeroCount );
+            out.writeLong( min );
+            out.writeLong( max );
+            out.writeDouble( sum );
+
+            int buckets = 0;
+            for ( long c : counts )
+            {
+                if ( c > 0 )
+                {
+                    buckets++;
+                }
+            }
+            writeVarLong( out, buckets );
+
+            int previous = 0;
+            for ( int i = 0; i < counts.length; i++ )
+            {
+                if ( counts[i] > 0 )
+                {
+                    int index = offset + i;
+                    int delta = index - previous;
+                    writeVarLong( out, ( delta << 1 ) ^ ( delta >> 31 ) );
+                    writeVarLong( out, counts[i] );
+                    previous = index;
+                }
+            }
+        }
+        catch ( IOException e )
+        {
+            throw new UncheckedIOException( e );
+        }
+        return bytes.toByteArray();
+    }
+
+    public static QuantileSketch fromBytes( byte[] data )
+    {
+        try (DataInputStream in = new DataInputStream( new ByteArrayInputStream( data ) ))
+        {
+            byte version = in.readByte();
+            if ( version != VERSION )
+            {
+                throw new IllegalArgumentException( "Unsupported sketch version: " + version );
+            }
+
+            QuantileSketch sketch = new QuantileSketch( in.readDouble() );
+            sketch.count = readVarLong( in );
+            sketch.zeroCount = readVarLong( in );
+            sketch.min = in.readLong();
+            sketch.max = in.readLong();
+            sketch.sum = in.readDouble();
+
+            long buckets = readVarLong( in );
+            int index = 0;
+            for ( long i = 0; i < buckets; i++ )
+            {
+                int zigzag = (int) readVarLong( in );
+                index += ( zigzag >>> 1 ) ^ -( zigzag & 1 );
+                sketch.addToBucket( index, readVarLong( in ) );
+            }
+            return sketch;
+        }
+        catch ( IOException e )
+        {
+            throw new IllegalArgumentException( "Malformed sketch", e );
+        }
+    }
+
+    /**
+     * Used by {@link SketchReservoir} to build a snapshot from its buckets, which start at index 0.
+     */
+    static QuantileSketch of( double relativeAccuracy, long[] counts, long zeroCount, long min, long max, double sum )
+    {
+        QuantileSketch sketch = new QuantileSketch( relativeAccuracy );
+        for ( int i = 0; i < counts.length; i++ )
+        {
+            if ( counts[i] > 0 )
+            {
+                sketch.addToBucket( i, counts[i] );
+                sketch.count += counts[i];
+            }
+        }
+        sketch.zeroCount = zeroCount;
+        sketch.count += zeroCount;
+        if ( sketch.count > 0 )
+        {
+            sketch.min = min;
+            sketch.max = max;
+            sketch.sum = sum;
+        }
+        return sketch;
+    }
+
+    private void addToBucket( int index, long n )
+    {
+        if ( counts.length == 0 )
+        {
+            counts = new long[8];
+            offset = index;
+        }
+        else if ( index < offset )
+        {
+            int grow = Math.max( offset - index, counts.length / 2 );
+            long[] grown = new long[counts.length + grow];
+            System.arraycopy( counts, 0, grown, grow, counts.length );
+            counts = grown;
+            offset -= grow;
+        }
+        else if ( index >= offset + counts.length )
+        {
+            counts = Arrays.copyOf( counts, Math.max( index - offset + 1, counts.length * 3 / 2 ) );
+        }
+        counts[index - offset] += n;
+    }
+
+    private static void writeVarLong( DataOutputStream out, long value )
+            throws IOException
+    {
+        while ( ( value & ~0x7FL ) != 0 )
+        {
+            out.writeByte( (int) ( ( value & 0x7F ) | 0x80 ) );
+            value >>>= 7;
+        }
+        out.writeByte( (int) value );
+    }
+
+    private static long readVarLong( DataInputStream in )
+            throws IOException
+    {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do
+        {
+            b = in.readByte();
+            value |= (long) ( b & 0x7F ) << shift;
+            shift += 7;
+        }
+        while ( ( b & 0x80 ) != 0 );
+        return value;
+    }
+
+    @FunctionalInterface
+    public interface BucketConsumer
+    {
+        void accept( int index, long count );
+    }
+}
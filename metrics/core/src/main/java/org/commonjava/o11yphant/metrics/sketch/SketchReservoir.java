@@ -0,0 +1,91 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.sketch;
+
+import com.codahale.metrics.Reservoir;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reservoir recording every value into a {@link QuantileSketch} layout, lock-free: each update increments one bucket
+ * counter. The buckets cover the whole positive long range, which at 1% accuracy is about 2200 counters. Values are
+ * kept for the lifetime of the metric, so an aggregator can merge the sketches of several nodes, or subtract two
+ * scrapes of the same node to get a window.
+ */
+public class SketchReservoir
+        implements Reservoir
+{
+    private final QuantileSketch layout;
+
+    private final AtomicLongArray buckets;
+
+    private final LongAdder zeroCount = new LongAdder();
+
+    private final DoubleAdder sum = new DoubleAdder();
+
+    private final LongAccumulator min = new LongAccumulator( Math::min, Long.MAX_VALUE );
+
+    private final LongAccumulator max = new LongAccumulator( Math::max, Long.MIN_VALUE );
+
+    public SketchReservoir( double relativeAccuracy )
+    {
+        this.layout = new QuantileSketch( relativeAccuracy );
+        this.buckets = new AtomicLongArray( layout.indexOf( Long.MAX_VALUE ) + 1 );
+    }
+
+    @Override
+    public int size()
+    {
+        long size = zeroCount.sum();
+        for ( int i = 0; i < buckets.length(); i++ )
+        {
+            size += buckets.get( i );
+        }
+        return (int) Math.min( size, Integer.MAX_VALUE );
+    }
+
+    @Override
+    public void update( long value )
+    {
+        if ( value <= 0 )
+        {
+            zeroCount.increment();
+        }
+        else
+        {
+            buckets.incrementAndGet( Math.min( layout.indexOf( value ), buckets.length() - 1 ) );
+        }
+        sum.add( value );
+        min.accumulate( value );
+        max.accumulate( value );
+    }
+
+    @Override
+    public SketchSnapshot getSnapshot()
+    {
+        long[] counts = new long[buckets.length()];
+        for ( int i = 0; i < counts.length; i++ )
+        {
+            counts[i] = buckets.get( i );
+        }
+        return new SketchSnapshot(
+                        QuantileSketch.of( layout.getRelativeAccuracy(), counts, zeroCount.sum(), min.get(), max.get(),
+                                           sum.sum() ) );
+    }
+}
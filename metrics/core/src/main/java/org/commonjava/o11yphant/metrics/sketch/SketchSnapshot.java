@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.sketch;
+
+import com.codahale.metrics.Snapshot;
+
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Snapshot over a {@link QuantileSketch}. Besides the usual statistics it hands out the sketch itself, so reporters
+ * can export the buckets and aggregators can merge snapshots of the same metric from different nodes.
+ */
+public class SketchSnapshot
+        extends Snapshot
+{
+    private final QuantileSketch sketch;
+
+    public SketchSnapshot( QuantileSketch sketch )
+    {
+        this.sketch = sketch;
+    }
+
+    public QuantileSketch getSketch()
+    {
+        return sketch;
+    }
+
+    public byte[] toBytes()
+    {
+        return sketch.toBytes();
+    }
+
+    public SketchSnapshot merge( SketchSnapshot other )
+    {
+        return new SketchSnapshot( sketch.copy().merge( other.sketch ) );
+    }
+
+    public static SketchSnapshot fromBytes( byte[] data )
+    {
+        return new SketchSnapshot( QuantileSketch.fromBytes( data ) );
+    }
+
+    @Override
+    public double getValue( double quantile )
+    {
+        if ( quantile < 0.0 || quantile > 1.0 || Double.isNaN( quantile ) )
+        {
+            throw new IllegalArgumentException( quantile + " is not in [0..1]" );
+        }
+        return sketch.getValueAtQuantile( quantile );
+    }
+
+    @Override
+    public long[] getValues()
+    {
+        return sketch.getBucketValues();
+    }
+
+    @Override
+    public int size()
+    {
+        return (int) Math.min( sketch.getCount(), Integer.MAX_VALUE );
+    }
+
+    @Override
+    public long getMax()
+    {
+        return sketch.getMax();
+    }
+
+    @Override
+    public double getMean()
+    {
+        return sketch.getMean();
+    }
+
+    @Override
+    public long getMin()
+    {
+        return sketch.getMin();
+    }
+
+    @Override
+    public double getStdDev()
+    {
+        return sketch.getStdDev();
+    }
+
+    @Override
+    public void dump( OutputStream output )
+    {
+        try (PrintWriter out = new PrintWriter( new OutputStreamWriter( output, UTF_8 ) ))
+        {
+            sketch.forEachBucket( ( index, count ) -> out.printf( "%d\t%d%n", index, count ) );
+        }
+    }
+}
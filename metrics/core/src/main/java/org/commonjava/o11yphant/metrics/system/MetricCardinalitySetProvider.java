@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.system;
+
+import org.commonjava.o11yphant.metrics.MetricCardinalityLimiter;
+import org.commonjava.o11yphant.metrics.MetricSetProvider;
+import org.commonjava.o11yphant.metrics.api.Gauge;
+import org.commonjava.o11yphant.metrics.api.Metric;
+import org.commonjava.o11yphant.metrics.api.MetricSet;
+import org.commonjava.o11yphant.metrics.conf.MetricsConfig;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.commonjava.o11yphant.metrics.util.NameUtils.name;
+
+/**
+ * Series count, limit and overflow count for each prefix limited by the {@link MetricCardinalityLimiter}.
+ */
+@ApplicationScoped
+public class MetricCardinalitySetProvider
+        implements MetricSetProvider
+{
+    @Inject
+    private MetricCardinalityLimiter limiter;
+
+    @Inject
+    private MetricsConfig metricsConfig;
+
+    private static final String CARDINALITY = "cardinality";
+
+    @Override
+    public MetricSet getMetricSet()
+    {
+        final Map<String, Metric> gauges = new HashMap<>();
+        limiter.getBuckets().forEach( bucket -> {
+            gauges.put( name( bucket.getPrefix(), "series" ), (Gauge<Integer>) bucket::getSeriesCount );
+            gauges.put( name( bucket.getPrefix(), "limit" ), (Gauge<Integer>) bucket::getLimit );
+            gauges.put( name( bucket.getPrefix(), "overflowed" ), (Gauge<Long>) bucket::getOverflowCount );
+        } );
+        return new MetricSet()
+        {
+            @Override
+            public Map<String, Metric> getMetrics()
+            {
+                return gauges;
+            }
+
+            @Override
+            public void reset()
+            {
+            }
+        };
+    }
+
+    @Override
+    public String getName()
+    {
+        return name( metricsConfig.getNodePrefix(), CARDINALITY );
+    }
+
+    @Override
+    public boolean isEnabled()
+    {
+        return limiter.isEnabled();
+    }
+
+    @Override
+    public void reset()
+    {
+    }
+
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.system;
+
+import org.commonjava.o11yphant.common.thread.ThreadContextTracker;
+import org.commonjava.o11yphant.metrics.MetricSetProvider;
+import org.commonjava.o11yphant.metrics.api.Gauge;
+import org.commonjava.o11yphant.metrics.api.Metric;
+import org.commonjava.o11yphant.metrics.api.MetricSet;
+import org.commonjava.o11yphant.metrics.conf.MetricsConfig;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.commonjava.o11yphant.metrics.util.NameUtils.name;
+
+/**
+ * Gauges over the live ThreadContext instances, see {@link ThreadContextTracker}. Only enabled when
+ * {@link MetricsConfig#isThreadContextTrackingEnabled()} is set. Reading the leaked gauge also logs any newly found
+ * leaked context, so leaks are reported at the reporter's schedule without a separate sweeper thread.
+ */
+@ApplicationScoped
+public class ThreadContextGaugesSetProvider
+        implements MetricSetProvider
+{
+    @Inject
+    private MetricsConfig metricsConfig;
+
+    private static final String THREAD_CONTEXT = "threadcontext";
+
+    @PostConstruct
+    public void init()
+    {
+        if ( isEnabled() )
+        {
+            ThreadContextTracker.enable( metricsConfig.isThreadContextCreationSiteCaptured() );
+        }
+    }
+
+    @Override
+    public MetricSet getMetricSet()
+    {
+        final long leakAge = metricsConfig.getThreadContextLeakAgeSeconds();
+
+        final Map<String, Metric> gauges = new HashMap<>();
+        gauges.put( "live", (Gauge<Integer>) ThreadContextTracker::getLiveCount );
+        gauges.put( "entries", (Gauge<Long>) ThreadContextTracker::getLiveEntries );
+        gauges.put( "oldest.age.ms", (Gauge<Long>) ThreadContextTracker::getOldestAgeMillis );
+        gauges.put( "leaked", (Gauge<Integer>) () -> ThreadContextTracker.checkForLeaks( leakAge, TimeUnit.SECONDS ) );
+        gauges.put( "collected.uncleared", (Gauge<Long>) ThreadContextTracker::getCollectedUnclearedCount );
+        return new MetricSet()
+        {
+            @Override
+            public Map<String, Metric> getMetrics()
+            {
+                return gauges;
+            }
+
+            @Override
+            public void reset()
+            {
+            }
+        };
+    }
+
+    @Override
+    public String getName()
+    {
+        return name( metricsConfig.getNodePrefix(), THREAD_CONTEXT );
+    }
+
+    @Override
+    public boolean isEnabled()
+    {
+        return metricsConfig.isThreadContextTrackingEnabled();
+    }
+
+    @Override
+    public void reset()
+    {
+    }
+
+}
@@ -15,19 +15,41 @@
  */
 package org.commonjava.o11yphant.metrics;
 
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistryListener;
 import com.codahale.metrics.health.HealthCheckRegistry;
+import org.commonjava.o11yphant.metrics.api.Counter;
 import org.commonjava.o11yphant.metrics.api.Gauge;
+import org.commonjava.o11yphant.metrics.api.Meter;
 import org.commonjava.o11yphant.metrics.api.Metric;
+import org.commonjava.o11yphant.metrics.api.MetricName;
+import org.commonjava.o11yphant.metrics.api.MetricSet;
+import org.commonjava.o11yphant.metrics.api.Timer;
+import org.commonjava.o11yphant.metrics.api.UpDownCounter;
+import org.commonjava.o11yphant.metrics.expiry.TouchClock;
 import org.commonjava.o11yphant.metrics.impl.O11Meter;
 import org.commonjava.o11yphant.metrics.impl.O11Timer;
 import org.commonjava.o11yphant.metrics.system.SystemGaugesSet;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
 
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertNotSame;
+import static junit.framework.TestCase.assertSame;
 import static junit.framework.TestCase.assertTrue;
+import static junit.framework.TestCase.fail;
 
 public class DefaultMetricRegistryTest
 {
@@ -87,4 +109,344 @@ public class DefaultMetricRegistryTest
         } );
     }
 
+    @Test
+    public void testCardinalityLimitRoutesToOverflow()
+    {
+        MetricCardinalityLimiter limiter =
+                new MetricCardinalityLimiter( Collections.singletonMap( "node.exception", 2 ) );
+        defaultMetricRegistry.setCardinalityLimiter( limiter );
+
+        defaultMetricRegistry.meter( "node.exception.A" ).mark();
+        defaultMetricRegistry.meter( "node.exception.B" ).mark();
+        defaultMetricRegistry.meter( "node.exception.C" ).mark();
+        defaultMetricRegistry.meter( "node.exception.D" ).mark();
+        defaultMetricRegistry.meter( "node.exception.A" ).mark();
+        defaultMetricRegistry.meter( "node.other" ).mark();
+
+        Set<String> names = defaultMetricRegistry.getRegistry().getNames();
+        assertTrue( names.contains( "node.exception.A" ) );
+        assertTrue( names.contains( "node.exception.B" ) );
+        assertFalse( names.contains( "node.exception.C" ) );
+        assertTrue( names.contains( "node.other" ) );
+        assertEquals( 2, defaultMetricRegistry.getRegistry()
+                                              .meter( "node.exception._overflow.meter" )
+                                              .getCount() );
+        assertEquals( 2, limiter.getBuckets().get( 0 ).getSeriesCount() );
+
+        defaultMetricRegistry.clear();
+        assertEquals( 0, limiter.getBuckets().get( 0 ).getSeriesCount() );
+    }
+
+    @Test
+    public void testProviderMetricsTakeNoCardinalitySlotsAfterRegeneration()
+    {
+        GenerationalMetricRegistry generational = new GenerationalMetricRegistry();
+        DefaultMetricRegistry registry = new DefaultMetricRegistry( generational, new HealthCheckRegistry() );
+        MetricCardinalityLimiter limiter = new MetricCardinalityLimiter( Collections.singletonMap( "node.pool", 1 ) );
+        registry.setCardinalityLimiter( limiter );
+        MetricCardinalityLimiter.Bucket bucket = limiter.getBuckets().get( 0 );
+
+        MetricSetProvider provider = new MetricSetProvider()
+        {
+            @Override
+            public MetricSet getMetricSet()
+            {
+                return new MetricSet()
+                {
+                    @Override
+                    public Map<String, Metric> getMetrics()
+                    {
+                        Map<String, Metric> metrics = new HashMap<>();
+                        metrics.put( "active", (Gauge<Integer>) () -> 1 );
+                        metrics.put( "idle", (Gauge<Integer>) () -> 2 );
+                        metrics.put( "waiting", (Gauge<Integer>) () -> 0 );
+                        return metrics;
+                    }
+
+                    @Override
+                    public void reset()
+                    {
+                    }
+                };
+            }
+
+            @Override
+            public String getName()
+            {
+                return "node.pool";
+            }
+
+            @Override
+            public void reset()
+            {
+            }
+        };
+
+        registry.register( provider.getName(), provider.getMetricSet() );
+        assertEquals( 0, bucket.getSeriesCount() );
+
+        registry.regenerate( next -> next.register( provider.getName(), provider.getMetricSet() ) );
+        assertEquals( 3, generational.getGauges().size() );
+        assertEquals( 0, bucket.getSeriesCount() );
+        assertEquals( 0, bucket.getOverflowCount() );
+
+        registry.meter( "node.pool.requests" );
+        assertTrue( generational.getNames().contains( "node.pool.requests" ) );
+    }
+
+    @Test
+    public void testCardinalitySlotsFollowRemovalAndRegeneration()
+    {
+        GenerationalMetricRegistry generational = new GenerationalMetricRegistry();
+        DefaultMetricRegistry registry = new DefaultMetricRegistry( generational, new HealthCheckRegistry() );
+        MetricCardinalityLimiter limiter =
+                new MetricCardinalityLimiter( Collections.singletonMap( "node.exception", 2 ) );
+        registry.setCardinalityLimiter( limiter );
+        MetricCardinalityLimiter.Bucket bucket = limiter.getBuckets().get( 0 );
+
+        registry.meter( "node.exception.A" );
+        registry.meter( "node.exception.B" );
+        registry.meter( "node.exception.C" );
+        assertEquals( 2, bucket.getSeriesCount() );
+
+        generational.remove( "node.exception.A" );
+        assertEquals( 1, bucket.getSeriesCount() );
+        generational.removeMatching( ( name, metric ) -> name.endsWith( ".B" ) );
+        assertEquals( 0, bucket.getSeriesCount() );
+
+        registry.regenerate( next -> {
+            next.meter( "node.exception.X" );
+            next.meter( "node.exception._overflow.meter" );
+            next.meter( "node.other" );
+        } );
+        assertEquals( 1, bucket.getSeriesCount() );
+
+        registry.meter( "node.exception.Y" );
+        registry.meter( "node.exception.Z" );
+        assertEquals( 2, bucket.getSeriesCount() );
+        assertFalse( generational.getNames().contains( "node.exception.Z" ) );
+    }
+
+    @Test
+    public void testNativeMetricsExportedThroughCodahale()
+    {
+        Meter meter = defaultMetricRegistry.meter( THE_METER );
+        assertSame( meter, defaultMetricRegistry.meter( THE_METER ) );
+        meter.mark( 3 );
+        defaultMetricRegistry.timer( THE_TIMER ).update( 2, TimeUnit.MILLISECONDS );
+
+        com.codahale.metrics.MetricRegistry codahale = defaultMetricRegistry.getRegistry();
+        assertEquals( 3, codahale.meter( THE_METER ).getCount() );
+        assertEquals( 1, codahale.timer( THE_TIMER ).getCount() );
+        assertEquals( TimeUnit.MILLISECONDS.toNanos( 2 ), codahale.timer( THE_TIMER ).getSnapshot().getMax() );
+
+        codahale.timer( THE_TIMER ).update( 1, TimeUnit.MILLISECONDS );
+        assertEquals( 2, defaultMetricRegistry.timer( THE_TIMER ).getCount() );
+    }
+
+    @Test
+    public void testStartAndStopNanosRecordIntoTimer()
+    {
+        Timer timer = defaultMetricRegistry.timer( THE_TIMER );
+        long start = timer.startNanos();
+        long elapsed = timer.stop( start );
+        timer.recordNanos( 5 );
+
+        assertEquals( 2, timer.getCount() );
+        com.codahale.metrics.Timer exported = defaultMetricRegistry.getRegistry().timer( THE_TIMER );
+        assertEquals( Math.max( elapsed, 5 ), exported.getSnapshot().getMax() );
+    }
+
+    @Test
+    public void testCountersAreStripedAndExported()
+    {
+        Counter requests = defaultMetricRegistry.counter( "requests" );
+        assertSame( requests, defaultMetricRegistry.counter( "requests" ) );
+        requests.inc( 2 );
+
+        UpDownCounter inFlight = defaultMetricRegistry.upDownCounter( "inFlight" );
+        inFlight.inc();
+        inFlight.inc();
+        inFlight.dec();
+
+        com.codahale.metrics.MetricRegistry codahale = defaultMetricRegistry.getRegistry();
+        assertEquals( 2, codahale.counter( "requests" ).getCount() );
+        assertEquals( 1, codahale.counter( "inFlight" ).getCount() );
+
+        TouchClock.tick();
+        Collection<String> expired = defaultMetricRegistry.expireIdle( -1 );
+        assertTrue( expired.contains( "requests" ) );
+        assertFalse( expired.contains( "inFlight" ) );
+    }
+
+    @Test
+    public void testCounterKindsCannotShareAName()
+    {
+        defaultMetricRegistry.counter( "requests" );
+        defaultMetricRegistry.upDownCounter( "inFlight" );
+
+        try
+        {
+            defaultMetricRegistry.upDownCounter( "requests" );
+            fail( "monotonic counter reused as an up-down counter" );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            assertTrue( e.getMessage().contains( "requests" ) );
+        }
+
+        try
+        {
+            defaultMetricRegistry.counter( "inFlight" );
+            fail( "up-down counter reused as a monotonic counter" );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            assertTrue( e.getMessage().contains( "inFlight" ) );
+        }
+    }
+
+    @Test
+    public void testExpireIdleKeepsTouchedAndPinned()
+            throws InterruptedException
+    {
+        defaultMetricRegistry.register( THE_METER, new O11Meter() );
+        defaultMetricRegistry.meter( "idle" ).mark();
+        defaultMetricRegistry.timer( "pinned" );
+        defaultMetricRegistry.pin( "pinned" );
+        Meter busy = defaultMetricRegistry.meter( "busy" );
+
+        Thread.sleep( 10 );
+        TouchClock.tick();
+        busy.mark();
+
+        Collection<String> expired = defaultMetricRegistry.expireIdle( 5 );
+        assertEquals( Collections.singletonList( "idle" ), expired );
+
+        Set<String> names = defaultMetricRegistry.getRegistry().getNames();
+        assertFalse( names.contains( "idle" ) );
+        assertTrue( names.contains( "busy" ) );
+        assertTrue( names.contains( "pinned" ) );
+        assertTrue( names.contains( THE_METER ) );
+    }
+
+    @Test
+    public void testRegenerateSwapsWholeGeneration()
+    {
+        GenerationalMetricRegistry generational = new GenerationalMetricRegistry();
+        DefaultMetricRegistry registry = new DefaultMetricRegistry( generational, new HealthCheckRegistry() );
+        registry.meter( "request" ).mark();
+        registry.register( THE_GAUGE, (Gauge<Long>) () -> 0L );
+
+        List<String> events = new ArrayList<>();
+        generational.addListener( new MetricRegistryListener.Base()
+        {
+            @Override
+            public void onMeterAdded( String name, com.codahale.metrics.Meter meter )
+            {
+                events.add( "+" + name );
+            }
+
+            @Override
+            public void onMeterRemoved( String name )
+            {
+                events.add( "-" + name );
+            }
+        } );
+        events.clear();
+
+        registry.regenerate( next -> {
+            next.register( THE_GAUGE, (Gauge<Long>) () -> 1L );
+            next.meter( "fresh" );
+            // not visible until the swap
+            assertTrue( generational.getNames().contains( "request" ) );
+            assertFalse( generational.getNames().contains( "fresh" ) );
+        } );
+
+        assertEquals( 1, generational.getGeneration() );
+        assertEquals( Arrays.asList( "fresh", THE_GAUGE ), new ArrayList<>( generational.getNames() ) );
+        assertEquals( 1, registry.getMetrics().size() );
+        assertEquals( Arrays.asList( "-request", "+fresh" ), events );
+    }
+
+    @Test
+    public void testRemovedMetricNamesAreEvicted()
+    {
+        defaultMetricRegistry.meter( "evicted" );
+        defaultMetricRegistry.meter( "kept" );
+        MetricName evicted = MetricName.of( "evicted" );
+        MetricName kept = MetricName.of( "kept" );
+
+        defaultMetricRegistry.getRegistry().remove( "evicted" );
+        assertNotSame( evicted, MetricName.of( "evicted" ) );
+        assertEquals( evicted, MetricName.of( "evicted" ) );
+        assertSame( kept, MetricName.of( "kept" ) );
+    }
+
+    @Test
+    public void testRegenerateReplacesPins()
+    {
+        GenerationalMetricRegistry generational = new GenerationalMetricRegistry();
+        DefaultMetricRegistry registry = new DefaultMetricRegistry( generational, new HealthCheckRegistry() );
+        registry.meter( "dropped" );
+        registry.pin( "dropped" );
+        registry.meter( "kept" );
+        registry.pin( "kept" );
+
+        registry.regenerate( next -> {
+            next.meter( "dropped" );
+            next.meter( "kept" );
+            ( (DefaultMetricRegistry) next ).pin( "kept" );
+        } );
+
+        TouchClock.tick();
+        assertEquals( Collections.singletonList( "dropped" ), registry.expireIdle( -1 ) );
+    }
+
+    @Test
+    public void testIndexViewsFollowRegistry()
+    {
+        GenerationalMetricRegistry generational = new GenerationalMetricRegistry();
+        DefaultMetricRegistry registry = new DefaultMetricRegistry( generational, new HealthCheckRegistry() );
+        registry.meter( "node.a.x" );
+        MetricIndex index = registry.getIndex();
+        registry.meter( "node.a.y" );
+        registry.meter( "node.ab" );
+        registry.timer( "node.a.t" );
+
+        MetricIndex.View view = index.getView();
+        assertEquals( Arrays.asList( "node.a.x", "node.a.y" ), new ArrayList<>( view.getMeters( "node.a" ).keySet() ) );
+        assertEquals( 1, view.getTimers( "node.a" ).size() );
+
+        generational.remove( "node.a.x" );
+        assertEquals( 2, view.getMeters().size() );
+
+        registry.regenerate( next -> next.meter( "node.b.z" ) );
+        assertEquals( 2, view.getMeters().size() );
+        assertEquals( Collections.singletonList( "node.b.z" ), new ArrayList<>( index.getMeters().keySet() ) );
+        assertEquals( 1, index.size() );
+    }
+
+    @Test
+    public void testGenerationalGettersAreServedFromIndex()
+    {
+        GenerationalMetricRegistry generational = new GenerationalMetricRegistry();
+        DefaultMetricRegistry registry = new DefaultMetricRegistry( generational, new HealthCheckRegistry() );
+        registry.meter( "node.a" );
+        registry.timer( "node.t" );
+        assertSame( generational.getIndex(), registry.getIndex() );
+
+        SortedMap<String, com.codahale.metrics.Meter> meters = generational.getMeters( MetricFilter.ALL );
+        assertEquals( Collections.singletonList( "node.a" ), new ArrayList<>( meters.keySet() ) );
+        registry.meter( "node.b" );
+        assertEquals( 2, meters.size() );
+
+        assertEquals( Collections.singleton( "node.b" ),
+                      generational.getMeters( ( name, metric ) -> name.endsWith( "b" ) ).keySet() );
+        assertEquals( Collections.singleton( "node.t" ), generational.getTimers().keySet() );
+
+        registry.regenerate( next -> next.meter( "node.c" ) );
+        assertEquals( Collections.singleton( "node.c" ), generational.getMeters( MetricFilter.ALL ).keySet() );
+        assertTrue( generational.getTimers().isEmpty() );
+    }
 }
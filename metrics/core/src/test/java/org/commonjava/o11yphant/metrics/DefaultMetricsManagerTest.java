@@ -0,0 +1,154 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics;
+
+import com.codahale.metrics.health.HealthCheckRegistry;
+import org.commonjava.o11yphant.common.thread.ThreadContext;
+import org.commonjava.o11yphant.metrics.conf.DefaultMetricsConfig;
+import org.commonjava.o11yphant.metrics.expiry.TouchClock;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertNotSame;
+import static junit.framework.TestCase.assertSame;
+import static junit.framework.TestCase.assertTrue;
+import static org.commonjava.o11yphant.metrics.MetricsConstants.CUMULATIVE_COUNT;
+import static org.commonjava.o11yphant.metrics.MetricsConstants.CUMULATIVE_TIMINGS;
+
+public class DefaultMetricsManagerTest
+{
+    private static final int HANDLE_CACHE_SIZE = 2;
+
+    private static DefaultMetricsManager newManager( com.codahale.metrics.MetricRegistry codahale )
+    {
+        DefaultMetricRegistry registry = new DefaultMetricRegistry( codahale, new HealthCheckRegistry() );
+        return new DefaultMetricsManager( registry, new DefaultMetricsConfig()
+        {
+            @Override
+            public String getNodePrefix()
+            {
+                return "node";
+            }
+
+            @Override
+            public int getMetricHandleCacheSize()
+            {
+                return HANDLE_CACHE_SIZE;
+            }
+        } );
+    }
+
+    @After
+    public void tearDown()
+    {
+        ThreadContext.clearContext();
+    }
+
+    @Test
+    @SuppressWarnings( "unchecked" )
+    public void testCumulativeTimingsAreReadableByTheirOldNames()
+    {
+        DefaultMetricsManager manager = new DefaultMetricsManager();
+        ThreadContext ctx = ThreadContext.getContext( true );
+        assertFalse( ctx.containsKey( CUMULATIVE_TIMINGS ) );
+
+        manager.accumulate( "read", 2.5 );
+        manager.accumulate( "read", 1.5 );
+        manager.accumulate( "write", 3.0 );
+
+        assertTrue( ctx.containsKey( CUMULATIVE_TIMINGS ) );
+        Map<String, Double> timings = (Map<String, Double>) ctx.get( CUMULATIVE_TIMINGS );
+        assertEquals( 4.0, timings.get( "read" ) );
+        assertEquals( 3.0, timings.get( "write" ) );
+
+        Map<String, Integer> counts = (Map<String, Integer>) ctx.get( CUMULATIVE_COUNT );
+        assertEquals( Integer.valueOf( 2 ), counts.get( "read" ) );
+        assertEquals( Integer.valueOf( 1 ), counts.get( "write" ) );
+    }
+
+    @Test
+    public void testNestedTimersWithTheSameNameAreStoppedInnermostFirst()
+    {
+        com.codahale.metrics.MetricRegistry codahale = new com.codahale.metrics.MetricRegistry();
+        DefaultMetricsManager manager = newManager( codahale );
+
+        manager.startTimer( "node.call.timer" );
+        manager.startTimer( "node.call.timer" );
+        manager.startTimer( "node.other.timer" );
+
+        assertEquals( 3, ThreadContext.getContext( false ).get( RequestContextKeys.TIMER_STACK_KEY ).size() );
+        assertTrue( manager.stopTimerUnwrapped( "node.call.timer" ) >= 0 );
+        assertEquals( 1, codahale.timer( "node.call.timer" ).getCount() );
+        assertEquals( 0, codahale.timer( "node.other.timer" ).getCount() );
+
+        manager.stopTimer( "node.call.timer" );
+        manager.stopTimerUnwrapped( "node.other.timer" );
+        assertEquals( 2, codahale.timer( "node.call.timer" ).getCount() );
+        assertEquals( 1, codahale.timer( "node.other.timer" ).getCount() );
+
+        // nothing left running under the name
+        assertEquals( 0, manager.stopTimerUnwrapped( "node.call.timer" ) );
+        assertEquals( 2, codahale.timer( "node.call.timer" ).getCount() );
+    }
+
+    @Test
+    public void testHandlesAreReusedUpToCacheSize()
+    {
+        DefaultMetricsManager manager = newManager( new com.codahale.metrics.MetricRegistry() );
+        StandardMetricHandles a = manager.getHandles( "a" );
+        assertSame( a, manager.getHandles( "a" ) );
+        assertSame( manager.getHandles( "b" ), manager.getHandles( "b" ) );
+        assertEquals( "node.a", a.metricName );
+
+        // beyond the cache size, handles are resolved on every call but still point at the same metrics
+        StandardMetricHandles c = manager.getHandles( "c" );
+        StandardMetricHandles again = manager.getHandles( "c" );
+        assertNotSame( c, again );
+        assertSame( c.calls, again.calls );
+        assertSame( c.timer, again.timer );
+        assertSame( a, manager.getHandles( "a" ) );
+    }
+
+    @Test
+    public void testHandlesAreDroppedOnReset()
+    {
+        DefaultMetricsManager manager = newManager( new GenerationalMetricRegistry() );
+        StandardMetricHandles before = manager.getHandles( "a" );
+
+        manager.reset();
+        StandardMetricHandles after = manager.getHandles( "a" );
+        assertNotSame( before, after );
+        assertNotSame( before.calls, after.calls );
+        assertSame( after, manager.getHandles( "a" ) );
+    }
+
+    @Test
+    public void testHandlesAreDroppedWhenTheirMetricsExpire()
+    {
+        DefaultMetricsManager manager = newManager( new com.codahale.metrics.MetricRegistry() );
+        StandardMetricHandles before = manager.getHandles( "a" );
+
+        TouchClock.tick();
+        ( (DefaultMetricRegistry) manager.getMetricRegistry() ).expireIdle( -1 );
+        StandardMetricHandles after = manager.getHandles( "a" );
+        assertNotSame( before, after );
+        assertNotSame( before.calls, after.calls );
+    }
+}
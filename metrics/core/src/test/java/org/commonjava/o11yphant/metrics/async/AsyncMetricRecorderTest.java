@@ -0,0 +1,223 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.async;
+
+import org.commonjava.o11yphant.metrics.api.Meter;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AsyncMetricRecorderTest
+{
+    private final AsyncMetricRecorder recorder = new AsyncMetricRecorder();
+
+    private final CountDownLatch aggregatorBlocked = new CountDownLatch( 1 );
+
+    private final CountDownLatch release = new CountDownLatch( 1 );
+
+    @After
+    public void tearDown()
+    {
+        release.countDown();
+        recorder.stop();
+    }
+
+    @Test
+    public void dropsWhenFull()
+            throws Exception
+    {
+        recorder.start( 4, true );
+        TestMeter meter = fillRing();
+        int capacity = recorder.getQueueCapacity();
+
+        recorder.mark( meter );
+        assertEquals( 1, recorder.getDroppedCount() );
+        assertEquals( 0, meter.getCount() );
+
+        release.countDown();
+        recorder.stop();
+        assertEquals( capacity, meter.getCount() );
+    }
+
+    @Test
+    public void appliesInlineWhenFull()
+            throws Exception
+    {
+        recorder.start( 4, false );
+        TestMeter meter = fillRing();
+        int capacity = recorder.getQueueCapacity();
+
+        recorder.mark( meter );
+        assertEquals( 0, recorder.getDroppedCount() );
+        assertEquals( 1, meter.getCount() );
+        assertEquals( Thread.currentThread().getName(), meter.lastThread );
+
+        release.countDown();
+        recorder.stop();
+        assertEquals( capacity + 1, meter.getCount() );
+    }
+
+    @Test
+    public void stopAppliesEverythingPublished()
+            throws Exception
+    {
+        recorder.start( 1024, true );
+        TestMeter meter = fillRing();
+        int capacity = recorder.getQueueCapacity();
+        assertEquals( capacity, recorder.getQueueDepth() );
+
+        release.countDown();
+        recorder.stop();
+        assertFalse( recorder.isEnabled() );
+        assertEquals( capacity, meter.getCount() );
+
+        // after stop() updates are applied inline
+        recorder.mark( meter );
+        assertEquals( capacity + 1, meter.getCount() );
+    }
+
+    @Test
+    public void updatesRacingWithStopAreNotLost()
+            throws Exception
+    {
+        final int producers = 4;
+        final int perProducer = 50000;
+        recorder.start( 256, false );
+        TestMeter meter = new TestMeter();
+        CountDownLatch started = new CountDownLatch( producers );
+        Thread[] threads = new Thread[producers];
+        for ( int p = 0; p < producers; p++ )
+        {
+            threads[p] = new Thread( () -> {
+                started.countDown();
+                for ( int i = 0; i < perProducer; i++ )
+                {
+                    recorder.mark( meter );
+                }
+            } );
+            threads[p].start();
+        }
+
+        started.await();
+        recorder.stop();
+        for ( Thread thread : threads )
+        {
+            thread.join( TimeUnit.SECONDS.toMillis( 30 ) );
+        }
+
+        assertEquals( (long) producers * perProducer, meter.getCount() );
+    }
+
+    /**
+     * Block the aggregator on its first event, then publish until the ring is full.
+     * @return the meter the queued events are for
+     */
+    private TestMeter fillRing()
+            throws InterruptedException
+    {
+        AtomicBoolean first = new AtomicBoolean( true );
+        TestMeter blocker = new TestMeter()
+        {
+            @Override
+            public void mark( long n )
+            {
+                if ( first.getAndSet( false ) )
+                {
+                    aggregatorBlocked.countDown();
+                    try
+                    {
+                        release.await();
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        };
+
+        recorder.mark( blocker );
+        assertTrue( aggregatorBlocked.await( 5, TimeUnit.SECONDS ) );
+
+        TestMeter meter = new TestMeter();
+        for ( int i = 0; i < recorder.getQueueCapacity(); i++ )
+        {
+            recorder.mark( meter );
+        }
+        assertEquals( 0, meter.getCount() );
+        assertEquals( 0, recorder.getDroppedCount() );
+        return meter;
+    }
+
+    private static class TestMeter
+            implements Meter
+    {
+        private final LongAdder count = new LongAdder();
+
+        private volatile String lastThread;
+
+        @Override
+        public void mark()
+        {
+            mark( 1 );
+        }
+
+        @Override
+        public void mark( long n )
+        {
+            count.add( n );
+            lastThread = Thread.currentThread().getName();
+        }
+
+        @Override
+        public long getCount()
+        {
+            return count.sum();
+        }
+
+        @Override
+        public double getMeanRate()
+        {
+            return 0;
+        }
+
+        @Override
+        public double getOneMinuteRate()
+        {
+            return 0;
+        }
+
+        @Override
+        public double getFiveMinuteRate()
+        {
+            return 0;
+        }
+
+        @Override
+        public double getFifteenMinuteRate()
+        {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.async;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MetricEventRingTest
+{
+    @Test
+    public void rejectsWhenFull()
+    {
+        MetricEventRing ring = new MetricEventRing( 4 );
+        for ( int i = 0; i < 4; i++ )
+        {
+            assertTrue( ring.offer( this, (byte) 0, i ) );
+        }
+        assertFalse( ring.offer( this, (byte) 0, 4 ) );
+        assertEquals( 4, ring.size() );
+
+        assertEquals( 4, ring.drain( ( t, k, v ) -> {}, 10 ) );
+        assertTrue( ring.offer( this, (byte) 0, 5 ) );
+    }
+
+    @Test
+    public void deliversEveryEventFromConcurrentProducers()
+            throws Exception
+    {
+        final int producers = 8;
+        final int perProducer = 20000;
+        MetricEventRing ring = new MetricEventRing( 1024 );
+        AtomicLong sum = new AtomicLong();
+        AtomicLong count = new AtomicLong();
+        CountDownLatch done = new CountDownLatch( producers );
+
+        for ( int p = 0; p < producers; p++ )
+        {
+            new Thread( () -> {
+                for ( int i = 1; i <= perProducer; i++ )
+                {
+                    while ( !ring.offer( this, (byte) 0, i ) )
+                    {
+                        Thread.yield();
+                    }
+                }
+                done.countDown();
+            } ).start();
+        }
+
+        long expected = (long) producers * perProducer;
+        while ( count.get() < expected )
+        {
+            ring.drain( ( t, k, v ) -> {
+                sum.addAndGet( v );
+                count.incrementAndGet();
+            }, 256 );
+        }
+        done.await();
+
+        assertEquals( expected, count.get() );
+        assertEquals( producers * ( (long) perProducer * ( perProducer + 1 ) / 2 ), sum.get() );
+        assertEquals( 0, ring.size() );
+    }
+}
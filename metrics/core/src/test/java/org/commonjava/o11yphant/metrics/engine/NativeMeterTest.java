@@ -0,0 +1,67 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.engine;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static junit.framework.TestCase.assertEquals;
+
+public class NativeMeterTest
+{
+    private static final double RATE = 10;
+
+    @Test
+    public void testSteadyRateDoesNotDependOnReadInterval()
+    {
+        AtomicLong clock = new AtomicLong( 1_000 );
+        NativeMeter slowlyRead = new NativeMeter( clock::get );
+        NativeMeter oftenRead = new NativeMeter( clock::get );
+        NativeMeter readByTwo = new NativeMeter( clock::get );
+
+        for ( int second = 1; second <= 30 * 60; second++ )
+        {
+            clock.addAndGet( TimeUnit.SECONDS.toNanos( 1 ) );
+            slowlyRead.mark( (long) RATE );
+            oftenRead.mark( (long) RATE );
+            readByTwo.mark( (long) RATE );
+
+            if ( second % 60 == 0 )
+            {
+                slowlyRead.getOneMinuteRate();
+                readByTwo.getOneMinuteRate();
+            }
+            if ( second % 15 == 0 )
+            {
+                oftenRead.getOneMinuteRate();
+            }
+            if ( second % 7 == 0 )
+            {
+                readByTwo.getFiveMinuteRate();
+            }
+        }
+
+        for ( NativeMeter meter : new NativeMeter[] { slowlyRead, oftenRead, readByTwo } )
+        {
+            assertEquals( RATE, meter.getOneMinuteRate(), RATE * 0.02 );
+            assertEquals( RATE, meter.getFiveMinuteRate(), RATE * 0.02 );
+            assertEquals( RATE, meter.getFifteenMinuteRate(), RATE * 0.02 );
+            assertEquals( RATE, meter.getMeanRate(), RATE * 0.02 );
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.hdr;
+
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.health.HealthCheckRegistry;
+import org.commonjava.o11yphant.metrics.DefaultMetricRegistry;
+import org.commonjava.o11yphant.metrics.MetricIndex;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertTrue;
+
+public class HdrHistogramReservoirTest
+{
+    @Test
+    public void testHighPercentilesAreExactWithinPrecision()
+    {
+        HdrHistogramReservoir reservoir = new HdrHistogramReservoir( 3, 60, TimeUnit.SECONDS );
+        for ( long i = 1; i <= 100_000; i++ )
+        {
+            reservoir.update( i );
+        }
+        reservoir.update( -1 );
+
+        Snapshot snapshot = reservoir.getSnapshot();
+        assertEquals( 100_000, snapshot.size() );
+        assertEquals( 99_900, snapshot.getValue( 0.999 ), 100 );
+        assertEquals( 1, snapshot.getMin() );
+        assertEquals( 100_000, snapshot.getMax(), 100 );
+        assertEquals( 50_000, snapshot.getMean(), 50 );
+
+        // values stay in the window across snapshots
+        assertEquals( 100_000, reservoir.getSnapshot().size() );
+    }
+
+    @Test
+    public void testSelectedByNamePattern()
+    {
+        DefaultMetricRegistry registry =
+                new DefaultMetricRegistry( new com.codahale.metrics.MetricRegistry(), new HealthCheckRegistry() );
+        registry.setReservoirSelector(
+                        new ReservoirSelector( Collections.singletonList( ".*\\.transfer\\..*" ), 2, 60 ) );
+
+        registry.timer( "node.transfer.download" ).update( 5, TimeUnit.MILLISECONDS );
+        registry.histogram( "node.other" ).update( 5 );
+
+        MetricIndex.View view = registry.getIndex().getView();
+        assertTrue( view.getTimers().get( "node.transfer.download" ).getSnapshot() instanceof HdrSnapshot );
+        assertFalse( view.getHistograms().get( "node.other" ).getSnapshot() instanceof HdrSnapshot );
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.jaxrs;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import io.prometheus.client.Collector.MetricFamilySamples;
+import org.commonjava.o11yphant.metrics.conf.PrometheusConfig;
+import org.commonjava.o11yphant.metrics.sketch.SketchReservoir;
+import org.junit.Test;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertTrue;
+
+public class PromEnhancedStatsAndTimingExportsTest
+{
+    @Test
+    public void testSketchBucketsAreOptIn()
+    {
+        Histogram histogram = new Histogram( new SketchReservoir( 0.01 ) );
+        for ( int i = 1; i <= 100; i++ )
+        {
+            histogram.update( i * 1000 );
+        }
+
+        PrometheusConfig config = new PrometheusConfig();
+        assertEquals( 0, sketchSamples( config, histogram ) );
+
+        config.setSketchBucketsExported( true );
+        assertTrue( sketchSamples( config, histogram ) > 2 );
+    }
+
+    private static long sketchSamples( PrometheusConfig config, Histogram histogram )
+    {
+        MetricFamilySamples family = new PromEnhancedStatsAndTimingExports( new MetricRegistry(), config )
+                        .fromHistogram( "node.sketched", histogram );
+        return family.samples.stream().filter( s -> s.name.contains( "_sketch_" ) ).count();
+    }
+}
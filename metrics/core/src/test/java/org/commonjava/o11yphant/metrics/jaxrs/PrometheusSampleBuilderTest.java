@@ -0,0 +1,46 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.jaxrs;
+
+import io.prometheus.client.dropwizard.samplebuilder.DefaultSampleBuilder;
+import org.commonjava.o11yphant.metrics.api.MetricName;
+import org.junit.Test;
+
+import static java.util.Collections.emptyList;
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertSame;
+
+public class PrometheusSampleBuilderTest
+{
+    @Test
+    public void testNamesMatchDefaultSampleBuilder()
+    {
+        PrometheusSampleBuilder builder = new PrometheusSampleBuilder( null );
+        DefaultSampleBuilder reference = new DefaultSampleBuilder();
+        String[] names = { "node.ContentController.getContent.timer", "9lives.a-b c:d", "", "x" };
+        for ( String name : names )
+        {
+            for ( String suffix : new String[] { null, "", "_total", "_raw_mean" } )
+            {
+                assertEquals( reference.createSample( name, suffix, emptyList(), emptyList(), 1 ).name,
+                              builder.createSample( name, suffix, emptyList(), emptyList(), 1 ).name );
+            }
+        }
+
+        assertSame( MetricName.of( "node.a.b" ), MetricName.of( "node", "a", "b" ) );
+        assertEquals( "node_a_b", MetricName.of( "node.a.b" ).getPrometheusName() );
+    }
+}
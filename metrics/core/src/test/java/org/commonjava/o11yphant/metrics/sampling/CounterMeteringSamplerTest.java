@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.sampling;
+
+import org.junit.Test;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertTrue;
+
+public class CounterMeteringSamplerTest
+{
+    @Test
+    public void testMetersEveryNthRequest()
+    {
+        CounterMeteringSampler sampler = new CounterMeteringSampler();
+        for ( int i = 0; i < 12; i++ )
+        {
+            assertEquals( "request " + i, i % 4 == 0, sampler.isMetered( 4 ) );
+        }
+    }
+
+    @Test
+    public void testKeepsMeteringWhenTheCounterWrapsAround()
+    {
+        // 2^63 is a multiple of 4, so the ratio carries straight across the wrap into negative counter values
+        CounterMeteringSampler sampler = new CounterMeteringSampler( Long.MAX_VALUE - 7 );
+        int metered = 0;
+        for ( int i = 0; i < 16; i++ )
+        {
+            boolean m = sampler.isMetered( 4 );
+            assertEquals( "request " + i, i % 4 == 0, m );
+            if ( m )
+            {
+                metered++;
+            }
+        }
+        assertEquals( 4, metered );
+
+        // for ratios that don't divide 2^64 the phase shifts once at the wrap, but requests are still metered
+        sampler = new CounterMeteringSampler( Long.MAX_VALUE - 2 );
+        metered = 0;
+        for ( int i = 0; i < 30; i++ )
+        {
+            if ( sampler.isMetered( 3 ) )
+            {
+                metered++;
+            }
+        }
+        assertTrue( "metered: " + metered, metered >= 9 && metered <= 11 );
+    }
+
+    @Test
+    public void testNeverMetersTwiceInARowAcrossTheWrap()
+    {
+        CounterMeteringSampler sampler = new CounterMeteringSampler( Long.MAX_VALUE - 50 );
+        boolean last = false;
+        for ( int i = 0; i < 100; i++ )
+        {
+            boolean m = sampler.isMetered( 5 );
+            assertFalse( "request " + i, last && m );
+            last = m;
+        }
+    }
+}
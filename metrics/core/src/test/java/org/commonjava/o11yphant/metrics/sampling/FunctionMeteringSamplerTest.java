@@ -0,0 +1,120 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.sampling;
+
+import org.commonjava.o11yphant.common.thread.ThreadContext;
+import org.commonjava.o11yphant.metrics.conf.DefaultMetricsConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static junit.framework.TestCase.assertEquals;
+import static org.commonjava.o11yphant.metrics.RequestContextKeys.GOLDEN_SIGNALS_FUNCTIONS_KEY;
+
+public class FunctionMeteringSamplerTest
+{
+    private static final int GLOBAL_RATIO = 3;
+
+    private FunctionMeteringSampler sampler;
+
+    @Before
+    public void setUp()
+    {
+        Map<String, Integer> ratios = new HashMap<>();
+        ratios.put( "read", 2 );
+        ratios.put( "write", 5 );
+        ratios.put( "health", 1 );
+
+        sampler = new FunctionMeteringSampler( new DefaultMetricsConfig()
+        {
+            @Override
+            public Map<String, Integer> getFunctionMeterRatios()
+            {
+                return ratios;
+            }
+        } );
+    }
+
+    @After
+    public void tearDown()
+    {
+        ThreadContext.clearContext();
+    }
+
+    @Test
+    public void testUsesTheRatioOfTheRequestFunction()
+    {
+        assertEquals( 2, metered( 10, "write" ) );
+        assertEquals( 5, metered( 10, "read" ) );
+    }
+
+    @Test
+    public void testMostOftenMeteredFunctionWins()
+    {
+        // read (1 in 2) beats write (1 in 5), whatever the order the functions were recorded in
+        assertEquals( 5, metered( 10, "write", "read" ) );
+        assertEquals( 5, metered( 10, "read", "write" ) );
+
+        // a ratio of 1 meters everything
+        assertEquals( 10, metered( 10, "write", "health" ) );
+    }
+
+    @Test
+    public void testFunctionsCountTheirRequestsSeparately()
+    {
+        int read = 0;
+        int write = 0;
+        for ( int i = 0; i < 10; i++ )
+        {
+            read += metered( 1, "read" );
+            write += metered( 1, "write" );
+        }
+
+        assertEquals( 5, read );
+        assertEquals( 2, write );
+    }
+
+    @Test
+    public void testUnconfiguredFunctionsUseTheGlobalRatio()
+    {
+        assertEquals( 3, metered( 9, "list" ) );
+
+        ThreadContext.clearContext();
+        int metered = 0;
+        for ( int i = 0; i < 9; i++ )
+        {
+            metered += sampler.isMetered( GLOBAL_RATIO ) ? 1 : 0;
+        }
+        // shares the default counter with the unconfigured function above
+        assertEquals( 3, metered );
+    }
+
+    private int metered( int requests, String... functions )
+    {
+        ThreadContext.getContext( true ).put( GOLDEN_SIGNALS_FUNCTIONS_KEY, Arrays.asList( functions ) );
+
+        int metered = 0;
+        for ( int i = 0; i < requests; i++ )
+        {
+            metered += sampler.isMetered( GLOBAL_RATIO ) ? 1 : 0;
+        }
+        return metered;
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.sketch;
+
+import org.junit.Test;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertTrue;
+
+public class QuantileSketchTest
+{
+    @Test
+    public void testMergedNodesMatchSingleDistribution()
+    {
+        SketchReservoir nodeA = new SketchReservoir( 0.01 );
+        SketchReservoir nodeB = new SketchReservoir( 0.01 );
+        for ( long i = 1; i <= 100_000; i++ )
+        {
+            ( i % 2 == 0 ? nodeA : nodeB ).update( i );
+        }
+        nodeB.update( 0 );
+
+        SketchSnapshot merged = SketchSnapshot.fromBytes( nodeA.getSnapshot().toBytes() )
+                                              .merge( SketchSnapshot.fromBytes( nodeB.getSnapshot().toBytes() ) );
+
+        assertEquals( 100_001, merged.size() );
+        assertEquals( 99_000, merged.getValue( 0.99 ), 99_000 * 0.01 );
+        assertEquals( 50_000, merged.getMedian(), 50_000 * 0.01 );
+        assertEquals( 0, merged.getMin() );
+        assertEquals( 100_000, merged.getMax() );
+        assertEquals( 50_000, merged.getMean(), 1 );
+    }
+
+    @Test
+    public void testSerializedFormIsCompact()
+    {
+        QuantileSketch sketch = new QuantileSketch( 0.01 );
+        for ( long i = 1; i <= 1_000_000; i += 7 )
+        {
+            sketch.add( i * 1000 );
+        }
+
+        byte[] bytes = sketch.toBytes();
+        assertTrue( "sketch took " + bytes.length + " bytes", bytes.length < 2048 );
+
+        QuantileSketch copy = QuantileSketch.fromBytes( bytes );
+        assertEquals( sketch.getCount(), copy.getCount() );
+        assertEquals( sketch.getValueAtQuantile( 0.999 ), copy.getValueAtQuantile( 0.999 ) );
+    }
+}
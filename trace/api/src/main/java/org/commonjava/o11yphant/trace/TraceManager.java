@@ -15,6 +15,8 @@
  */
 package org.commonjava.o11yphant.trace;
 
+import org.commonjava.o11yphant.common.thread.ContextCarrier;
+import org.commonjava.o11yphant.common.thread.ContextCarriers;
 import org.commonjava.o11yphant.metrics.api.Metric;
 import org.commonjava.o11yphant.trace.impl.FieldInjectionSpan;
 import org.commonjava.o11yphant.trace.impl.SpanWrapper;
@@ -24,6 +26,8 @@ import org.commonjava.o11yphant.trace.spi.O11yphantTracePlugin;
 import org.commonjava.o11yphant.trace.spi.SpanProvider;
 import org.commonjava.o11yphant.trace.spi.adapter.SpanAdapter;
 import org.commonjava.o11yphant.trace.spi.adapter.SpanContext;
+import org.commonjava.o11yphant.trace.thread.ContextPropagatingExecutorService;
+import org.commonjava.o11yphant.trace.thread.ContextPropagatingScheduledExecutorService;
 import org.commonjava.o11yphant.trace.thread.ThreadedTraceContext;
 import org.commonjava.o11yphant.trace.thread.TraceThreadContextualizer;
 import org.slf4j.Logger;
@@ -32,7 +36,10 @@ import org.slf4j.LoggerFactory;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Queue;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.function.BiConsumer;
 import java.util.function.Supplier;
 
@@ -44,7 +51,7 @@ import static org.commonjava.o11yphant.metrics.util.NameUtils.name;
 
 public final class TraceManager
 {
-    private static final ThreadLocal<Queue<SpanAdapter>> ACTIVE_SPAN = new ThreadLocal<>();
+    private static final ContextCarrier<Queue<SpanAdapter>> ACTIVE_SPAN = ContextCarriers.create( "active-span" );
 
     //    private static final String ACTIVE_SPAN_KEY = "active-trace-span";
 
@@ -289,6 +296,15 @@ public final class TraceManager
         ACTIVE_SPAN.remove();
     }
 
+    /**
+     * Run the task with its own set of active spans, starting empty, and put the calling thread's set back afterwards.
+     */
+    public static <T> T callWithThreadSpans( Callable<T> task )
+            throws Exception
+    {
+        return ACTIVE_SPAN.callWith( null, task );
+    }
+
     public static Optional<SpanAdapter> getActiveSpan()
     {
         if ( ACTIVE_SPAN.get() == null )
@@ -329,6 +345,20 @@ public final class TraceManager
         return traceThreadContextualizer;
     }
 
+    /**
+     * Wrap a thread pool so each task runs with the submitting thread's ThreadContext, MDC and (when tracing is enabled)
+     * trace context.
+     */
+    public ExecutorService wrap( ExecutorService executor )
+    {
+        return new ContextPropagatingExecutorService( executor, traceThreadContextualizer );
+    }
+
+    public ScheduledExecutorService wrap( ScheduledExecutorService executor )
+    {
+        return new ContextPropagatingScheduledExecutorService( executor, traceThreadContextualizer );
+    }
+
     public static void addCloseBlockingDecorator( Optional<SpanAdapter> span, CloseBlockingDecorator injector )
     {
         Logger logger = LoggerFactory.getLogger( TraceManager.class );
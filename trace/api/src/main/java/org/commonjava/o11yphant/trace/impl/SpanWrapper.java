@@ -57,6 +57,11 @@ public abstract class SpanWrapper
         return delegate.isLocalRoot();
     }
 
+    public boolean isSampled()
+    {
+        return delegate.isSampled();
+    }
+
     public String getTraceId()
     {
         return delegate.getTraceId();
@@ -32,6 +32,14 @@ public interface SpanAdapter
 
     boolean isLocalRoot();
 
+    /**
+     * @return whether the tracer decided to record and export this span
+     */
+    default boolean isSampled()
+    {
+        return true;
+    }
+
     String getTraceId();
 
     String getSpanId();
@@ -0,0 +1,294 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.trace.thread;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * {@link ExecutorService} wrapper that captures the submitting thread's {@link ContextSnapshot} once per task and
+ * reinstates it in the worker thread. Works for any delegate, including a {@link java.util.concurrent.ForkJoinPool}.
+ *
+ * Every queued task holds a reference on the submitter's {@link org.commonjava.o11yphant.common.thread.ThreadContext}
+ * until it has run. Tasks that will not run give theirs back: rejected ones straight away, cancelled futures when
+ * cancelled, tasks left over by {@link #invokeAny(Collection)} or a timed
+ * {@link #invokeAll(Collection, long, TimeUnit)} when the call returns, and queued tasks on {@link #shutdownNow()}.
+ */
+public class ContextPropagatingExecutorService
+        implements ExecutorService
+{
+    private final ExecutorService delegate;
+
+    protected final TraceThreadContextualizer contextualizer;
+
+    private final Set<ContextSnapshot> pending = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param contextualizer used to propagate the trace context; may be null to propagate only ThreadContext / MDC.
+     */
+    public ContextPropagatingExecutorService( ExecutorService delegate, TraceThreadContextualizer contextualizer )
+    {
+        this.delegate = delegate;
+        this.contextualizer = contextualizer;
+    }
+
+    /**
+     * @return the calling thread's context, tracked until its task has run or it is discarded; null if there is none.
+     */
+    protected ContextSnapshot capture()
+    {
+        ContextSnapshot snapshot = ContextSnapshot.capture( contextualizer );
+        if ( snapshot != null )
+        {
+            pending.add( snapshot );
+        }
+        return snapshot;
+    }
+
+    protected void discard( ContextSnapshot snapshot )
+    {
+        snapshot.discard();
+        pending.remove( snapshot );
+    }
+
+    protected Runnable wrap( ContextSnapshot snapshot, Runnable task )
+    {
+        return () -> {
+            try
+            {
+                snapshot.run( task );
+            }
+            finally
+            {
+                pending.remove( snapshot );
+            }
+        };
+    }
+
+    protected <T> Callable<T> wrap( ContextSnapshot snapshot, Callable<T> task )
+    {
+        return () -> {
+            try
+            {
+                return snapshot.call( task );
+            }
+            finally
+            {
+                pending.remove( snapshot );
+            }
+        };
+    }
+
+    private <T> Future<T> submitTask( Callable<T> task )
+    {
+        ContextSnapshot snapshot = capture();
+        FutureTask<T> future;
+        if ( snapshot == null )
+        {
+            future = new FutureTask<>( task );
+        }
+        else
+        {
+            future = new FutureTask<T>( wrap( snapshot, task ) )
+            {
+                @Override
+                protected void done()
+                {
+                    // no-op once the task has started; gives the context back if it was cancelled before that
+                    discard( snapshot );
+                }
+            };
+        }
+
+        try
+        {
+            delegate.execute( future );
+        }
+        catch ( RuntimeException | Error e )
+        {
+            future.cancel( false );
+            throw e;
+        }
+        return future;
+    }
+
+    private <T> List<Callable<T>> wrapAll( Collection<? extends Callable<T>> tasks, List<ContextSnapshot> snapshots )
+    {
+        List<Callable<T>> wrapped = new ArrayList<>( tasks.size() );
+        for ( Callable<T> task : tasks )
+        {
+            ContextSnapshot snapshot = capture();
+            if ( snapshot == null )
+            {
+                wrapped.add( task );
+            }
+            else
+            {
+                snapshots.add( snapshot );
+                wrapped.add( wrap( snapshot, task ) );
+            }
+        }
+        return wrapped;
+    }
+
+    @Override
+    public void execute( Runnable command )
+    {
+        ContextSnapshot snapshot = capture();
+        if ( snapshot == null )
+        {
+            delegate.execute( command );
+            return;
+        }
+
+        try
+        {
+            delegate.execute( wrap( snapshot, command ) );
+        }
+        catch ( RuntimeException | Error e )
+        {
+            discard( snapshot );
+            throw e;
+        }
+    }
+
+    @Override
+    public Future<?> submit( Runnable task )
+    {
+        return submitTask( Executors.callable( task ) );
+    }
+
+    @Override
+    public <T> Future<T> submit( Runnable task, T result )
+    {
+        return submitTask( Executors.callable( task, result ) );
+    }
+
+    @Override
+    public <T> Future<T> submit( Callable<T> task )
+    {
+        return submitTask( task );
+    }
+
+    @Override
+    public <T> List<Future<T>> invokeAll( Collection<? extends Callable<T>> tasks )
+            throws InterruptedException
+    {
+        List<ContextSnapshot> snapshots = new ArrayList<>();
+        try
+        {
+            return delegate.invokeAll( wrapAll( tasks, snapshots ) );
+        }
+        finally
+        {
+            snapshots.forEach( this::discard );
+        }
+    }
+
+    @Override
+    public <T> List<Future<T>> invokeAll( Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit )
+            throws InterruptedException
+    {
+        List<ContextSnapshot> snapshots = new ArrayList<>();
+        try
+        {
+            return delegate.invokeAll( wrapAll( tasks, snapshots ), timeout, unit );
+        }
+        finally
+        {
+            snapshots.forEach( this::discard );
+        }
+    }
+
+    @Override
+    public <T> T invokeAny( Collection<? extends Callable<T>> tasks )
+            throws InterruptedException, ExecutionException
+    {
+        List<ContextSnapshot> snapshots = new ArrayList<>();
+        try
+        {
+            return delegate.invokeAny( wrapAll( tasks, snapshots ) );
+        }
+        finally
+        {
+            snapshots.forEach( this::discard );
+        }
+    }
+
+    @Override
+    public <T> T invokeAny( Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit )
+            throws InterruptedException, ExecutionException, TimeoutException
+    {
+        List<ContextSnapshot> snapshots = new ArrayList<>();
+        try
+        {
+            return delegate.invokeAny( wrapAll( tasks, snapshots ), timeout, unit );
+        }
+        finally
+        {
+            snapshots.forEach( this::discard );
+        }
+    }
+
+    @Override
+    public void shutdown()
+    {
+        delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow()
+    {
+        List<Runnable> dropped = delegate.shutdownNow();
+        pending.forEach( this::discard );
+        return dropped;
+    }
+
+    @Override
+    public boolean isShutdown()
+    {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated()
+    {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination( long timeout, TimeUnit unit )
+            throws InterruptedException
+    {
+        return delegate.awaitTermination( timeout, unit );
+    }
+
+    public ExecutorService getDelegate()
+    {
+        return delegate;
+    }
+}
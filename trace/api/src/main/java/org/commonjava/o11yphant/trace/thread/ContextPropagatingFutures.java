@@ -0,0 +1,91 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.trace.thread;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+/**
+ * Context-propagating counterparts of the {@link CompletableFuture} async factory methods. Dependent stages created
+ * with the *Async methods should be given an executor from {@link #wrap(Executor, TraceThreadContextualizer)} so they
+ * see the context as well. The context is given back if a future is cancelled before its task starts.
+ */
+public final class ContextPropagatingFutures
+{
+    private ContextPropagatingFutures()
+    {
+    }
+
+    public static Executor wrap( Executor executor, TraceThreadContextualizer contextualizer )
+    {
+        return command -> ContextSnapshot.execute( executor, command, contextualizer );
+    }
+
+    public static <T> CompletableFuture<T> supplyAsync( Supplier<T> supplier,
+                                                        TraceThreadContextualizer contextualizer )
+    {
+        return supplyAsync( supplier, ForkJoinPool.commonPool(), contextualizer );
+    }
+
+    public static <T> CompletableFuture<T> supplyAsync( Supplier<T> supplier, Executor executor,
+                                                        TraceThreadContextualizer contextualizer )
+    {
+        ContextSnapshot snapshot = ContextSnapshot.capture( contextualizer );
+        if ( snapshot == null )
+        {
+            return CompletableFuture.supplyAsync( supplier, executor );
+        }
+
+        try
+        {
+            return snapshot.discardOnCompletion(
+                            CompletableFuture.supplyAsync( () -> snapshot.supply( supplier ), executor ) );
+        }
+        catch ( RuntimeException | Error e )
+        {
+            snapshot.discard();
+            throw e;
+        }
+    }
+
+    public static CompletableFuture<Void> runAsync( Runnable runnable, TraceThreadContextualizer contextualizer )
+    {
+        return runAsync( runnable, ForkJoinPool.commonPool(), contextualizer );
+    }
+
+    public static CompletableFuture<Void> runAsync( Runnable runnable, Executor executor,
+                                                    TraceThreadContextualizer contextualizer )
+    {
+        ContextSnapshot snapshot = ContextSnapshot.capture( contextualizer );
+        if ( snapshot == null )
+        {
+            return CompletableFuture.runAsync( runnable, executor );
+        }
+
+        try
+        {
+            return snapshot.discardOnCompletion(
+                            CompletableFuture.runAsync( () -> snapshot.run( runnable ), executor ) );
+        }
+        catch ( RuntimeException | Error e )
+        {
+            snapshot.discard();
+            throw e;
+        }
+    }
+}
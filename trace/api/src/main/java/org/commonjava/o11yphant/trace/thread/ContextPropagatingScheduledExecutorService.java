@@ -0,0 +1,167 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.trace.thread;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * {@link ScheduledExecutorService} variant of {@link ContextPropagatingExecutorService}. One-shot delayed tasks get the
+ * scheduling thread's context.
+ *
+ * Periodic tasks ({@link #scheduleAtFixedRate(Runnable, long, long, TimeUnit)} and
+ * {@link #scheduleWithFixedDelay(Runnable, long, long, TimeUnit)}) are passed through without any context: they
+ * outlive the request that scheduled them, and holding its context would keep it from ever being finalized.
+ */
+public class ContextPropagatingScheduledExecutorService
+        extends ContextPropagatingExecutorService
+        implements ScheduledExecutorService
+{
+    private final ScheduledExecutorService delegate;
+
+    public ContextPropagatingScheduledExecutorService( ScheduledExecutorService delegate,
+                                                       TraceThreadContextualizer contextualizer )
+    {
+        super( delegate, contextualizer );
+        this.delegate = delegate;
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule( Runnable command, long delay, TimeUnit unit )
+    {
+        ContextSnapshot snapshot = capture();
+        if ( snapshot == null )
+        {
+            return delegate.schedule( command, delay, unit );
+        }
+
+        try
+        {
+            return new SnapshotScheduledFuture<>( delegate.schedule( wrap( snapshot, command ), delay, unit ),
+                                                  snapshot );
+        }
+        catch ( RuntimeException | Error e )
+        {
+            discard( snapshot );
+            throw e;
+        }
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule( Callable<V> callable, long delay, TimeUnit unit )
+    {
+        ContextSnapshot snapshot = capture();
+        if ( snapshot == null )
+        {
+            return delegate.schedule( callable, delay, unit );
+        }
+
+        try
+        {
+            return new SnapshotScheduledFuture<>( delegate.schedule( wrap( snapshot, callable ), delay, unit ),
+                                                  snapshot );
+        }
+        catch ( RuntimeException | Error e )
+        {
+            discard( snapshot );
+            throw e;
+        }
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate( Runnable command, long initialDelay, long period, TimeUnit unit )
+    {
+        return delegate.scheduleAtFixedRate( command, initialDelay, period, unit );
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay( Runnable command, long initialDelay, long delay,
+                                                      TimeUnit unit )
+    {
+        return delegate.scheduleWithFixedDelay( command, initialDelay, delay, unit );
+    }
+
+    /**
+     * Gives the task's context back when it is cancelled before it ran.
+     */
+    private final class SnapshotScheduledFuture<V>
+            implements ScheduledFuture<V>
+    {
+        private final ScheduledFuture<V> future;
+
+        private final ContextSnapshot snapshot;
+
+        private SnapshotScheduledFuture( ScheduledFuture<V> future, ContextSnapshot snapshot )
+        {
+            this.future = future;
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public boolean cancel( boolean mayInterruptIfRunning )
+        {
+            boolean cancelled = future.cancel( mayInterruptIfRunning );
+            if ( cancelled )
+            {
+                discard( snapshot );
+            }
+            return cancelled;
+        }
+
+        @Override
+        public long getDelay( TimeUnit unit )
+        {
+            return future.getDelay( unit );
+        }
+
+        @Override
+        public int compareTo( Delayed o )
+        {
+            return future.compareTo( o );
+        }
+
+        @Override
+        public boolean isCancelled()
+        {
+            return future.isCancelled();
+        }
+
+        @Override
+        public boolean isDone()
+        {
+            return future.isDone();
+        }
+
+        @Override
+        public V get()
+                throws InterruptedException, ExecutionException
+        {
+            return future.get();
+        }
+
+        @Override
+        public V get( long timeout, TimeUnit unit )
+                throws InterruptedException, ExecutionException, TimeoutException
+        {
+            return future.get( timeout, unit );
+        }
+    }
+}
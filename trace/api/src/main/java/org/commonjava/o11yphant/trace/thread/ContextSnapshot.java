@@ -0,0 +1,254 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.trace.thread;
+
+import org.commonjava.o11yphant.common.thread.ThreadContext;
+import org.slf4j.MDC;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.function.Supplier;
+
+/**
+ * The {@link ThreadContext}, MDC and trace context of a thread at the moment a task is handed off, so it can be
+ * reinstated in the thread that eventually runs the task and torn down afterwards.
+ *
+ * A snapshot holds a reference on the captured {@link ThreadContext} (see {@link ThreadContext#retain()}), so the
+ * submitting thread may clear its context before the task starts without the context being finalized under it. The
+ * reference is given back after the task has run, or by {@link #discard()} if the task will never run (rejected or
+ * cancelled). Each snapshot is therefore good for one run of one task; running it again, or after it was discarded,
+ * runs the task without any propagated context.
+ */
+public final class ContextSnapshot
+{
+    private static final int PENDING = 0;
+
+    private static final int CLAIMED = 1;
+
+    private static final AtomicIntegerFieldUpdater<ContextSnapshot> STATE =
+            AtomicIntegerFieldUpdater.newUpdater( ContextSnapshot.class, "state" );
+
+    private final Thread origin;
+
+    private final ThreadContext threadContext;
+
+    private final Map<String, String> mdc;
+
+    private final Object traceContext;
+
+    private final TraceThreadContextualizer contextualizer;
+
+    private volatile int state = PENDING;
+
+    private ContextSnapshot( ThreadContext threadContext, Map<String, String> mdc, Object traceContext,
+                             TraceThreadContextualizer contextualizer )
+    {
+        this.origin = Thread.currentThread();
+        this.threadContext = threadContext;
+        this.mdc = mdc;
+        this.traceContext = traceContext;
+        this.contextualizer = contextualizer;
+    }
+
+    /**
+     * Capture the calling thread's context.
+     *
+     * @param contextualizer used to capture the trace context; may be null. When tracing is disabled it captures
+     * nothing.
+     * @return null if there is nothing to propagate.
+     */
+    public static ContextSnapshot capture( TraceThreadContextualizer contextualizer )
+    {
+        Object traceContext = contextualizer == null ? null : contextualizer.extractCurrentContext();
+        ThreadContext threadContext = ThreadContext.getContext( false );
+
+        // getContext() has just captured the MDC into the ThreadContext without copying it
+        Map<String, String> mdc = threadContext == null ? MDC.getCopyOfContextMap() : threadContext.getMdcMap();
+        if ( threadContext == null && mdc == null && traceContext == null )
+        {
+            return null;
+        }
+
+        return new ContextSnapshot( threadContext == null ? null : threadContext.retain(), mdc, traceContext,
+                                    contextualizer );
+    }
+
+    /**
+     * Like {@link #capture(TraceThreadContextualizer)}, but the task gets a {@link ThreadContext#fork() fork} of the
+     * calling thread's context, so parallel tasks accumulate their timings privately and merge them into the caller's
+     * context when they finish.
+     */
+    public static ContextSnapshot captureForked( TraceThreadContextualizer contextualizer )
+    {
+        ThreadContext threadContext = ThreadContext.getContext( false );
+        if ( threadContext == null )
+        {
+            return capture( contextualizer );
+        }
+
+        Object traceContext = contextualizer == null ? null : contextualizer.extractCurrentContext();
+        ThreadContext child = threadContext.fork().retain();
+        return new ContextSnapshot( child, child.getMdcMap(), traceContext, contextualizer );
+    }
+
+    public static Runnable wrap( Runnable task, TraceThreadContextualizer contextualizer )
+    {
+        ContextSnapshot snapshot = capture( contextualizer );
+        return snapshot == null ? task : () -> snapshot.run( task );
+    }
+
+    public static <T> Callable<T> wrap( Callable<T> task, TraceThreadContextualizer contextualizer )
+    {
+        ContextSnapshot snapshot = capture( contextualizer );
+        return snapshot == null ? task : () -> snapshot.call( task );
+    }
+
+    /**
+     * Hand the task to the executor with the calling thread's context, giving the context back if the executor
+     * rejects it.
+     */
+    public static void execute( Executor executor, Runnable task, TraceThreadContextualizer contextualizer )
+    {
+        ContextSnapshot snapshot = capture( contextualizer );
+        if ( snapshot == null )
+        {
+            executor.execute( task );
+            return;
+        }
+
+        try
+        {
+            executor.execute( () -> snapshot.run( task ) );
+        }
+        catch ( RuntimeException | Error e )
+        {
+            snapshot.discard();
+            throw e;
+        }
+    }
+
+    /**
+     * Give back the context reference of a task that will not run, e.g. because it was rejected or cancelled. Does
+     * nothing once the task has started.
+     */
+    public void discard()
+    {
+        if ( STATE.compareAndSet( this, PENDING, CLAIMED ) && threadContext != null )
+        {
+            threadContext.release();
+        }
+    }
+
+    /**
+     * Release the reference once the future completes without the task having started, as happens when it is
+     * cancelled before an executor thread picks it up.
+     */
+    <T> CompletableFuture<T> discardOnCompletion( CompletableFuture<T> future )
+    {
+        future.whenComplete( ( r, t ) -> discard() );
+        return future;
+    }
+
+    public void run( Runnable task )
+    {
+        supply( () -> {
+            task.run();
+            return null;
+        } );
+    }
+
+    public <T> T supply( Supplier<T> task )
+    {
+        try
+        {
+            return call( task::get );
+        }
+        catch ( RuntimeException | Error e )
+        {
+            throw e;
+        }
+        catch ( Exception e )
+        {
+            // neither Runnable nor Supplier can throw checked exceptions
+            throw new IllegalStateException( e );
+        }
+    }
+
+    public <T> T call( Callable<T> task )
+            throws Exception
+    {
+        if ( !STATE.compareAndSet( this, PENDING, CLAIMED ) )
+        {
+            // discarded (e.g. by shutdownNow() racing with a worker that had already taken the task) or reused
+            return task.call();
+        }
+
+        try
+        {
+            // The task runs inline (caller-runs policy, direct executor, etc.) with the context still in place;
+            // rebinding it would make the trace teardown below close the caller's spans.
+            if ( Thread.currentThread() == origin && ThreadContext.getContext( false ) == threadContext )
+            {
+                return task.call();
+            }
+
+            return callAttached( task );
+        }
+        finally
+        {
+            if ( threadContext != null )
+            {
+                threadContext.release();
+            }
+        }
+    }
+
+    /**
+     * Bind the captured context for the task without touching the reference count of the worker's own context, so the
+     * worker's context can neither be finalized nor recycled by the swap, and put it back afterwards.
+     */
+    private <T> T callAttached( Callable<T> task )
+            throws Exception
+    {
+        Map<String, String> previousMdc = MDC.getCopyOfContextMap();
+        setMdc( mdc );
+        try
+        {
+            return ThreadContext.callAttached( threadContext, () -> traceContext == null ?
+                    task.call() :
+                    contextualizer.callInChildContext( traceContext, task ) );
+        }
+        finally
+        {
+            setMdc( previousMdc );
+        }
+    }
+
+    private static void setMdc( Map<String, String> mdc )
+    {
+        if ( mdc == null )
+        {
+            MDC.clear();
+        }
+        else
+        {
+            MDC.setContextMap( mdc );
+        }
+    }
+}
@@ -31,6 +31,8 @@ package org.commonjava.o11yphant.trace.thread;
  * limitations under the License.
  */
 
+import org.commonjava.o11yphant.common.thread.ContextCarrier;
+import org.commonjava.o11yphant.common.thread.ContextCarriers;
 import org.commonjava.o11yphant.trace.TraceManager;
 import org.commonjava.o11yphant.trace.TracerConfiguration;
 import org.commonjava.o11yphant.trace.spi.adapter.SpanAdapter;
@@ -38,6 +40,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Optional;
+import java.util.concurrent.Callable;
 
 public class TraceThreadContextualizer
 {
@@ -47,9 +50,10 @@ public class TraceThreadContextualizer
 
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
-    private static final ThreadLocal<Optional<SpanAdapter>> SPAN = new ThreadLocal<>();
+    private static final ContextCarrier<Optional<SpanAdapter>> SPAN = ContextCarriers.create( "thread-root-span" );
 
-    private static final ThreadLocal<ThreadedTraceContext> TRACE_CONTEXT = new ThreadLocal<>();
+    private static final ContextCarrier<ThreadedTraceContext> TRACE_CONTEXT =
+            ContextCarriers.create( "parent-trace-context" );
 
     private final TraceManager traceManager;
 
@@ -107,6 +111,32 @@ public class TraceThreadContextualizer
         }
     }
 
+    /**
+     * Run the task under a thread-level root span continuing the given parent-thread context (see
+     * {@link #setChildContext(Object)}) and close that span afterwards. The running thread's own root span, parent
+     * context and active spans are put back when the task is done rather than cleared.
+     */
+    public <T> T callInChildContext( final Object parentContext, Callable<T> task )
+            throws Exception
+    {
+        if ( !configuration.isEnabled() || parentContext == null )
+        {
+            return task.call();
+        }
+
+        return TraceManager.callWithThreadSpans( () -> TRACE_CONTEXT.callWith( null, () -> SPAN.callWith( null, () -> {
+            setChildContext( parentContext );
+            try
+            {
+                return task.call();
+            }
+            finally
+            {
+                clearContext();
+            }
+        } ) ) );
+    }
+
     @SuppressWarnings( "PMD" )
     public void clearContext()
     {
@@ -0,0 +1,259 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.trace.thread;
+
+import org.commonjava.o11yphant.common.thread.ThreadContext;
+import org.commonjava.o11yphant.trace.TracerConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.MDC;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ContextPropagatingExecutorServiceTest
+{
+    private final AtomicInteger finalized = new AtomicInteger();
+
+    private ExecutorService pool;
+
+    private ContextPropagatingScheduledExecutorService executor;
+
+    @Before
+    public void setUp()
+    {
+        // start the worker before the MDC is set: BasicMDCAdapter is inheritable, and the worker must not inherit it
+        ScheduledThreadPoolExecutor scheduled = new ScheduledThreadPoolExecutor( 1 );
+        scheduled.prestartAllCoreThreads();
+        pool = scheduled;
+        executor = new ContextPropagatingScheduledExecutorService( scheduled, null );
+        ThreadContext ctx = ThreadContext.getContext( true );
+        ctx.put( "id", "request" );
+        ctx.registerFinalizer( c -> finalized.incrementAndGet() );
+        MDC.put( "req", "request" );
+    }
+
+    @After
+    public void tearDown()
+    {
+        ThreadContext.clearContext();
+        executor.shutdownNow();
+    }
+
+    private static String seen()
+    {
+        ThreadContext ctx = ThreadContext.getContext( false );
+        return ( ctx == null ? null : ctx.get( "id" ) ) + "/" + MDC.get( "req" );
+    }
+
+    @Test
+    public void submitPropagatesContextAndMdc()
+            throws Exception
+    {
+        assertEquals( "request/request", executor.submit( ContextPropagatingExecutorServiceTest::seen ).get() );
+
+        AtomicReference<String> fromRunnable = new AtomicReference<>();
+        executor.submit( () -> fromRunnable.set( seen() ) ).get();
+        assertEquals( "request/request", fromRunnable.get() );
+    }
+
+    @Test
+    public void invokeAllPropagatesToEveryTask()
+            throws Exception
+    {
+        Callable<String> task = ContextPropagatingExecutorServiceTest::seen;
+        List<Future<String>> futures = executor.invokeAll( Arrays.asList( task, task ) );
+        for ( Future<String> future : futures )
+        {
+            assertEquals( "request/request", future.get() );
+        }
+        assertEquals( "request/request", executor.invokeAny( Arrays.asList( task, task ) ) );
+    }
+
+    @Test
+    public void schedulePropagatesButPeriodicTasksDoNot()
+            throws Exception
+    {
+        assertEquals( "request/request",
+                      executor.schedule( ContextPropagatingExecutorServiceTest::seen, 10, TimeUnit.MILLISECONDS )
+                              .get() );
+
+        AtomicReference<String> periodic = new AtomicReference<>();
+        CountDownLatch ran = new CountDownLatch( 1 );
+        ScheduledFuture<?> future = executor.scheduleAtFixedRate( () -> {
+            periodic.set( seen() );
+            ran.countDown();
+        }, 0, 1, TimeUnit.HOURS );
+        assertTrue( ran.await( 5, TimeUnit.SECONDS ) );
+        future.cancel( false );
+        assertEquals( "null/null", periodic.get() );
+    }
+
+    @Test
+    public void completableFuturesPropagate()
+            throws Exception
+    {
+        Executor wrapped = ContextPropagatingFutures.wrap( pool, null );
+        CompletableFuture<String> first =
+                ContextPropagatingFutures.supplyAsync( ContextPropagatingExecutorServiceTest::seen, pool, null );
+        // a dependent stage is handed to the executor by whichever thread completes its source, so let the source
+        // complete first to hand it off from this thread
+        first.get( 5, TimeUnit.SECONDS );
+        CompletableFuture<String> future = first.thenApplyAsync( result -> result + "|" + seen(), wrapped );
+        assertEquals( "request/request|request/request", future.get( 5, TimeUnit.SECONDS ) );
+
+        AtomicReference<String> fromRunnable = new AtomicReference<>();
+        ContextPropagatingFutures.runAsync( () -> fromRunnable.set( seen() ), pool, null ).get( 5, TimeUnit.SECONDS );
+        assertEquals( "request/request", fromRunnable.get() );
+    }
+
+    @Test
+    public void workerContextAndMdcAreRestoredUntouched()
+            throws Exception
+    {
+        AtomicInteger workerFinalized = new AtomicInteger();
+        pool.submit( () -> {
+            ThreadContext workerCtx = ThreadContext.getContext( true );
+            workerCtx.put( "id", "worker" );
+            workerCtx.registerFinalizer( c -> workerFinalized.incrementAndGet() );
+            MDC.put( "req", "worker" );
+        } ).get();
+
+        assertEquals( "request/request", executor.submit( ContextPropagatingExecutorServiceTest::seen ).get() );
+
+        assertEquals( "worker/worker", pool.submit( ContextPropagatingExecutorServiceTest::seen ).get() );
+        assertEquals( 0, workerFinalized.get() );
+
+        pool.submit( ThreadContext::clearContext ).get();
+        assertEquals( 1, workerFinalized.get() );
+    }
+
+    @Test
+    public void disabledTracingWithoutContextPassesTasksThrough()
+            throws Exception
+    {
+        ThreadContext.clearContext();
+        MDC.clear();
+
+        TracerConfiguration disabled = (TracerConfiguration) Proxy.newProxyInstance(
+                        getClass().getClassLoader(), new Class<?>[] { TracerConfiguration.class },
+                        ( proxy, method, args ) -> method.getReturnType() == boolean.class ? false : null );
+        TraceThreadContextualizer contextualizer = new TraceThreadContextualizer( disabled, null, null );
+        assertNull( ContextSnapshot.capture( contextualizer ) );
+
+        Runnable task = () -> {
+        };
+        assertSame( task, ContextSnapshot.wrap( task, contextualizer ) );
+
+        ExecutorService passthrough = new ContextPropagatingExecutorService( pool, contextualizer );
+        assertEquals( "null/null", passthrough.submit( ContextPropagatingExecutorServiceTest::seen ).get() );
+    }
+
+    @Test
+    public void contextOutlivesClearUntilQueuedTaskHasRun()
+            throws Exception
+    {
+        CountDownLatch release = new CountDownLatch( 1 );
+        pool.execute( () -> await( release ) );
+
+        Future<String> queued = executor.submit( ContextPropagatingExecutorServiceTest::seen );
+        ThreadContext.clearContext();
+        assertEquals( 0, finalized.get() );
+
+        release.countDown();
+        assertEquals( "request/request", queued.get( 5, TimeUnit.SECONDS ) );
+        assertEquals( 1, finalized.get() );
+    }
+
+    @Test
+    public void recycledContextIsNotReusedWhileTaskIsQueued()
+            throws Exception
+    {
+        ThreadContext.setRecycling( true );
+        try
+        {
+            CountDownLatch release = new CountDownLatch( 1 );
+            pool.execute( () -> await( release ) );
+
+            ThreadContext first = ThreadContext.getContext( false );
+            Future<String> queued = executor.submit( ContextPropagatingExecutorServiceTest::seen );
+            ThreadContext.clearContext();
+
+            ThreadContext next = ThreadContext.getContext( true );
+            next.put( "id", "next" );
+            assertNotSame( first, next );
+
+            release.countDown();
+            assertEquals( "request/request", queued.get( 5, TimeUnit.SECONDS ) );
+            assertEquals( 1, finalized.get() );
+            assertEquals( "next", ThreadContext.getContext( false ).get( "id" ) );
+        }
+        finally
+        {
+            ThreadContext.setRecycling( false );
+        }
+    }
+
+    @Test
+    public void cancelledTaskGivesContextBack()
+            throws Exception
+    {
+        CountDownLatch release = new CountDownLatch( 1 );
+        pool.execute( () -> await( release ) );
+
+        Future<String> queued = executor.submit( ContextPropagatingExecutorServiceTest::seen );
+        ScheduledFuture<String> delayed =
+                executor.schedule( ContextPropagatingExecutorServiceTest::seen, 1, TimeUnit.HOURS );
+        ThreadContext.clearContext();
+
+        assertTrue( queued.cancel( false ) );
+        assertEquals( 0, finalized.get() );
+        assertTrue( delayed.cancel( false ) );
+        assertEquals( 1, finalized.get() );
+        release.countDown();
+    }
+
+    private static void await( CountDownLatch latch )
+    {
+        try
+        {
+            latch.await( 5, TimeUnit.SECONDS );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.trace.thread;
+
+import org.slf4j.ILoggerFactory;
+import org.slf4j.IMarkerFactory;
+import org.slf4j.helpers.BasicMDCAdapter;
+import org.slf4j.helpers.BasicMarkerFactory;
+import org.slf4j.helpers.NOPLoggerFactory;
+import org.slf4j.spi.MDCAdapter;
+import org.slf4j.spi.SLF4JServiceProvider;
+
+/**
+ * Test-only SLF4J binding with a working MDC. Logback 1.2 is not an SLF4J 2 provider, and the NOP fallback (like
+ * slf4j-simple) drops every MDC write, which would hide whether the executors propagate the MDC at all.
+ */
+public class MdcTestServiceProvider
+        implements SLF4JServiceProvider
+{
+    private final ILoggerFactory loggerFactory = new NOPLoggerFactory();
+
+    private final IMarkerFactory markerFactory = new BasicMarkerFactory();
+
+    private final MDCAdapter mdcAdapter = new BasicMDCAdapter();
+
+    @Override
+    public ILoggerFactory getLoggerFactory()
+    {
+        return loggerFactory;
+    }
+
+    @Override
+    public IMarkerFactory getMarkerFactory()
+    {
+        return markerFactory;
+    }
+
+    @Override
+    public MDCAdapter getMDCAdapter()
+    {
+        return mdcAdapter;
+    }
+
+    @Override
+    public String getRequestedApiVersion()
+    {
+        return "2.0.99";
+    }
+
+    @Override
+    public void initialize()
+    {
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.trace.impl;
+
+import org.commonjava.o11yphant.metrics.sampling.MeteringSampler;
+import org.commonjava.o11yphant.metrics.sampling.RandomMeteringSampler;
+import org.commonjava.o11yphant.trace.TraceManager;
+import org.commonjava.o11yphant.trace.spi.adapter.SpanAdapter;
+
+import javax.enterprise.context.ApplicationScoped;
+import java.util.Optional;
+
+import static org.commonjava.o11yphant.metrics.conf.MetricsConfig.SAMPLER_TRACE;
+
+/**
+ * Meters a request exactly when its active span is sampled, so metered and traced requests line up. Requests without
+ * an active span (tracing disabled, or outside a traced request) fall back to random sampling.
+ */
+@ApplicationScoped
+public class TraceFollowingMeteringSampler
+        implements MeteringSampler
+{
+    private final MeteringSampler fallback = new RandomMeteringSampler();
+
+    @Override
+    public String getName()
+    {
+        return SAMPLER_TRACE;
+    }
+
+    @Override
+    public boolean isMetered( int meterRatio )
+    {
+        Optional<SpanAdapter> span = TraceManager.getActiveSpan();
+        return span.isPresent() ? span.get().isSampled() : fallback.isMetered( meterRatio );
+    }
+}
@@ -19,6 +19,7 @@ import org.commonjava.o11yphant.metrics.annotation.Measure;
 import org.commonjava.o11yphant.trace.TraceManager;
 import org.commonjava.o11yphant.trace.spi.adapter.SpanAdapter;
 import org.commonjava.o11yphant.trace.TracerConfiguration;
+import org.commonjava.o11yphant.trace.util.InvocationPlan;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -26,7 +27,6 @@ import javax.inject.Inject;
 import javax.interceptor.AroundInvoke;
 import javax.interceptor.Interceptor;
 import javax.interceptor.InvocationContext;
-import java.lang.reflect.Method;
 import java.util.Optional;
 
 import static java.lang.System.currentTimeMillis;
@@ -46,8 +46,8 @@ public class FlatTraceMeasureInterceptor
     @AroundInvoke
     public Object operation( InvocationContext context ) throws Exception
     {
-        Method method = context.getMethod();
-        String name = method.getDeclaringClass().getSimpleName() + "." + method.getName();
+        InvocationPlan plan = InvocationPlan.of( context.getMethod() );
+        String name = plan.getName();
 
         logger.trace( "START: trace method wrapper: {}", name );
         if ( !config.isEnabled() )
@@ -56,14 +56,7 @@ public class FlatTraceMeasureInterceptor
             return context.proceed();
         }
 
-        Measure measure = method.getAnnotation( Measure.class );
-        if ( measure == null )
-        {
-            measure = method.getDeclaringClass().getAnnotation( Measure.class );
-        }
-
-        int sampleRate = config.getSampleRate( name );
-        if ( measure == null || sampleRate < 1 )
+        if ( !plan.isMeasured() || plan.getNameSampleRate( config ) < 1 )
         {
             logger.trace( "SKIP: trace method wrapper (no annotation or span is not configured: {})", name );
             return context.proceed();
@@ -19,7 +19,7 @@ import org.commonjava.o11yphant.metrics.annotation.MetricWrapperEnd;
 import org.commonjava.o11yphant.trace.TraceManager;
 import org.commonjava.o11yphant.trace.spi.adapter.SpanAdapter;
 import org.commonjava.o11yphant.trace.TracerConfiguration;
-import org.commonjava.o11yphant.trace.util.InterceptorUtils;
+import org.commonjava.o11yphant.trace.util.InvocationPlan;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -48,7 +48,8 @@ public class FlatTraceWrapperEndInterceptor
     @AroundInvoke
     public Object operation( InvocationContext context ) throws Exception
     {
-        String name = InterceptorUtils.getMetricNameFromContext( context );
+        InvocationPlan plan = InvocationPlan.of( context.getMethod() );
+        String name = plan.getMetricName( context );
         logger.trace( "START: trace metrics-end wrapper: {}", name );
         if ( !config.isEnabled() )
         {
@@ -56,7 +57,7 @@ public class FlatTraceWrapperEndInterceptor
             return context.proceed();
         }
 
-        if ( name == null || SKIP_METRIC.equals( name ) || config.getSampleRate( context.getMethod() ) < 1 )
+        if ( name == null || SKIP_METRIC.equals( name ) || plan.getMethodSampleRate( config ) < 1 )
         {
             logger.trace( "SKIP: trace metrics-end wrapper (span not configured: {})", name );
             return context.proceed();
@@ -20,7 +20,7 @@ import org.commonjava.o11yphant.metrics.util.NameUtils;
 import org.commonjava.o11yphant.trace.TraceManager;
 import org.commonjava.o11yphant.trace.TracerConfiguration;
 import org.commonjava.o11yphant.trace.spi.adapter.SpanAdapter;
-import org.commonjava.o11yphant.trace.util.InterceptorUtils;
+import org.commonjava.o11yphant.trace.util.InvocationPlan;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -48,7 +48,8 @@ public class FlatTraceWrapperInterceptor
     @AroundInvoke
     public Object operation( InvocationContext context ) throws Exception
     {
-        String name = InterceptorUtils.getMetricNameFromContext( context );
+        InvocationPlan plan = InvocationPlan.of( context.getMethod() );
+        String name = plan.getMetricName( context );
         logger.trace( "START: trace lambda wrapper: {}", name );
         if ( !config.isEnabled() )
         {
@@ -69,7 +70,7 @@ public class FlatTraceWrapperInterceptor
         }
         finally
         {
-            final String nom = NameUtils.name( name, InterceptorUtils.getMetricNameFromContextAfterRun( context ) );
+            final String nom = NameUtils.name( name, plan.getMetricNameAfterRun( context ) );
 
             Optional<SpanAdapter> span = TraceManager.getActiveSpan();
             span.ifPresent( s->{
@@ -22,9 +22,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.interceptor.InvocationContext;
-import java.lang.annotation.Annotation;
-import java.lang.reflect.Method;
-import java.lang.reflect.Parameter;
 import java.util.function.Supplier;
 
 public class InterceptorUtils
@@ -33,40 +30,15 @@ public class InterceptorUtils
 
     public static String getMetricNameFromContext( InvocationContext context )
     {
-        return getMetricNameFromContextInternal( context, MetricWrapperNamed.class );
+        String name = InvocationPlan.of( context.getMethod() ).getMetricName( context );
+        logger.trace( "Found metric name: {}, annotation: {}", name, MetricWrapperNamed.class.getSimpleName() );
+        return name;
     }
 
     public static String getMetricNameFromContextAfterRun( InvocationContext context )
     {
-        return getMetricNameFromContextInternal( context, MetricWrapperNamedAfterRun.class );
-    }
-
-    @SuppressWarnings( { "unchecked", "rawtypes" } )
-    private static String getMetricNameFromContextInternal( InvocationContext context, Class annotationClass )
-    {
-        String name = null;
-        Method method = context.getMethod();
-        Parameter[] parameters = method.getParameters();
-        for ( int i = 0; i < parameters.length; i++ )
-        {
-            Parameter param = parameters[i];
-            Annotation annotation = param.getAnnotation( annotationClass );
-            if ( annotation != null )
-            {
-                Object pv = context.getParameters()[i];
-                if ( pv instanceof Supplier )
-                {
-                    name = String.valueOf( ( (Supplier<?>) pv ).get() );
-                }
-                else
-                {
-                    name = String.valueOf( pv );
-                }
-
-                break;
-            }
-        }
-        logger.trace( "Found metric name: {}, annotation: {}", name, annotationClass.getSimpleName() );
+        String name = InvocationPlan.of( context.getMethod() ).getMetricNameAfterRun( context );
+        logger.trace( "Found metric name: {}, annotation: {}", name, MetricWrapperNamedAfterRun.class.getSimpleName() );
         return name;
     }
 
@@ -0,0 +1,176 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.trace.util;
+
+import org.commonjava.o11yphant.metrics.annotation.Measure;
+import org.commonjava.o11yphant.metrics.annotation.MetricWrapperNamed;
+import org.commonjava.o11yphant.metrics.annotation.MetricWrapperNamedAfterRun;
+import org.commonjava.o11yphant.trace.TracerConfiguration;
+
+import javax.interceptor.InvocationContext;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Everything the trace interceptors need to know about an intercepted method that does not change between
+ * invocations: whether it is {@link Measure}d, which parameters carry the metric name, its span name and its sample
+ * rates. Plans are built once per {@link Method}, so an invocation costs a single map lookup instead of reflection.
+ */
+public final class InvocationPlan
+{
+    private static final Map<Method, InvocationPlan> PLANS = new ConcurrentHashMap<>();
+
+    private static final int NONE = -1;
+
+    private final Method method;
+
+    private final String name;
+
+    private final boolean measured;
+
+    private final int namedIndex;
+
+    private final int namedAfterRunIndex;
+
+    private volatile ResolvedRates rates;
+
+    private InvocationPlan( Method method )
+    {
+        this.method = method;
+        this.name = method.getDeclaringClass().getSimpleName() + "." + method.getName();
+        this.measured = method.getAnnotation( Measure.class ) != null
+                || method.getDeclaringClass().getAnnotation( Measure.class ) != null;
+        this.namedIndex = indexOf( method, MetricWrapperNamed.class );
+        this.namedAfterRunIndex = indexOf( method, MetricWrapperNamedAfterRun.class );
+    }
+
+    public static InvocationPlan of( Method method )
+    {
+        InvocationPlan plan = PLANS.get( method );
+        if ( plan == null )
+        {
+            plan = PLANS.computeIfAbsent( method, InvocationPlan::new );
+        }
+        return plan;
+    }
+
+    /**
+     * @return SimpleClassName.methodName
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * @return whether {@link Measure} is present on the method or its declaring class
+     */
+    public boolean isMeasured()
+    {
+        return measured;
+    }
+
+    /**
+     * @return the value of the {@link MetricWrapperNamed} parameter, or null if there is none
+     */
+    public String getMetricName( InvocationContext context )
+    {
+        return nameAt( context, namedIndex );
+    }
+
+    /**
+     * @return the value of the {@link MetricWrapperNamedAfterRun} parameter, or null if there is none
+     */
+    public String getMetricNameAfterRun( InvocationContext context )
+    {
+        return nameAt( context, namedAfterRunIndex );
+    }
+
+    /**
+     * @return {@link TracerConfiguration#getSampleRate(Method)}, resolved once per configuration
+     */
+    public int getMethodSampleRate( TracerConfiguration config )
+    {
+        return resolve( config ).methodRate;
+    }
+
+    /**
+     * @return {@link TracerConfiguration#getSampleRate(String)} for {@link #getName()}, resolved once per configuration
+     */
+    public int getNameSampleRate( TracerConfiguration config )
+    {
+        return resolve( config ).nameRate;
+    }
+
+    private ResolvedRates resolve( TracerConfiguration config )
+    {
+        ResolvedRates r = rates;
+        if ( r == null || r.config != config )
+        {
+            r = new ResolvedRates( config, config.getSampleRate( method ), config.getSampleRate( name ) );
+            rates = r;
+        }
+        return r;
+    }
+
+    private static String nameAt( InvocationContext context, int index )
+    {
+        if ( index == NONE )
+        {
+            return null;
+        }
+
+        Object pv = context.getParameters()[index];
+        if ( pv instanceof Supplier )
+        {
+            return String.valueOf( ( (Supplier<?>) pv ).get() );
+        }
+        return String.valueOf( pv );
+    }
+
+    private static int indexOf( Method method, Class<? extends Annotation> annotationClass )
+    {
+        Parameter[] parameters = method.getParameters();
+        for ( int i = 0; i < parameters.length; i++ )
+        {
+            if ( parameters[i].getAnnotation( annotationClass ) != null )
+            {
+                return i;
+            }
+        }
+        return NONE;
+    }
+
+    private static final class ResolvedRates
+    {
+        private final TracerConfiguration config;
+
+        private final int methodRate;
+
+        private final int nameRate;
+
+        private ResolvedRates( TracerConfiguration config, int methodRate, int nameRate )
+        {
+            this.config = config;
+            this.methodRate = methodRate;
+            this.nameRate = nameRate;
+        }
+    }
+}
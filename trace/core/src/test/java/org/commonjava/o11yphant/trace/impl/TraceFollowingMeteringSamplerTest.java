@@ -0,0 +1,46 @@
+/**
+ * Copyright (C) 2020-2023 Red Hat, Inc. (https://github.com/commonjava/o11yphant)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.trace.impl;
+
+import org.commonjava.o11yphant.trace.TraceManager;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TraceFollowingMeteringSamplerTest
+{
+    @Test
+    public void samplesAtTheRatioWithoutAnActiveSpan()
+    {
+        assertFalse( TraceManager.getActiveSpan().isPresent() );
+
+        TraceFollowingMeteringSampler sampler = new TraceFollowingMeteringSampler();
+        int requests = 40000;
+        int metered = 0;
+        for ( int i = 0; i < requests; i++ )
+        {
+            if ( sampler.isMetered( 4 ) )
+            {
+                metered++;
+            }
+        }
+
+        // 1 in 4 on average; the bounds are more than ten standard deviations wide
+        double fraction = (double) metered / requests;
+        assertTrue( "metered fraction: " + fraction, fraction > 0.225 && fraction < 0.275 );
+    }
+}
@@ -17,6 +17,8 @@ package org.commonjava.o11yphant.honeycomb.impl;
 
 import io.honeycomb.beeline.tracing.TracerSpan;
 import io.honeycomb.beeline.tracing.context.TracingContext;
+import org.commonjava.o11yphant.common.thread.ContextCarrier;
+import org.commonjava.o11yphant.common.thread.ContextCarriers;
 import org.commonjava.o11yphant.honeycomb.impl.adapter.HoneycombType;
 import org.commonjava.o11yphant.trace.TracerConfiguration;
 import org.commonjava.o11yphant.trace.thread.ThreadTracingContext;
@@ -29,7 +31,7 @@ import java.util.Deque;
 public class DefaultTracingContext
         implements TracingContext, ThreadTracingContext<HoneycombType>
 {
-    private static final ThreadLocal<Deque<TracerSpan>> SPANS = ThreadLocal.withInitial( ArrayDeque::new );
+    private static final ContextCarrier<Deque<TracerSpan>> SPANS = ContextCarriers.create( "honeycomb-spans" );
 
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
@@ -40,6 +42,17 @@ public class DefaultTracingContext
         this.config = config;
     }
 
+    private static Deque<TracerSpan> spans()
+    {
+        Deque<TracerSpan> spans = SPANS.get();
+        if ( spans == null )
+        {
+            spans = new ArrayDeque<>();
+            SPANS.set( spans );
+        }
+        return spans;
+    }
+
     public void reinitThreadSpans()
     {
         if ( config.isEnabled() )
@@ -53,9 +66,9 @@ public class DefaultTracingContext
     {
         if ( config.isEnabled() )
         {
-            logger.trace( "Clearing context...SPANs in current thread: {} (thread: {})", SPANS.get().size(),
+            logger.trace( "Clearing context...SPANs in current thread: {} (thread: {})", spans().size(),
                          Thread.currentThread().getId() );
-            TracerSpan tracerSpan = SPANS.get().peekLast();
+            TracerSpan tracerSpan = spans().peekLast();
             if ( tracerSpan != null )
             {
                 tracerSpan.close();
@@ -69,34 +82,34 @@ public class DefaultTracingContext
     @Override
     public Deque<TracerSpan> get()
     {
-        return SPANS.get();
+        return spans();
     }
 
     @Override
     public int size()
     {
-        logger.trace( "SPANs in current thread: {} (thread: {})", SPANS.get().size(), Thread.currentThread().getId() );
-        return SPANS.get().size();
+        logger.trace( "SPANs in current thread: {} (thread: {})", spans().size(), Thread.currentThread().getId() );
+        return spans().size();
     }
 
     @Override
     public TracerSpan peekLast()
     {
-        logger.trace( "SPANs in current thread: {} (thread: {})", SPANS.get().size(), Thread.currentThread().getId()  );
-        return SPANS.get().peekLast();
+        logger.trace( "SPANs in current thread: {} (thread: {})", spans().size(), Thread.currentThread().getId()  );
+        return spans().peekLast();
     }
 
     @Override
     public TracerSpan peekFirst()
     {
-        logger.trace( "SPANs in current thread: {} (thread: {})", SPANS.get().size(), Thread.currentThread().getId() );
-        return SPANS.get().peekFirst();
+        logger.trace( "SPANs in current thread: {} (thread: {})", spans().size(), Thread.currentThread().getId() );
+        return spans().peekFirst();
     }
 
     @Override
     public boolean isEmpty()
     {
-        Deque<TracerSpan> spans = SPANS.get();
+        Deque<TracerSpan> spans = spans();
         logger.trace( "SPANs in current thread: {} (thread: {})", spans.size(), Thread.currentThread().getId() );
         boolean empty = spans.isEmpty();
 
@@ -107,18 +120,18 @@ public class DefaultTracingContext
     @Override
     public void push( final TracerSpan span )
     {
-        logger.trace( "SPANs in current thread: {} (thread: {})", SPANS.get().size(), Thread.currentThread().getId()  );
-        SPANS.get().push( span );
+        logger.trace( "SPANs in current thread: {} (thread: {})", spans().size(), Thread.currentThread().getId()  );
+        spans().push( span );
     }
 
     @Override
     public TracerSpan pop()
     {
-        logger.trace( "Pre-POP SPANs in current thread: {} (thread: {})", SPANS.get().size(), Thread.currentThread().getId()  );
+        logger.trace( "Pre-POP SPANs in current thread: {} (thread: {})", spans().size(), Thread.currentThread().getId()  );
 
-        TracerSpan span = SPANS.get().pop();
+        TracerSpan span = spans().pop();
 
-        logger.trace( "Post-POP SPANs in current thread: {} (thread: {})", SPANS.get().size(), Thread.currentThread().getId()  );
+        logger.trace( "Post-POP SPANs in current thread: {} (thread: {})", spans().size(), Thread.currentThread().getId()  );
         return span;
     }
 }
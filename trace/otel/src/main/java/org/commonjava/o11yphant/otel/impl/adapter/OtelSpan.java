@@ -52,6 +52,12 @@ public class OtelSpan
         return localRoot;
     }
 
+    @Override
+    public boolean isSampled()
+    {
+        return span.getSpanContext().isSampled();
+    }
+
     @Override
     public String getTraceId()
     {